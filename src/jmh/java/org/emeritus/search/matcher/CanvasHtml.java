@@ -0,0 +1,103 @@
+package org.emeritus.search.matcher;
+
+import java.util.Random;
+
+/**
+ * Sample Canvas page bodies for the matcher benchmarks, shaped like the rich content editor
+ * output: headings, paragraphs with inline formatting, lists, tables, file links and images with
+ * data-api attributes, an embedded video and the odd script. The term {@link #TERM} occurs as a
+ * whole word in text, inside longer words, in urls and in attributes.
+ */
+final class CanvasHtml {
+
+  /** The term searched for. */
+  static final String TERM = "module";
+
+  /** The replacement. */
+  static final String REPLACEMENT = "unit";
+
+  /** The words the text is made of. */
+  private static final String[] WORDS = {"the", "course", "module", "modules", "week",
+      "assignment", "submit", "discussion", "reading", "students", "will", "review", "quiz",
+      "before", "lecture", "notes", "and", "for", "this", "of", "in", "submodule", "grade",
+      "feedback", "case", "study", "due", "Friday", "learning", "outcomes"};
+
+  /**
+   * Instantiates a new canvas html.
+   */
+  private CanvasHtml() {}
+
+  /**
+   * Builds a body of about the given length, the same for the same length.
+   *
+   * @param length the length
+   * @return the body
+   */
+  static String body(int length) {
+    Random random = new Random(length);
+    StringBuilder html = new StringBuilder(length + 1024);
+    int section = 0;
+    while (html.length() < length) {
+      section++;
+      html.append("<h2><span style=\"font-size: 18pt;\">Week ").append(section).append(": ");
+      words(html, random, 4);
+      html.append("</span></h2>\n<p>");
+      words(html, random, 40);
+      html.append(" <strong>");
+      words(html, random, 3);
+      html.append("</strong> ");
+      words(html, random, 25);
+      html.append(".&nbsp;</p>\n<ul>\n");
+      for (int i = 0; i < 4; i++) {
+        html.append("<li><a title=\"");
+        words(html, random, 3);
+        html.append("\" href=\"https://canvas.example.edu/courses/1842/modules/items/")
+            .append(random.nextInt(100000))
+            .append("\" data-api-endpoint=\"https://canvas.example.edu/api/v1/courses/1842/")
+            .append("modules/").append(random.nextInt(1000))
+            .append("\" data-api-returntype=\"Module\">");
+        words(html, random, 5);
+        html.append("</a></li>\n");
+      }
+      html.append("</ul>\n<p><img src=\"https://canvas.example.edu/courses/1842/files/")
+          .append(random.nextInt(100000)).append("/preview\" alt=\"");
+      words(html, random, 4);
+      html.append("\" width=\"600\" data-api-endpoint=\"https://canvas.example.edu/api/v1/")
+          .append("courses/1842/files/").append(random.nextInt(100000))
+          .append("\" data-api-returntype=\"File\" /></p>\n<table style=\"border-collapse: ")
+          .append("collapse; width: 100%;\" border=\"1\">\n<tbody>\n");
+      for (int row = 0; row < 3; row++) {
+        html.append("<tr>\n<td>");
+        words(html, random, 3);
+        html.append("</td>\n<td><em>");
+        words(html, random, 6);
+        html.append("</em></td>\n</tr>\n");
+      }
+      html.append("</tbody>\n</table>\n");
+      if (section % 3 == 0) {
+        html.append("<p><iframe title=\"Module ").append(section).append(" lecture\" ")
+            .append("src=\"https://canvas.example.edu/media_objects_iframe/m-")
+            .append(random.nextInt(100000)).append("?type=video\" width=\"320\" height=\"240\" ")
+            .append("allowfullscreen=\"allowfullscreen\"></iframe></p>\n<script>var module = ")
+            .append("window.ENV && ENV.module_id;</script>\n");
+      }
+    }
+    return html.toString();
+  }
+
+  /**
+   * Appends words separated by spaces.
+   *
+   * @param html the html
+   * @param random the random
+   * @param count the count
+   */
+  private static void words(StringBuilder html, Random random, int count) {
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        html.append(' ');
+      }
+      html.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+  }
+}
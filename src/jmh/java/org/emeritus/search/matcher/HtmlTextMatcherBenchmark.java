@@ -0,0 +1,120 @@
+package org.emeritus.search.matcher;
+
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.emeritus.search.utils.ParserUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Class HtmlTextMatcherBenchmark. Compares matching the text of sample Canvas bodies through
+ * a jsoup DOM, as {@link ParserUtils#html2text(String)} does, with the streaming
+ * {@link HtmlTextMatcher}, both counting a term in the text and replacing it in the text nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HtmlTextMatcherBenchmark {
+
+  /** The body length. */
+  @Param({"4096", "65536", "1048576"})
+  private int length;
+
+  /** The body. */
+  private String body;
+
+  /** The term, as a regex over the text. */
+  private Pattern pattern;
+
+  /** The parser utils. */
+  private ParserUtils parserUtils;
+
+  /** The html text matcher, set up as the match engine does by default. */
+  private HtmlTextMatcher matcher;
+
+  /**
+   * Builds the body and compiles the term.
+   */
+  @Setup
+  public void setUp() {
+    body = CanvasHtml.body(length);
+    pattern = Pattern.compile("\\b" + Pattern.quote(CanvasHtml.TERM) + "\\b");
+    parserUtils = new ParserUtils();
+    ChunkedScan chunkedScan = new ChunkedScan(ForkJoinPool.commonPool(), 512 * 1024, 128 * 1024);
+    matcher = new HtmlTextMatcher(
+        new ChunkedMatcher(new LiteralWordMatcher(CanvasHtml.TERM, CanvasHtml.REPLACEMENT,
+            CharFolding.NONE), chunkedScan),
+        Set.of("alt", "title"), chunkedScan);
+  }
+
+  /**
+   * Extracts the text through a DOM and counts the term in it.
+   *
+   * @return the count
+   */
+  @Benchmark
+  public int domCount() {
+    Matcher text = pattern.matcher(parserUtils.html2text(body));
+    int count = 0;
+    while (text.find()) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Counts the term in the text with the streaming matcher.
+   *
+   * @return the count
+   */
+  @Benchmark
+  public int streamingCount() {
+    return matcher.find(body).getCount();
+  }
+
+  /**
+   * Replaces the term in each text node of a DOM and serializes it back.
+   *
+   * @return the rewritten body
+   */
+  @Benchmark
+  public String domReplace() {
+    Document document = Jsoup.parseBodyFragment(body);
+    NodeTraversor.traverse((node, depth) -> {
+      if (node instanceof TextNode) {
+        TextNode text = (TextNode) node;
+        text.text(pattern.matcher(text.getWholeText()).replaceAll(CanvasHtml.REPLACEMENT));
+      }
+    }, document.body());
+    return document.body().html();
+  }
+
+  /**
+   * Replaces the term in the text with the streaming matcher.
+   *
+   * @return the rewritten body
+   */
+  @Benchmark
+  public String streamingReplace() {
+    return matcher.replace(body).getRewritten();
+  }
+}
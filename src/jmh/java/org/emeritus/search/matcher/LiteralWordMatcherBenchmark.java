@@ -0,0 +1,120 @@
+package org.emeritus.search.matcher;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Class LiteralWordMatcherBenchmark. Compares the search as it was, a {@code \b}-wrapped
+ * quoted regex compiled for every body, with the same regex compiled once and with
+ * {@link LiteralWordMatcher}, counting and replacing a term in sample Canvas bodies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LiteralWordMatcherBenchmark {
+
+  /** The body length. */
+  @Param({"4096", "65536", "1048576"})
+  private int length;
+
+  /** The body. */
+  private String body;
+
+  /** The regex, as the search built it. */
+  private String regex;
+
+  /** The regex, compiled once. */
+  private Pattern pattern;
+
+  /** The literal matcher. */
+  private LiteralWordMatcher literal;
+
+  /**
+   * Builds the body and compiles the term.
+   */
+  @Setup
+  public void setUp() {
+    body = CanvasHtml.body(length);
+    regex = "\\b" + Pattern.quote(CanvasHtml.TERM) + "\\b";
+    pattern = Pattern.compile(regex);
+    literal = new LiteralWordMatcher(CanvasHtml.TERM, CanvasHtml.REPLACEMENT, CharFolding.NONE);
+  }
+
+  /**
+   * Checks for the term and counts it, compiling the regex for each step as the search did.
+   *
+   * @return the count
+   */
+  @Benchmark
+  public int regexCount() {
+    if (!Pattern.compile(regex).matcher(body).find()) {
+      return 0;
+    }
+    Matcher matcher = Pattern.compile(regex).matcher(body);
+    int count = 0;
+    while (matcher.find()) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Counts the term with the regex compiled once.
+   *
+   * @return the count
+   */
+  @Benchmark
+  public int precompiledRegexCount() {
+    Matcher matcher = pattern.matcher(body);
+    int count = 0;
+    while (matcher.find()) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Counts the term with the literal matcher.
+   *
+   * @return the count
+   */
+  @Benchmark
+  public int literalCount() {
+    return literal.find(body).getCount();
+  }
+
+  /**
+   * Replaces the term as the replace did.
+   *
+   * @return the rewritten body
+   */
+  @Benchmark
+  public String regexReplace() {
+    return body.replaceAll(regex, CanvasHtml.REPLACEMENT);
+  }
+
+  /**
+   * Replaces the term with the literal matcher.
+   *
+   * @return the rewritten body
+   */
+  @Benchmark
+  public String literalReplace() {
+    return literal.replace(body).getRewritten();
+  }
+}
@@ -0,0 +1,133 @@
+package org.emeritus.search.config;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * The Class CanvasHttpClientConfiguration. Provides the single pooled HTTP client every Canvas
+ * call goes through, so connections and TLS sessions are reused across requests.
+ */
+@Configuration
+public class CanvasHttpClientConfiguration {
+
+  /** The base url. */
+  @Value("${canvas.baseurl}")
+  private String baseUrl;
+
+  /** The max total connections. */
+  @Value("${canvas.http.pool.max-total:64}")
+  private int maxTotal;
+
+  /** The default max connections per route. */
+  @Value("${canvas.http.pool.default-max-per-route:16}")
+  private int defaultMaxPerRoute;
+
+  /** The max connections to the canvas host. */
+  @Value("${canvas.http.pool.canvas-max-per-route:64}")
+  private int canvasMaxPerRoute;
+
+  /** The idle eviction time in seconds. */
+  @Value("${canvas.http.pool.idle-evict-seconds:30}")
+  private long idleEvictSeconds;
+
+  /** The validate after inactivity in milliseconds. */
+  @Value("${canvas.http.pool.validate-after-inactivity-ms:2000}")
+  private int validateAfterInactivityMs;
+
+  /** The connect timeout in milliseconds. */
+  @Value("${canvas.http.connect-timeout-ms:5000}")
+  private int connectTimeoutMs;
+
+  /** The socket timeout in milliseconds. */
+  @Value("${canvas.http.socket-timeout-ms:120000}")
+  private int socketTimeoutMs;
+
+  /** The connection request timeout in milliseconds. */
+  @Value("${canvas.http.connection-request-timeout-ms:30000}")
+  private int connectionRequestTimeoutMs;
+
+  /**
+   * Canvas connection manager.
+   *
+   * @return the pooling http client connection manager
+   */
+  @Bean(destroyMethod = "shutdown")
+  public PoolingHttpClientConnectionManager canvasConnectionManager() {
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxTotal);
+    connectionManager.setDefaultMaxPerRoute(defaultMaxPerRoute);
+    connectionManager.setMaxPerRoute(canvasRoute(), canvasMaxPerRoute);
+    connectionManager.setValidateAfterInactivity(validateAfterInactivityMs);
+    return connectionManager;
+  }
+
+  /**
+   * Builds the route HttpClient plans for requests to the canvas host, with the port resolved
+   * from the scheme, so the per route limit applies to the pool Canvas calls actually lease from.
+   *
+   * @return the http route
+   */
+  HttpRoute canvasRoute() {
+    HttpHost base = HttpHost.create(baseUrl);
+    String scheme = base.getSchemeName();
+    boolean secure = "https".equalsIgnoreCase(scheme);
+    int port = base.getPort() >= 0 ? base.getPort() : (secure ? 443 : 80);
+    return new HttpRoute(new HttpHost(base.getHostName(), port, scheme), null, secure);
+  }
+
+  /**
+   * Canvas http client.
+   *
+   * @param canvasConnectionManager the canvas connection manager
+   * @return the closeable http client
+   */
+  @Bean(destroyMethod = "close")
+  public CloseableHttpClient canvasHttpClient(
+      PoolingHttpClientConnectionManager canvasConnectionManager) {
+    RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(connectTimeoutMs)
+        .setSocketTimeout(socketTimeoutMs)
+        .setConnectionRequestTimeout(connectionRequestTimeoutMs).build();
+    return HttpClients.custom().setConnectionManager(canvasConnectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+        .evictExpiredConnections().evictIdleConnections(idleEvictSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * Canvas connection pool metrics, published as canvas.http.pool.* gauges.
+   *
+   * @param canvasConnectionManager the canvas connection manager
+   * @return the meter binder
+   */
+  @Bean
+  public MeterBinder canvasConnectionPoolMetrics(
+      PoolingHttpClientConnectionManager canvasConnectionManager) {
+    return registry -> {
+      Gauge.builder("canvas.http.pool.leased", canvasConnectionManager,
+          manager -> manager.getTotalStats().getLeased())
+          .description("Connections currently in use").register(registry);
+      Gauge.builder("canvas.http.pool.available", canvasConnectionManager,
+          manager -> manager.getTotalStats().getAvailable())
+          .description("Idle connections kept alive in the pool").register(registry);
+      Gauge.builder("canvas.http.pool.pending", canvasConnectionManager,
+          manager -> manager.getTotalStats().getPending())
+          .description("Requests waiting for a connection").register(registry);
+      Gauge.builder("canvas.http.pool.max", canvasConnectionManager,
+          manager -> manager.getTotalStats().getMax())
+          .description("Maximum connections in the pool").register(registry);
+    };
+  }
+}
@@ -0,0 +1,141 @@
+package org.emeritus.search.config;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * The Class ScanExecutorConfiguration.
+ */
+@Configuration
+public class ScanExecutorConfiguration {
+
+  /** The course scan pool size. */
+  @Value("${search.scan.pool-size:8}")
+  private int coursePoolSize;
+
+  /** The course scan queue capacity. */
+  @Value("${search.scan.queue-capacity:500}")
+  private int courseQueueCapacity;
+
+  /** The canvas fetch pool size. */
+  @Value("${search.fetch.pool-size:32}")
+  private int fetchPoolSize;
+
+  /** The canvas fetch queue capacity. */
+  @Value("${search.fetch.queue-capacity:1000}")
+  private int fetchQueueCapacity;
+
+  /** The canvas page pool size. */
+  @Value("${canvas.pagination.pool-size:32}")
+  private int pagePoolSize;
+
+  /** The canvas write pool size. */
+  @Value("${search.write.pool-size:16}")
+  private int writePoolSize;
+
+  /** The canvas write queue capacity. */
+  @Value("${search.write.queue-capacity:1000}")
+  private int writeQueueCapacity;
+
+  /** The match pool parallelism, 0 for one thread per processor. */
+  @Value("${search.match.parallelism:0}")
+  private int matchParallelism;
+
+  /**
+   * Course scan executor. Bounded worker pool used to scan courses concurrently; once the queue
+   * is full the submitting request thread runs the scan itself, which throttles the caller
+   * instead of rejecting courses.
+   *
+   * @return the thread pool task executor
+   */
+  @Bean(name = "courseScanExecutor")
+  public ThreadPoolTaskExecutor courseScanExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(coursePoolSize);
+    executor.setMaxPoolSize(coursePoolSize);
+    executor.setQueueCapacity(courseQueueCapacity);
+    executor.setThreadNamePrefix("course-scan-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.setWaitForTasksToCompleteOnShutdown(true);
+    executor.initialize();
+    return executor;
+  }
+
+  /**
+   * Canvas fetch executor. Runs the independent Canvas reads of a single course side by side. It
+   * is kept apart from the course scan pool so a course waiting on its reads never starves the
+   * reads themselves.
+   *
+   * @return the thread pool task executor
+   */
+  @Bean(name = "canvasFetchExecutor")
+  public ThreadPoolTaskExecutor canvasFetchExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(fetchPoolSize);
+    executor.setMaxPoolSize(fetchPoolSize);
+    executor.setQueueCapacity(fetchQueueCapacity);
+    executor.setThreadNamePrefix("canvas-fetch-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.initialize();
+    return executor;
+  }
+
+  /**
+   * Canvas page executor. Fetches numbered pages of a list ahead of the reader. Its tasks never
+   * wait on other tasks, so readers running on the fetch executor can block on them safely.
+   *
+   * @return the thread pool task executor
+   */
+  @Bean(name = "canvasPageExecutor")
+  public ThreadPoolTaskExecutor canvasPageExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(pagePoolSize);
+    executor.setMaxPoolSize(pagePoolSize);
+    executor.setThreadNamePrefix("canvas-page-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.initialize();
+    return executor;
+  }
+
+  /**
+   * Canvas write executor. Saves replaced content to Canvas while the course scan moves on. It is
+   * kept apart from the read pools so writes in flight never hold up reads; how many writes one
+   * course may have in flight is capped by the caller.
+   *
+   * @return the thread pool task executor
+   */
+  @Bean(name = "canvasWriteExecutor")
+  public ThreadPoolTaskExecutor canvasWriteExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(writePoolSize);
+    executor.setMaxPoolSize(writePoolSize);
+    executor.setQueueCapacity(writeQueueCapacity);
+    executor.setThreadNamePrefix("canvas-write-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.setWaitForTasksToCompleteOnShutdown(true);
+    executor.initialize();
+    return executor;
+  }
+
+  /**
+   * Match pool. Fork-join pool on which the chunks of large bodies are matched. Its tasks only
+   * compute, so it is sized to the processors rather than to the Canvas pools.
+   *
+   * @return the fork join pool
+   */
+  @Bean(name = "matchPool", destroyMethod = "shutdown")
+  public ForkJoinPool matchPool() {
+    int parallelism =
+        matchParallelism > 0 ? matchParallelism : Runtime.getRuntime().availableProcessors();
+    return new ForkJoinPool(parallelism, pool -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("match-" + thread.getPoolIndex());
+      return thread;
+    }, null, false);
+  }
+}
@@ -1,15 +1,18 @@
 package org.emeritus.search.config;
 
+import org.emeritus.search.constant.URLConstants;
 import org.emeritus.search.lti.common.Lti13Configurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.CsrfConfigurer;
 import org.springframework.security.web.SecurityFilterChain;
 
 /**
- * The Class SecurityConfiguration.
+ * The Class SecurityConfiguration. Pages and searches stay open, while every call that writes to
+ * Canvas, or prepares a preview for such a write, needs the session of an LTI launch.
  */
 @Configuration
 @EnableWebSecurity
@@ -25,7 +28,13 @@ public class SecurityConfiguration {
   @Bean
   public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
     http.csrf(CsrfConfigurer::disable)
-        .authorizeHttpRequests(httpRequests -> httpRequests.anyRequest().permitAll());
+        .authorizeHttpRequests(httpRequests -> httpRequests
+            .antMatchers(HttpMethod.POST,
+                URLConstants.CANVAS_SEARCH_API_URL + URLConstants.SEARCH_TEXT_AND_REPLACE,
+                URLConstants.CANVAS_SEARCH_API_URL + URLConstants.PREVIEW_SEARCH_TEXT_AND_REPLACE,
+                URLConstants.CANVAS_SEARCH_API_URL + URLConstants.COMMIT_SEARCH_TEXT_AND_REPLACE,
+                URLConstants.CANVAS_SEARCH_API_URL + URLConstants.ROLLBACK_SEARCH_TEXT_AND_REPLACE)
+            .authenticated().anyRequest().permitAll());
     Lti13Configurer lti13Configurer = new Lti13Configurer();
     http.apply(lti13Configurer);
     return http.build();
@@ -14,6 +14,17 @@ public class URLConstants {
   /** The Constant SEARCH_TEXT_AND_REPLACE. */
   public static final String SEARCH_TEXT_AND_REPLACE = "/search-replace";
 
+  /** The Constant PREVIEW_SEARCH_TEXT_AND_REPLACE. */
+  public static final String PREVIEW_SEARCH_TEXT_AND_REPLACE = "/search-replace/preview";
+
+  /** The Constant COMMIT_SEARCH_TEXT_AND_REPLACE. */
+  public static final String COMMIT_SEARCH_TEXT_AND_REPLACE =
+      "/search-replace/preview/{previewId}/commit";
+
+  /** The Constant ROLLBACK_SEARCH_TEXT_AND_REPLACE. */
+  public static final String ROLLBACK_SEARCH_TEXT_AND_REPLACE =
+      "/search-replace/{resultId}/rollback";
+
   /** The Constant GET_REPLACED_TEXT_PAGE. */
   public static final String GET_REPLACED_TEXT_PAGE = "/pages";
 
@@ -3,16 +3,22 @@ package org.emeritus.search.controller;
 import java.io.IOException;
 import java.util.List;
 import org.emeritus.search.constant.URLConstants;
+import org.emeritus.search.dto.CommitPreviewDto;
 import org.emeritus.search.dto.CoursePageInfo;
 import org.emeritus.search.dto.GlobalApiResponse;
+import org.emeritus.search.dto.ReplacePreviewResult;
+import org.emeritus.search.dto.ReplaceResult;
 import org.emeritus.search.dto.SearchReplaceDto;
+import org.emeritus.search.exception.ResourceNotFoundException;
 import org.emeritus.search.service.ISearchTextService;
+import org.emeritus.search.service.ReplaceRollbackService;
 import org.emeritus.search.utils.RestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -38,15 +44,56 @@ public class SearchTextController {
   @Autowired
   private ISearchTextService searchTextService;
 
+  /** The replace rollback service. */
+  @Autowired
+  private ReplaceRollbackService replaceRollbackService;
+
   @Operation(summary = "Search text and replace acrross courses",
-      description = "Search text and replace acrross courses and returns success or failure ")
+      description = "Search text and replace acrross courses and returns what was replaced, "
+          + "skipped or failed in each course")
   @PostMapping(URLConstants.SEARCH_TEXT_AND_REPLACE)
-  public ResponseEntity<GlobalApiResponse<Boolean>> searchTextAndReplaceAcrossCourses(
+  public ResponseEntity<GlobalApiResponse<ReplaceResult>> searchTextAndReplaceAcrossCourses(
       @RequestBody SearchReplaceDto searchReplaceDto) throws IOException {
     return RestUtils.successResponse(
         searchTextService.searchTextAndReplaceAcrossCourses(searchReplaceDto), HttpStatus.OK);
   }
 
+  @Operation(summary = "Preview search text and replace acrross courses",
+      description = "Matches the courses without writing and returns the items that would be "
+          + "replaced, with a preview id to commit them under")
+  @PostMapping(URLConstants.PREVIEW_SEARCH_TEXT_AND_REPLACE)
+  public ResponseEntity<GlobalApiResponse<ReplacePreviewResult>> previewReplace(
+      @RequestBody SearchReplaceDto searchReplaceDto) throws IOException {
+    return RestUtils.successResponse(searchTextService.previewReplace(searchReplaceDto),
+        HttpStatus.OK);
+  }
+
+  @Operation(summary = "Commit a search text and replace preview",
+      description = "Writes the selected items of a preview, or all of them, from the content "
+          + "matched at preview time and returns what was replaced, skipped or failed")
+  @PostMapping(URLConstants.COMMIT_SEARCH_TEXT_AND_REPLACE)
+  public ResponseEntity<GlobalApiResponse<ReplaceResult>> commitPreview(
+      @PathVariable String previewId,
+      @RequestBody(required = false) CommitPreviewDto commitPreviewDto) {
+    ReplaceResult replaceResult = searchTextService
+        .commitPreview(previewId, commitPreviewDto != null ? commitPreviewDto.getItemIds() : null)
+        .orElseThrow(() -> new ResourceNotFoundException(
+            "Preview not found, expired or already committed : " + previewId));
+    return RestUtils.successResponse(replaceResult, HttpStatus.OK);
+  }
+
+  @Operation(summary = "Roll back a search text and replace",
+      description = "Puts every item written by a search and replace back to its content "
+          + "before the replace, unless it was edited since, and returns what was restored")
+  @PostMapping(URLConstants.ROLLBACK_SEARCH_TEXT_AND_REPLACE)
+  public ResponseEntity<GlobalApiResponse<ReplaceResult>> rollbackReplace(
+      @PathVariable String resultId) {
+    ReplaceResult replaceResult = replaceRollbackService.rollback(resultId)
+        .orElseThrow(() -> new ResourceNotFoundException(
+            "Nothing to roll back for result : " + resultId));
+    return RestUtils.successResponse(replaceResult, HttpStatus.OK);
+  }
+
   @Operation(summary = "Get matching pages acrross courses",
       description = "Get matching pages acrross courses and returns success or failure ")
   @PostMapping(URLConstants.GET_REPLACED_TEXT_PAGE)
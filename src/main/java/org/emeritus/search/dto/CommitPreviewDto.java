@@ -0,0 +1,21 @@
+package org.emeritus.search.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The items of a preview to commit.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommitPreviewDto {
+
+  /** The item ids to write, or null to write every pending item of the preview. */
+  private List<String> itemIds;
+
+}
@@ -22,4 +22,6 @@ public class CoursePageInfo {
 
   private List<PageInfo> pageInfoList;
 
+  private String errorMessage;
+
 }
@@ -1,5 +1,6 @@
 package org.emeritus.search.dto;
 
+import java.util.Map;
 import lombok.Builder;
 import lombok.Data;
 
@@ -7,10 +8,28 @@ import lombok.Data;
 @Builder
 public class PageInfo {
 
+  /** The item id, used to select items when committing a preview. */
+  private String itemId;
+
   private String pageTitle;
 
   private Integer occurences;
 
   private String redirectUrl;
 
+  /** The occurrences per source text, when a rule set was used. */
+  private Map<String, Integer> ruleOccurences;
+
+  /** The replace outcome, null for a plain search. */
+  private ReplaceStatus status;
+
+  /** The SHA-256 of the content a preview pinned for the item. */
+  private String contentHash;
+
+  /** True when the item was replaced but could not be journaled, so no rollback restores it. */
+  private Boolean notJournaled;
+
+  /** Why the item was skipped or failed. */
+  private String message;
+
 }
@@ -0,0 +1,24 @@
+package org.emeritus.search.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The preview of a search and replace, per course and item, with the id to commit it under.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplacePreviewResult {
+
+  /** The id under which the preview is kept until it is committed or expires. */
+  private String previewId;
+
+  /** The courses. */
+  private List<CoursePageInfo> coursePageInfoList;
+
+}
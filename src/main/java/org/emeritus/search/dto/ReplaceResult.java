@@ -0,0 +1,27 @@
+package org.emeritus.search.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The report of a search and replace, per course and item.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplaceResult {
+
+  /** The id under which the report is kept for the results page. */
+  private String resultId;
+
+  /** The courses. */
+  private List<CoursePageInfo> coursePageInfoList;
+
+  /** The items replaced in Canvas whose write could not be journaled, so cannot be rolled back. */
+  private int notJournaledCount;
+
+}
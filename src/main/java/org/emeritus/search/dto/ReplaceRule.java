@@ -0,0 +1,21 @@
+package org.emeritus.search.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One find and replace pair of a rule set.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplaceRule {
+
+  private String sourceText;
+
+  private String textToBeReplace;
+
+}
@@ -0,0 +1,23 @@
+package org.emeritus.search.dto;
+
+/**
+ * The outcome of replacing text in one course item.
+ */
+public enum ReplaceStatus {
+
+  /** The text was replaced and the item saved to Canvas. */
+  REPLACED,
+
+  /** The item contained the text but nothing was replaced. */
+  SKIPPED,
+
+  /** The replacement could not be saved to Canvas. */
+  FAILED,
+
+  /** The text will be replaced when the preview is committed. */
+  PENDING,
+
+  /** The item was put back to its content before the replace. */
+  RESTORED
+
+}
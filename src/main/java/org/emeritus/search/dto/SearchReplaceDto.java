@@ -15,4 +15,19 @@ public class SearchReplaceDto {
 
   private String textToBeReplace;
 
+  /**
+   * An ordered rule set applied in the same pass, used instead of the single source text and
+   * replacement when present.
+   */
+  private List<ReplaceRule> rules;
+
+  /** Whether the source text is a regular expression rather than a literal word. */
+  private boolean regex;
+
+  /** Whether upper and lower case match each other. */
+  private boolean ignoreCase;
+
+  /** Whether accented letters match their unaccented base letter. */
+  private boolean ignoreAccents;
+
 }
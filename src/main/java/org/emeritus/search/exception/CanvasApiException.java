@@ -0,0 +1,35 @@
+package org.emeritus.search.exception;
+
+import java.io.IOException;
+
+/**
+ * The Class CanvasApiException. Raised when Canvas answers a request with an error status.
+ */
+public class CanvasApiException extends IOException {
+
+  /** The Constant serialVersionUID. */
+  private static final long serialVersionUID = 1L;
+
+  /** The status code. */
+  private final int statusCode;
+
+  /**
+   * Instantiates a new canvas api exception.
+   *
+   * @param statusCode the status code
+   * @param message the message
+   */
+  public CanvasApiException(int statusCode, String message) {
+    super(message);
+    this.statusCode = statusCode;
+  }
+
+  /**
+   * Gets the status code.
+   *
+   * @return the status code
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+}
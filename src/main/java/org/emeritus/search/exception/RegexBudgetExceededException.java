@@ -0,0 +1,20 @@
+package org.emeritus.search.exception;
+
+/**
+ * Thrown when a regular expression that could not be run on the linear-time engine uses up its
+ * character-access budget or its time on a body, or when its thread is interrupted while it runs.
+ */
+public class RegexBudgetExceededException extends BadRequestException {
+
+  /** The Constant serialVersionUID. */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Instantiates a new regex budget exceeded exception.
+   *
+   * @param message the message
+   */
+  public RegexBudgetExceededException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,302 @@
+package org.emeritus.search.matcher;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Whole word matcher for an ordered set of literal terms, scanning each body once for all of
+ * them. The terms are compiled into an Aho-Corasick automaton over the characters they use; every
+ * occurrence it reports is filtered for word boundaries and the survivors are resolved leftmost
+ * first, the earlier rule winning when two start at the same place. Rules are applied to the
+ * original body side by side, so the output of one rule is never matched by another. With a
+ * folding, terms are folded when the automaton is built and body chars as they are read.
+ */
+final class AhoCorasickMatcher implements ChunkableMatcher {
+
+  /** The terms, in rule order. */
+  private final String[] terms;
+
+  /** The replacements, in rule order. */
+  private final String[] replacements;
+
+  /** The folding. */
+  private final CharFolding folding;
+
+  /** The trigrams of each term. */
+  private final int[][] trigrams;
+
+  /** The term lengths. */
+  private final int[] lengths;
+
+  /** The length of the longest term. */
+  private final int maxLength;
+
+  /** Whether each term starts with a word character. */
+  private final boolean[] wordStart;
+
+  /** Whether each term ends with a word character. */
+  private final boolean[] wordEnd;
+
+  /** The sorted distinct characters of the terms; class i + 1 is alphabet[i]. */
+  private final char[] alphabet;
+
+  /** The class of each ASCII character, 0 for characters no term uses. */
+  private final int[] asciiClass = new int[128];
+
+  /** The number of character classes, including class 0. */
+  private final int classes;
+
+  /** The transition table, indexed by state * classes + class. */
+  private final int[] delta;
+
+  /** The rules whose term ends in each state, following the fail links. */
+  private final int[][] outputs;
+
+  /**
+   * Instantiates a new Aho-Corasick matcher.
+   *
+   * @param terms the terms, not empty
+   * @param replacements the replacements
+   * @param folding the folding
+   */
+  AhoCorasickMatcher(List<String> terms, List<String> replacements, CharFolding folding) {
+    int rules = terms.size();
+    this.terms = terms.toArray(new String[0]);
+    this.replacements = replacements.toArray(new String[0]);
+    this.folding = folding;
+    String[] folded = new String[rules];
+    this.lengths = new int[rules];
+    this.wordStart = new boolean[rules];
+    this.wordEnd = new boolean[rules];
+    this.trigrams = new int[rules][];
+    StringBuilder chars = new StringBuilder();
+    int maxStates = 1;
+    for (int r = 0; r < rules; r++) {
+      String term = this.terms[r];
+      folded[r] = folding.fold(term);
+      trigrams[r] = TrigramSignature.trigramsOf(term);
+      lengths[r] = term.length();
+      wordStart[r] = WordBoundary.isWordChar(folded[r].charAt(0));
+      wordEnd[r] = WordBoundary.isWordChar(folded[r].charAt(term.length() - 1));
+      chars.append(folded[r]);
+      maxStates += term.length();
+    }
+    this.maxLength = Arrays.stream(lengths).max().getAsInt();
+    this.alphabet = chars.chars().distinct().sorted().collect(StringBuilder::new,
+        StringBuilder::appendCodePoint, StringBuilder::append).toString().toCharArray();
+    for (int i = 0; i < alphabet.length && alphabet[i] < asciiClass.length; i++) {
+      asciiClass[alphabet[i]] = i + 1;
+    }
+    this.classes = alphabet.length + 1;
+
+    // Build the trie, -1 marking a missing edge
+    int[] trie = new int[maxStates * classes];
+    Arrays.fill(trie, -1);
+    int[][] terminal = new int[maxStates][];
+    int states = 1;
+    for (int r = 0; r < rules; r++) {
+      int state = 0;
+      for (int i = 0; i < lengths[r]; i++) {
+        int edge = state * classes + classOf(folded[r].charAt(i));
+        if (trie[edge] < 0) {
+          trie[edge] = states++;
+        }
+        state = trie[edge];
+      }
+      terminal[state] = append(terminal[state], r);
+    }
+
+    // Turn it into a complete automaton breadth first, collecting outputs along the fail links
+    this.delta = Arrays.copyOf(trie, states * classes);
+    this.outputs = new int[states][];
+    int[] fail = new int[states];
+    Deque<Integer> queue = new ArrayDeque<>();
+    outputs[0] = new int[0];
+    for (int c = 0; c < classes; c++) {
+      int child = delta[c];
+      if (child < 0) {
+        delta[c] = 0;
+      } else {
+        fail[child] = 0;
+        queue.add(child);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      int[] own = terminal[state] == null ? new int[0] : terminal[state];
+      outputs[state] = concat(own, outputs[fail[state]]);
+      for (int c = 0; c < classes; c++) {
+        int edge = state * classes + c;
+        int child = delta[edge];
+        int fallback = delta[fail[state] * classes + c];
+        if (child < 0) {
+          delta[edge] = fallback;
+        } else {
+          fail[child] = fallback;
+          queue.add(child);
+        }
+      }
+    }
+  }
+
+  @Override
+  public MatchResult find(String body) {
+    return walk(body, null);
+  }
+
+  @Override
+  public MatchResult replace(String body) {
+    return walk(body, replacements);
+  }
+
+  @Override
+  public boolean mayMatch(TrigramSignature signature) {
+    for (int[] ruleTrigrams : trigrams) {
+      if (signature.mightContainAll(ruleTrigrams)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public int getRuleCount() {
+    return terms.length;
+  }
+
+  @Override
+  public String getTerm(int rule) {
+    return terms[rule];
+  }
+
+  @Override
+  public String getReplacement(int rule) {
+    return replacements[rule];
+  }
+
+  @Override
+  public String getKey() {
+    return "multi:" + folding.getKey() + ':' + String.join("\u0000", terms);
+  }
+
+  /**
+   * Walks the body once through the automaton.
+   *
+   * @param body the body
+   * @param replacements the replacements, or null to only find
+   * @return the match result
+   */
+  private MatchResult walk(String body, String[] replacements) {
+    if (body == null || body.isEmpty()) {
+      return MatchResult.of(body, null, null, null, 0, terms.length, 0, replacements);
+    }
+    return select(body, scan(body, 0, body.length(), 0, body.length()), replacements);
+  }
+
+  @Override
+  public int getMaxTermLength() {
+    return maxLength;
+  }
+
+  /**
+   * Feeds the automaton from the first start offset, so it reports exactly the occurrences that
+   * start at or after it, and stops once no occurrence can start before the last.
+   */
+  @Override
+  public Occurrences scan(String body, int textStart, int textEnd, int from, int to) {
+    Occurrences occurrences = new Occurrences();
+    int end = (int) Math.min(textEnd, (long) to + maxLength - 1);
+    int state = 0;
+    for (int i = from; i < end; i++) {
+      state = delta[state * classes + classOf(folding.fold(body.charAt(i)))];
+      for (int r : outputs[state]) {
+        int start = i + 1 - lengths[r];
+        if (start < to) {
+          occurrences.add(start, r, WordBoundary.before(body, textStart, start, wordStart[r])
+              && WordBoundary.after(body, i + 1, textEnd, wordEnd[r]));
+        }
+      }
+    }
+    occurrences.sort();
+    return occurrences;
+  }
+
+  /**
+   * Resolves the whole word occurrences leftmost first, the earlier rule winning a tie, skipping
+   * anything overlapping a match. An occurrence inside other words is a partial unless it
+   * overlaps a match, as for the single term matcher.
+   */
+  @Override
+  public MatchResult select(String body, Occurrences occurrences, String[] replacements) {
+    int[] starts = new int[occurrences.size()];
+    int[] ends = new int[occurrences.size()];
+    int[] rules = new int[occurrences.size()];
+    int count = 0;
+    int lastEnd = 0;
+    for (int i = 0; i < occurrences.size(); i++) {
+      if (!occurrences.isWholeWordAt(i)) {
+        continue;
+      }
+      int start = occurrences.startAt(i);
+      int rule = occurrences.ruleAt(i);
+      if (start >= lastEnd) {
+        starts[count] = start;
+        lastEnd = start + lengths[rule];
+        ends[count] = lastEnd;
+        rules[count++] = rule;
+      }
+    }
+    int partialCount =
+        occurrences.countPartials(starts, ends, count, rule -> lengths[rule]);
+    return MatchResult.of(body, starts, ends, rules, count, terms.length, partialCount,
+        replacements);
+  }
+
+  /**
+   * Gets the class of a character.
+   *
+   * @param c the c
+   * @return the class, 0 if no term uses the character
+   */
+  private int classOf(char c) {
+    if (c < asciiClass.length) {
+      return asciiClass[c];
+    }
+    int index = Arrays.binarySearch(alphabet, c);
+    return index < 0 ? 0 : index + 1;
+  }
+
+  /**
+   * Append.
+   *
+   * @param values the values, may be null
+   * @param value the value
+   * @return the values with the value appended
+   */
+  private static int[] append(int[] values, int value) {
+    if (values == null) {
+      return new int[] {value};
+    }
+    int[] result = Arrays.copyOf(values, values.length + 1);
+    result[values.length] = value;
+    return result;
+  }
+
+  /**
+   * Concat.
+   *
+   * @param first the first
+   * @param second the second
+   * @return the concatenation
+   */
+  private static int[] concat(int[] first, int[] second) {
+    if (second.length == 0) {
+      return first;
+    }
+    int[] result = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, result, first.length, second.length);
+    return result;
+  }
+}
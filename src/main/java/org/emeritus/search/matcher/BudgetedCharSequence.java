@@ -0,0 +1,113 @@
+package org.emeritus.search.matcher;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.emeritus.search.exception.RegexBudgetExceededException;
+
+/**
+ * A view of a body that bounds the work a backtracking {@code java.util.regex.Matcher} can do on
+ * it. Every {@link #charAt(int)} is charged against the character-access budget of the body,
+ * which the view draws from in blocks of a few thousand accesses. On every draw the wall-clock
+ * deadline and the interrupt flag of the thread are checked, so a scan that is cancelled or runs
+ * too long stops even inside a single {@code find()}. Several views of one body, such as one per
+ * HTML text range matched in parallel, share a single budget and deadline.
+ */
+final class BudgetedCharSequence implements CharSequence {
+
+  /** The number of accesses drawn from the budget at a time. */
+  private static final int GRANT = 4096;
+
+  /** The body. */
+  private final String text;
+
+  /** The budget of the body. */
+  private final Budget budget;
+
+  /** The accesses left in the current draw. */
+  private int granted;
+
+  /**
+   * Instantiates a new budgeted char sequence.
+   *
+   * @param text the body
+   * @param budget the budget of the body
+   */
+  BudgetedCharSequence(String text, Budget budget) {
+    this.text = text;
+    this.budget = budget;
+  }
+
+  @Override
+  public int length() {
+    return text.length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (--granted < 0) {
+      budget.draw();
+      granted = GRANT - 1;
+    }
+    return text.charAt(index);
+  }
+
+  /**
+   * Returns the plain text of the range, without charging it: the matcher only asks for
+   * subsequences to read groups it already matched.
+   */
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return text.substring(start, end);
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  /**
+   * The character accesses and time allowed on one body, however many views match it.
+   */
+  static final class Budget {
+
+    /** The accesses left. */
+    private final AtomicLong remaining;
+
+    /** The deadline, in {@link System#nanoTime()} units. */
+    private final long deadline;
+
+    /** The body length, for messages. */
+    private final int bodyLength;
+
+    /**
+     * Instantiates a new budget.
+     *
+     * @param bodyLength the body length
+     * @param accesses the number of character accesses allowed
+     * @param timeoutNanos the time allowed, in nanoseconds
+     */
+    Budget(int bodyLength, long accesses, long timeoutNanos) {
+      this.remaining = new AtomicLong(accesses);
+      this.deadline = System.nanoTime() + timeoutNanos;
+      this.bodyLength = bodyLength;
+    }
+
+    /**
+     * Draws a block of accesses, after checking the interrupt flag and the deadline.
+     *
+     * @throws RegexBudgetExceededException if interrupted, past the deadline or out of accesses
+     */
+    void draw() {
+      if (Thread.currentThread().isInterrupted()) {
+        throw new RegexBudgetExceededException("Regular expression matching was interrupted");
+      }
+      if (System.nanoTime() - deadline > 0) {
+        throw new RegexBudgetExceededException("Regular expression timed out on a body of "
+            + bodyLength + " characters; simplify it or avoid nested repetition");
+      }
+      if (remaining.addAndGet(-GRANT) < 0) {
+        throw new RegexBudgetExceededException("Regular expression exceeded its budget on a "
+            + "body of " + bodyLength + " characters; simplify it or avoid nested repetition");
+      }
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package org.emeritus.search.matcher;
+
+import java.text.Normalizer;
+
+/**
+ * Char by char folding used to compare text case or accent insensitively without copying the
+ * body. Every char maps to exactly one char through a table computed once, so an offset in the
+ * folded view is the same offset in the original. Folds that change the length, such as sharp s
+ * to "ss", and accents written as separate combining marks are not folded.
+ */
+final class CharFolding {
+
+  /** Folding that leaves every char as it is. */
+  static final CharFolding NONE = new CharFolding(false, false);
+
+  /** The number of chars. */
+  private static final int CHARS = Character.MAX_VALUE + 1;
+
+  /** The instances, indexed by ignoreCase + 2 * ignoreAccents. */
+  private static volatile CharFolding[] instances;
+
+  /** Whether case is ignored. */
+  private final boolean ignoreCase;
+
+  /** Whether accents are ignored. */
+  private final boolean ignoreAccents;
+
+  /** The folded value of every char, or null for no folding. */
+  private final char[] table;
+
+  /**
+   * Instantiates a new char folding.
+   *
+   * @param ignoreCase the ignore case
+   * @param ignoreAccents the ignore accents
+   */
+  private CharFolding(boolean ignoreCase, boolean ignoreAccents) {
+    this.ignoreCase = ignoreCase;
+    this.ignoreAccents = ignoreAccents;
+    this.table = ignoreCase || ignoreAccents ? buildTable(ignoreCase, ignoreAccents) : null;
+  }
+
+  /**
+   * Gets the folding for the options. Tables are built on first use and shared.
+   *
+   * @param ignoreCase the ignore case
+   * @param ignoreAccents the ignore accents
+   * @return the char folding
+   */
+  static CharFolding of(boolean ignoreCase, boolean ignoreAccents) {
+    if (!ignoreCase && !ignoreAccents) {
+      return NONE;
+    }
+    CharFolding[] foldings = instances;
+    if (foldings == null) {
+      synchronized (CharFolding.class) {
+        foldings = instances;
+        if (foldings == null) {
+          foldings = new CharFolding[] {NONE, new CharFolding(true, false),
+              new CharFolding(false, true), new CharFolding(true, true)};
+          instances = foldings;
+        }
+      }
+    }
+    return foldings[(ignoreCase ? 1 : 0) + (ignoreAccents ? 2 : 0)];
+  }
+
+  /**
+   * Folds a char.
+   *
+   * @param c the c
+   * @return the folded char
+   */
+  char fold(char c) {
+    return table == null ? c : table[c];
+  }
+
+  /**
+   * Folds a string, for terms.
+   *
+   * @param text the text
+   * @return the folded text, of the same length
+   */
+  String fold(String text) {
+    if (table == null) {
+      return text;
+    }
+    char[] chars = text.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = table[chars[i]];
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Checks if any folding is applied.
+   *
+   * @return true, if folding
+   */
+  boolean isFolding() {
+    return table != null;
+  }
+
+  /**
+   * Gets a key for the options, for matcher keys.
+   *
+   * @return the key
+   */
+  String getKey() {
+    return (ignoreCase ? "i" : "") + (ignoreAccents ? "a" : "");
+  }
+
+  /**
+   * Builds the table.
+   *
+   * @param ignoreCase the ignore case
+   * @param ignoreAccents the ignore accents
+   * @return the table
+   */
+  private static char[] buildTable(boolean ignoreCase, boolean ignoreAccents) {
+    char[] table = new char[CHARS];
+    for (int i = 0; i < CHARS; i++) {
+      char c = (char) i;
+      if (ignoreAccents && c >= 0x80 && !Character.isSurrogate(c)) {
+        c = stripAccent(c);
+      }
+      if (ignoreCase) {
+        c = Character.toLowerCase(Character.toUpperCase(c));
+      }
+      table[i] = c;
+    }
+    return table;
+  }
+
+  /**
+   * Strips the accent of a precomposed char, if its canonical decomposition is a base char
+   * followed only by combining marks.
+   *
+   * @param c the c
+   * @return the base char, or the char itself
+   */
+  private static char stripAccent(char c) {
+    String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+    if (decomposed.length() < 2 || Character.isSurrogate(decomposed.charAt(0))) {
+      return c;
+    }
+    for (int i = 1; i < decomposed.length(); i++) {
+      if (Character.getType(decomposed.charAt(i)) != Character.NON_SPACING_MARK) {
+        return c;
+      }
+    }
+    return decomposed.charAt(0);
+  }
+}
@@ -0,0 +1,43 @@
+package org.emeritus.search.matcher;
+
+/**
+ * A matcher whose result over a body is a left to right choice among term occurrences that can
+ * be found independently of each other. Any range of start offsets can then be scanned on its own,
+ * reading at most the longest term length past its end, so a large body can be split into
+ * overlapping chunks and its result chosen once from their occurrences. The text scanned may also
+ * be a run of a larger body, such as an HTML text node, which is then matched in place.
+ */
+interface ChunkableMatcher extends TermMatcher {
+
+  /**
+   * Gets the length of the longest term.
+   *
+   * @return the max term length
+   */
+  int getMaxTermLength();
+
+  /**
+   * Finds every occurrence of the terms starting in a range of the text, whole word or not. The
+   * text is the run of the body from the text start to the text end: its ends count as word
+   * boundaries and no occurrence runs past it, so it is matched as if it were the whole body.
+   *
+   * @param body the body
+   * @param textStart the start of the text, inclusive
+   * @param textEnd the end of the text, exclusive
+   * @param from the first start offset, inclusive
+   * @param to the last start offset, exclusive
+   * @return the occurrences, in start order and then rule order
+   */
+  Occurrences scan(String body, int textStart, int textEnd, int from, int to);
+
+  /**
+   * Chooses the matches among the occurrences of the whole body, as the matcher does when it
+   * walks the body in one go.
+   *
+   * @param body the body
+   * @param occurrences the occurrences over the whole body, in start order and then rule order
+   * @param replacements the replacement per rule, or null to only find
+   * @return the match result
+   */
+  MatchResult select(String body, Occurrences occurrences, String[] replacements);
+}
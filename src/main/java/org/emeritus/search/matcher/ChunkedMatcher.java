@@ -0,0 +1,156 @@
+package org.emeritus.search.matcher;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Matches large bodies in parallel. The body is split into chunks of start offsets, and each
+ * chunk is scanned for occurrences on the fork-join pool, reading up to the longest term length
+ * past its end, so the chunks overlap by that much. Every occurrence is found by exactly the one
+ * chunk holding its start, so nothing straddling a boundary is lost or counted twice, and the
+ * delegate then picks the matches from all of them as it would in a single pass. Bodies below the
+ * threshold go straight to the delegate. Runs of a larger body are matched the same way, in place.
+ */
+final class ChunkedMatcher implements RangeMatcher {
+
+  /** The delegate. */
+  private final ChunkableMatcher delegate;
+
+  /** The chunked scan. */
+  private final ChunkedScan chunkedScan;
+
+  /** The replacements, in rule order. */
+  private final String[] replacements;
+
+  /**
+   * Instantiates a new chunked matcher.
+   *
+   * @param delegate the delegate
+   * @param chunkedScan the chunked scan
+   */
+  ChunkedMatcher(ChunkableMatcher delegate, ChunkedScan chunkedScan) {
+    this.delegate = delegate;
+    this.chunkedScan = chunkedScan;
+    this.replacements = new String[delegate.getRuleCount()];
+    for (int rule = 0; rule < replacements.length; rule++) {
+      replacements[rule] = delegate.getReplacement(rule);
+    }
+  }
+
+  @Override
+  public MatchResult find(String body) {
+    if (!chunkedScan.isLarge(body)) {
+      return delegate.find(body);
+    }
+    return delegate.select(body, scan(body, 0, body.length()), null);
+  }
+
+  @Override
+  public MatchResult replace(String body) {
+    if (!chunkedScan.isLarge(body)) {
+      return delegate.replace(body);
+    }
+    return delegate.select(body, scan(body, 0, body.length()), replacements);
+  }
+
+  /**
+   * Selects the matches of each run from its occurrences alone; the replacements are per rule,
+   * so there is nothing to expand.
+   */
+  @Override
+  public RangeSearch search(String body, boolean expand) {
+    return (start, end) -> delegate.select(body, scan(body, start, end), null);
+  }
+
+  @Override
+  public boolean mayMatch(TrigramSignature signature) {
+    return delegate.mayMatch(signature);
+  }
+
+  @Override
+  public int getRuleCount() {
+    return delegate.getRuleCount();
+  }
+
+  @Override
+  public String getTerm(int rule) {
+    return delegate.getTerm(rule);
+  }
+
+  @Override
+  public String getReplacement(int rule) {
+    return replacements[rule];
+  }
+
+  @Override
+  public String getKey() {
+    return delegate.getKey();
+  }
+
+  /**
+   * Scans a run of the body, in chunks on the pool when it is large.
+   *
+   * @param body the body
+   * @param start the start of the run
+   * @param end the end of the run, exclusive
+   * @return the occurrences over the run
+   */
+  private Occurrences scan(String body, int start, int end) {
+    if (!chunkedScan.isLarge(end - start)) {
+      return delegate.scan(body, start, end, start, end);
+    }
+    return chunkedScan.invoke(new ScanTask(body, start, end, start, end));
+  }
+
+  /**
+   * Scans a range of start offsets, halving it until it fits in a chunk.
+   */
+  private final class ScanTask extends RecursiveTask<Occurrences> {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The body. */
+    private final String body;
+
+    /** The start of the run scanned. */
+    private final int textStart;
+
+    /** The end of the run scanned, exclusive. */
+    private final int textEnd;
+
+    /** The first start offset. */
+    private final int from;
+
+    /** The last start offset, exclusive. */
+    private final int to;
+
+    /**
+     * Instantiates a new scan task.
+     *
+     * @param body the body
+     * @param textStart the text start
+     * @param textEnd the text end
+     * @param from the from
+     * @param to the to
+     */
+    ScanTask(String body, int textStart, int textEnd, int from, int to) {
+      this.body = body;
+      this.textStart = textStart;
+      this.textEnd = textEnd;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Occurrences compute() {
+      if (to - from <= chunkedScan.getChunkSize()) {
+        return delegate.scan(body, textStart, textEnd, from, to);
+      }
+      int mid = (from + to) >>> 1;
+      ScanTask first = new ScanTask(body, textStart, textEnd, from, mid);
+      first.fork();
+      Occurrences second = new ScanTask(body, textStart, textEnd, mid, to).compute();
+      return Occurrences.concat(first.join(), second);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package org.emeritus.search.matcher;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * When and how a body is matched in parallel: bodies of at least the threshold length are split
+ * into chunks of about the chunk size, which run on a shared fork-join pool.
+ */
+final class ChunkedScan {
+
+  /** The pool. */
+  private final ForkJoinPool pool;
+
+  /** The body length from which a body is split. */
+  private final int threshold;
+
+  /** The chunk size. */
+  private final int chunkSize;
+
+  /**
+   * Instantiates a new chunked scan.
+   *
+   * @param pool the pool
+   * @param threshold the threshold
+   * @param chunkSize the chunk size
+   */
+  ChunkedScan(ForkJoinPool pool, int threshold, int chunkSize) {
+    this.pool = pool;
+    this.threshold = threshold;
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  /**
+   * Checks if a body is large enough to be split.
+   *
+   * @param body the body
+   * @return true, if large
+   */
+  boolean isLarge(String body) {
+    return body != null && isLarge(body.length());
+  }
+
+  /**
+   * Checks if a run of text is large enough to be split.
+   *
+   * @param length the length of the text
+   * @return true, if large
+   */
+  boolean isLarge(int length) {
+    return length >= threshold;
+  }
+
+  /**
+   * Gets the chunk size.
+   *
+   * @return the chunk size
+   */
+  int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Runs a task on the pool and waits for its result.
+   *
+   * @param <T> the result type
+   * @param task the task
+   * @return the result
+   */
+  <T> T invoke(ForkJoinTask<T> task) {
+    return pool.invoke(task);
+  }
+}
@@ -0,0 +1,297 @@
+package org.emeritus.search.matcher;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+import org.emeritus.search.matcher.RangeMatcher.RangeSearch;
+
+/**
+ * Restricts another matcher to the text of an HTML body: text nodes and allowlisted attribute
+ * values. Tags, other attributes, comments and script or style content are never matched, and
+ * the rewritten body keeps every character outside the replaced spans exactly as it was. Text is
+ * matched as written in the markup; character references are not decoded. The edges of a text
+ * range are word boundaries unless a word character adjoins them across inline tags, as in
+ * {@code cat<b>s</b>}; a match there is only counted as partial. Each text range is
+ * matched in place in the body, without being copied out. The text ranges of a large body are
+ * matched in parallel, in batches, and their matches joined in body order.
+ */
+final class HtmlTextMatcher implements TermMatcher {
+
+  /** The initial capacity of the offsets arrays. */
+  private static final int INITIAL_OFFSETS = 8;
+
+  /** Flag of a text range that a word character precedes across inline tags. */
+  private static final int WORD_BEFORE = 1;
+
+  /** Flag of a text range that a word character follows across inline tags. */
+  private static final int WORD_AFTER = 2;
+
+  /** The matcher applied to each text range. */
+  private final RangeMatcher delegate;
+
+  /** The lower case names of attributes whose values are matched. */
+  private final Set<String> attributeAllowlist;
+
+  /** The chunked scan. */
+  private final ChunkedScan chunkedScan;
+
+  /** The replacements, in rule order. */
+  private final String[] replacements;
+
+  /**
+   * Instantiates a new html text matcher.
+   *
+   * @param delegate the delegate
+   * @param attributeAllowlist the attribute allowlist, lower case
+   * @param chunkedScan the chunked scan
+   */
+  HtmlTextMatcher(RangeMatcher delegate, Set<String> attributeAllowlist,
+      ChunkedScan chunkedScan) {
+    this.delegate = delegate;
+    this.attributeAllowlist = attributeAllowlist;
+    this.chunkedScan = chunkedScan;
+    this.replacements = new String[delegate.getRuleCount()];
+    for (int rule = 0; rule < replacements.length; rule++) {
+      replacements[rule] = delegate.getReplacement(rule);
+    }
+  }
+
+  @Override
+  public MatchResult find(String body) {
+    return walk(body, null);
+  }
+
+  @Override
+  public MatchResult replace(String body) {
+    return walk(body, replacements);
+  }
+
+  @Override
+  public boolean mayMatch(TrigramSignature signature) {
+    return delegate.mayMatch(signature);
+  }
+
+  @Override
+  public int getRuleCount() {
+    return delegate.getRuleCount();
+  }
+
+  @Override
+  public String getTerm(int rule) {
+    return delegate.getTerm(rule);
+  }
+
+  @Override
+  public String getReplacement(int rule) {
+    return replacements[rule];
+  }
+
+  @Override
+  public String getKey() {
+    return "html:" + delegate.getKey();
+  }
+
+  /**
+   * Matches each text range with the delegate and rewrites the whole body once from the
+   * collected offsets. A regex delegate expands its replacement template per match, and the
+   * expansions are carried over with the offsets.
+   *
+   * @param body the body
+   * @param replacements the replacements, or null to only find
+   * @return the match result
+   */
+  private MatchResult walk(String body, String[] replacements) {
+    int ruleCount = replacements == null ? delegate.getRuleCount() : replacements.length;
+    if (body == null || body.isEmpty()) {
+      return MatchResult.of(body, null, null, null, 0, ruleCount, 0, replacements);
+    }
+    RangeSearch search = delegate.search(body, replacements != null);
+    Matches matches;
+    if (chunkedScan.isLarge(body)) {
+      // The ranges, with their edge flags in place of a rule
+      Matches ranges = new Matches();
+      HtmlTokenizer.forEachTextRange(body, attributeAllowlist,
+          (start, end, wordBefore, wordAfter) -> ranges.add(start, end,
+              edges(wordBefore, wordAfter), null));
+      matches = chunkedScan.invoke(new RangeTask(body, search, ranges, 0, ranges.count));
+    } else {
+      Matches found = new Matches();
+      HtmlTokenizer.forEachTextRange(body, attributeAllowlist,
+          (start, end, wordBefore, wordAfter) -> matchRange(body, search, start, end,
+              edges(wordBefore, wordAfter), found));
+      matches = found;
+    }
+    if (matches.expansions != null) {
+      return MatchResult.ofExpanded(body, matches.starts, matches.ends, matches.count,
+          matches.expansions, true);
+    }
+    return MatchResult.of(body, matches.starts, matches.ends, matches.rules, matches.count,
+        ruleCount, matches.partialCount, replacements);
+  }
+
+  /**
+   * Gets the edge flags of a text range.
+   *
+   * @param wordBefore whether a word character precedes the range across inline tags
+   * @param wordAfter whether a word character follows the range across inline tags
+   * @return the edge flags
+   */
+  private static int edges(boolean wordBefore, boolean wordAfter) {
+    return (wordBefore ? WORD_BEFORE : 0) | (wordAfter ? WORD_AFTER : 0);
+  }
+
+  /**
+   * Matches one text range with the delegate, counting a match that runs into a word across an
+   * inline tag as partial.
+   *
+   * @param body the body
+   * @param search the search of the body
+   * @param start the start of the range
+   * @param end the end of the range
+   * @param edges the edge flags of the range
+   * @param matches the matches to add to
+   */
+  private static void matchRange(String body, RangeSearch search, int start, int end, int edges,
+      Matches matches) {
+    MatchResult range = search.find(start, end);
+    matches.partialCount += range.getPartialCount();
+    for (int i = 0; i < range.getCount(); i++) {
+      int matchStart = range.startAt(i);
+      int matchEnd = range.endAt(i);
+      boolean joinedBefore = (edges & WORD_BEFORE) != 0 && matchStart == start
+          && matchEnd > matchStart && WordBoundary.isWordChar(body.charAt(matchStart));
+      boolean joinedAfter = (edges & WORD_AFTER) != 0 && matchEnd == end
+          && matchEnd > matchStart && WordBoundary.isWordChar(body.charAt(matchEnd - 1));
+      if (joinedBefore || joinedAfter) {
+        matches.partialCount++;
+        continue;
+      }
+      matches.add(matchStart, matchEnd, range.ruleAt(i), range.expansionAt(i));
+    }
+  }
+
+  /**
+   * Matches a run of text ranges, halving it until it spans no more than a chunk of the body.
+   */
+  private final class RangeTask extends RecursiveTask<Matches> {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The body. */
+    private final String body;
+
+    /** The search of the body. */
+    private final RangeSearch search;
+
+    /** The text ranges of the body, with their edge flags as rules. */
+    private final Matches ranges;
+
+    /** The first range. */
+    private final int from;
+
+    /** The last range, exclusive. */
+    private final int to;
+
+    /**
+     * Instantiates a new range task.
+     *
+     * @param body the body
+     * @param search the search
+     * @param ranges the ranges
+     * @param from the from
+     * @param to the to
+     */
+    RangeTask(String body, RangeSearch search, Matches ranges, int from, int to) {
+      this.body = body;
+      this.search = search;
+      this.ranges = ranges;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Matches compute() {
+      if (to - from <= 1
+          || ranges.ends[to - 1] - ranges.starts[from] <= chunkedScan.getChunkSize()) {
+        Matches matches = new Matches();
+        for (int i = from; i < to; i++) {
+          matchRange(body, search, ranges.starts[i], ranges.ends[i], ranges.rules[i], matches);
+        }
+        return matches;
+      }
+      int mid = (from + to) >>> 1;
+      RangeTask first = new RangeTask(body, search, ranges, from, mid);
+      first.fork();
+      Matches second = new RangeTask(body, search, ranges, mid, to).compute();
+      Matches matches = first.join();
+      matches.append(second);
+      return matches;
+    }
+  }
+
+  /**
+   * The matches collected over the text ranges of one body.
+   */
+  private static final class Matches {
+
+    /** The starts. */
+    private int[] starts = new int[INITIAL_OFFSETS];
+
+    /** The ends. */
+    private int[] ends = new int[INITIAL_OFFSETS];
+
+    /** The rules. */
+    private int[] rules = new int[INITIAL_OFFSETS];
+
+    /** The replacement of each match, or null when replacements are per rule. */
+    private String[] expansions;
+
+    /** The count. */
+    private int count;
+
+    /** The partial count. */
+    private int partialCount;
+
+    /**
+     * Adds a match.
+     *
+     * @param start the start
+     * @param end the end
+     * @param rule the rule
+     * @param expansion the replacement of the match, or null when replacements are per rule
+     */
+    void add(int start, int end, int rule, String expansion) {
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, count * 2);
+        ends = Arrays.copyOf(ends, count * 2);
+        rules = Arrays.copyOf(rules, count * 2);
+        if (expansions != null) {
+          expansions = Arrays.copyOf(expansions, count * 2);
+        }
+      }
+      if (expansion != null) {
+        if (expansions == null) {
+          expansions = new String[starts.length];
+        }
+        expansions[count] = expansion;
+      }
+      starts[count] = start;
+      ends[count] = end;
+      rules[count++] = rule;
+    }
+
+    /**
+     * Appends the matches of the text ranges that follow.
+     *
+     * @param next the next matches
+     */
+    void append(Matches next) {
+      for (int i = 0; i < next.count; i++) {
+        add(next.starts[i], next.ends[i], next.rules[i],
+            next.expansions == null ? null : next.expansions[i]);
+      }
+      partialCount += next.partialCount;
+    }
+  }
+}
@@ -0,0 +1,345 @@
+package org.emeritus.search.matcher;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Streaming scanner over HTML that reports the ranges holding text a reader sees: the text
+ * between tags and the values of allowlisted attributes. Markup, comments, doctype and the content
+ * of script and style elements are stepped over. Inline tags and comments do not separate words,
+ * so each text range also tells whether a word character adjoins it across them; block-level and
+ * void elements do. Nothing is allocated per tag beyond the lower cased attribute name looked up
+ * in the allowlist, and no tree is built.
+ */
+final class HtmlTokenizer {
+
+  /** The longest element name looked up. */
+  private static final int MAX_NAME_LENGTH = 12;
+
+  /** The block-level and void elements, which end a word, as sorted name keys. */
+  private static final long[] WORD_BREAKING_ELEMENTS = nameKeys("address", "area", "article",
+      "aside", "audio", "base", "blockquote", "body", "br", "canvas", "caption", "col", "colgroup",
+      "dd", "details", "dialog", "div", "dl", "dt", "embed", "fieldset", "figcaption", "figure",
+      "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hr", "html",
+      "iframe", "img", "input", "li", "link", "main", "meta", "nav", "object", "ol", "optgroup",
+      "option", "p", "param", "pre", "script", "section", "select", "source", "style", "summary",
+      "table", "tbody", "td", "textarea", "tfoot", "th", "thead", "title", "tr", "track", "ul",
+      "video", "wbr");
+
+  /**
+   * Receives the text ranges of a body.
+   */
+  @FunctionalInterface
+  interface TextRangeConsumer {
+
+    /**
+     * Accept.
+     *
+     * @param start the start
+     * @param end the end, exclusive
+     * @param wordBefore whether a word character precedes the range across inline markup
+     * @param wordAfter whether a word character follows the range across inline markup
+     */
+    void accept(int start, int end, boolean wordBefore, boolean wordAfter);
+  }
+
+  /**
+   * Instantiates a new html tokenizer.
+   */
+  private HtmlTokenizer() {}
+
+  /**
+   * Reports every text range of the body, in order.
+   *
+   * @param html the html
+   * @param attributeAllowlist the lower case names of attributes whose values are text
+   * @param consumer the consumer
+   */
+  static void forEachTextRange(String html, Set<String> attributeAllowlist,
+      TextRangeConsumer consumer) {
+    int length = html.length();
+    int textStart = 0;
+    // Whether the text before the markup since textStart ends with a word character
+    boolean wordBefore = false;
+    int i = 0;
+    while (i < length) {
+      if (html.charAt(i) != '<' || i + 1 == length || !isMarkupStart(html.charAt(i + 1))) {
+        i++;
+        continue;
+      }
+      if (i > textStart) {
+        boolean wordEnd = WordBoundary.isWordChar(html.charAt(i - 1));
+        consumer.accept(textStart, i, wordBefore, wordEnd && startsWithWordChar(html, i));
+        wordBefore = wordEnd;
+      }
+      char next = html.charAt(i + 1);
+      if (html.startsWith("<!--", i)) {
+        i = skipPast(html, "-->", i + 4);
+      } else if (next == '!' || next == '?') {
+        wordBefore = false;
+        i = skipPast(html, ">", i + 2);
+      } else if (next == '/') {
+        wordBefore &= !breaksWord(html, i + 2);
+        i = skipPast(html, ">", i + 2);
+      } else {
+        wordBefore &= !breaksWord(html, i + 1);
+        i = scanStartTag(html, i + 1, attributeAllowlist, consumer);
+      }
+      textStart = i;
+    }
+    if (length > textStart) {
+      consumer.accept(textStart, length, wordBefore, false);
+    }
+  }
+
+  /**
+   * Checks whether the text following the markup at the index, across inline tags and comments,
+   * starts with a word character.
+   *
+   * @param html the html
+   * @param from the index of the markup
+   * @return true, if a word character follows
+   */
+  private static boolean startsWithWordChar(String html, int from) {
+    int length = html.length();
+    int i = from;
+    while (i < length) {
+      if (html.charAt(i) != '<' || i + 1 == length || !isMarkupStart(html.charAt(i + 1))) {
+        return WordBoundary.isWordChar(html.charAt(i));
+      }
+      char next = html.charAt(i + 1);
+      if (html.startsWith("<!--", i)) {
+        i = skipPast(html, "-->", i + 4);
+      } else if (next == '!' || next == '?') {
+        return false;
+      } else if (next == '/') {
+        if (breaksWord(html, i + 2)) {
+          return false;
+        }
+        i = skipPast(html, ">", i + 2);
+      } else {
+        if (breaksWord(html, i + 1)) {
+          return false;
+        }
+        i = scanStartTag(html, i + 1, Set.of(), (start, end, before, after) -> {});
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks if the element named at the index is block-level or void, ending the word before it.
+   *
+   * @param html the html
+   * @param nameStart the index of the tag name
+   * @return true, if the element ends a word
+   */
+  private static boolean breaksWord(String html, int nameStart) {
+    int nameEnd = nameStart;
+    while (nameEnd < html.length() && !isTagNameEnd(html.charAt(nameEnd))) {
+      nameEnd++;
+    }
+    long key = nameKey(html, nameStart, nameEnd);
+    return key >= 0 && Arrays.binarySearch(WORD_BREAKING_ELEMENTS, key) >= 0;
+  }
+
+  /**
+   * Packs an element name, in any case, into a number, base 37 over letters and digits.
+   *
+   * @param name the text holding the name
+   * @param start the start of the name
+   * @param end the end of the name, exclusive
+   * @return the key, or -1 if the name is too long or has other characters
+   */
+  private static long nameKey(CharSequence name, int start, int end) {
+    if (end - start > MAX_NAME_LENGTH) {
+      return -1;
+    }
+    long key = 0;
+    for (int i = start; i < end; i++) {
+      char c = name.charAt(i);
+      int code;
+      if (c >= 'a' && c <= 'z') {
+        code = c - 'a' + 1;
+      } else if (c >= 'A' && c <= 'Z') {
+        code = c - 'A' + 1;
+      } else if (c >= '0' && c <= '9') {
+        code = c - '0' + 27;
+      } else {
+        return -1;
+      }
+      key = key * 37 + code;
+    }
+    return key;
+  }
+
+  /**
+   * Gets the sorted keys of element names.
+   *
+   * @param names the names
+   * @return the keys
+   */
+  private static long[] nameKeys(String... names) {
+    long[] keys = new long[names.length];
+    for (int i = 0; i < names.length; i++) {
+      keys[i] = nameKey(names[i], 0, names[i].length());
+    }
+    Arrays.sort(keys);
+    return keys;
+  }
+
+  /**
+   * Scans a start tag from its name to just past its closing bracket, reporting allowlisted
+   * attribute values, and then past the content of a script or style element.
+   *
+   * @param html the html
+   * @param nameStart the index of the tag name
+   * @param attributeAllowlist the attribute allowlist
+   * @param consumer the consumer
+   * @return the index after the tag
+   */
+  private static int scanStartTag(String html, int nameStart, Set<String> attributeAllowlist,
+      TextRangeConsumer consumer) {
+    int length = html.length();
+    int i = nameStart;
+    while (i < length && !isTagNameEnd(html.charAt(i))) {
+      i++;
+    }
+    int nameEnd = i;
+    while (i < length) {
+      char c = html.charAt(i);
+      if (c == '>') {
+        i++;
+        break;
+      }
+      if (Character.isWhitespace(c) || c == '/') {
+        i++;
+        continue;
+      }
+      // Attribute name
+      int attributeStart = i;
+      while (i < length && !isAttributeNameEnd(html.charAt(i))) {
+        i++;
+      }
+      int attributeEnd = i;
+      while (i < length && Character.isWhitespace(html.charAt(i))) {
+        i++;
+      }
+      if (i == length || html.charAt(i) != '=') {
+        continue;
+      }
+      i++;
+      while (i < length && Character.isWhitespace(html.charAt(i))) {
+        i++;
+      }
+      if (i == length) {
+        break;
+      }
+      // Attribute value, quoted or not
+      int valueStart;
+      int valueEnd;
+      char quote = html.charAt(i);
+      if (quote == '"' || quote == '\'') {
+        valueStart = i + 1;
+        valueEnd = html.indexOf(quote, valueStart);
+        if (valueEnd < 0) {
+          valueEnd = length;
+        }
+        i = Math.min(valueEnd + 1, length);
+      } else {
+        valueStart = i;
+        while (i < length && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+          i++;
+        }
+        valueEnd = i;
+      }
+      if (valueEnd > valueStart && !attributeAllowlist.isEmpty() && attributeAllowlist
+          .contains(html.substring(attributeStart, attributeEnd).toLowerCase(Locale.ROOT))) {
+        consumer.accept(valueStart, valueEnd, false, false);
+      }
+    }
+    if (isRawTextElement(html, nameStart, nameEnd)) {
+      return skipRawText(html, i, html.substring(nameStart, nameEnd));
+    }
+    return i;
+  }
+
+  /**
+   * Skips the content of a script or style element up to and including its end tag.
+   *
+   * @param html the html
+   * @param from the index after the start tag
+   * @param name the element name
+   * @return the index after the end tag
+   */
+  private static int skipRawText(String html, int from, String name) {
+    int i = from;
+    while ((i = html.indexOf("</", i)) >= 0) {
+      if (html.regionMatches(true, i + 2, name, 0, name.length())
+          && (i + 2 + name.length() == html.length()
+              || isTagNameEnd(html.charAt(i + 2 + name.length())))) {
+        return skipPast(html, ">", i + 2);
+      }
+      i += 2;
+    }
+    return html.length();
+  }
+
+  /**
+   * Skip past.
+   *
+   * @param html the html
+   * @param terminator the terminator
+   * @param from the from
+   * @return the index after the terminator, or the end of the html
+   */
+  private static int skipPast(String html, String terminator, int from) {
+    int end = html.indexOf(terminator, from);
+    return end < 0 ? html.length() : end + terminator.length();
+  }
+
+  /**
+   * Checks if the element is script or style, whose content is not text.
+   *
+   * @param html the html
+   * @param nameStart the name start
+   * @param nameEnd the name end
+   * @return true, if raw text element
+   */
+  private static boolean isRawTextElement(String html, int nameStart, int nameEnd) {
+    int nameLength = nameEnd - nameStart;
+    return (nameLength == 6 && html.regionMatches(true, nameStart, "script", 0, 6))
+        || (nameLength == 5 && html.regionMatches(true, nameStart, "style", 0, 5));
+  }
+
+  /**
+   * Checks if the char after a '<' opens markup rather than being literal text.
+   *
+   * @param c the c
+   * @return true, if markup start
+   */
+  private static boolean isMarkupStart(char c) {
+    return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+  }
+
+  /**
+   * Checks if is tag name end.
+   *
+   * @param c the c
+   * @return true, if is tag name end
+   */
+  private static boolean isTagNameEnd(char c) {
+    return Character.isWhitespace(c) || c == '>' || c == '/';
+  }
+
+  /**
+   * Checks if is attribute name end.
+   *
+   * @param c the c
+   * @return true, if is attribute name end
+   */
+  private static boolean isAttributeNameEnd(char c) {
+    return Character.isWhitespace(c) || c == '=' || c == '>' || c == '/';
+  }
+}
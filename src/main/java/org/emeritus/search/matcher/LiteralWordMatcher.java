@@ -0,0 +1,226 @@
+package org.emeritus.search.matcher;
+
+import java.util.Arrays;
+
+/**
+ * Whole word matcher for a single literal term, with no regex engine involved. Candidates are
+ * located with Boyer-Moore-Horspool and then checked for a word boundary on both sides.
+ * Occurrences that fail the boundary check are counted as partial. With a folding, body chars are
+ * folded one at a time as they are compared, so the body itself is never copied.
+ */
+final class LiteralWordMatcher implements ChunkableMatcher {
+
+  /** The size of the bad character table; chars are hashed into it by their low byte. */
+  private static final int TABLE_SIZE = 256;
+
+  /** The initial capacity of the offsets arrays. */
+  private static final int INITIAL_OFFSETS = 8;
+
+  /** The term. */
+  private final String term;
+
+  /** The replacement, as a one element array indexed by rule. */
+  private final String[] replacements;
+
+  /** The folding. */
+  private final CharFolding folding;
+
+  /** The folded term chars. */
+  private final char[] pattern;
+
+  /** The shift per bad character bucket. */
+  private final int[] shift = new int[TABLE_SIZE];
+
+  /** The trigrams of the term. */
+  private final int[] trigrams;
+
+  /** Whether the term starts with a word character. */
+  private final boolean wordStart;
+
+  /** Whether the term ends with a word character. */
+  private final boolean wordEnd;
+
+  /**
+   * Instantiates a new literal word matcher.
+   *
+   * @param term the term, not empty
+   * @param replacement the replacement
+   * @param folding the folding
+   */
+  LiteralWordMatcher(String term, String replacement, CharFolding folding) {
+    this.term = term;
+    this.replacements = new String[] {replacement};
+    this.folding = folding;
+    this.pattern = folding.fold(term).toCharArray();
+    int last = pattern.length - 1;
+    // Chars sharing a bucket keep the smallest shift of any of them, which is always safe
+    Arrays.fill(shift, pattern.length);
+    for (int i = 0; i < last; i++) {
+      shift[pattern[i] & (TABLE_SIZE - 1)] = last - i;
+    }
+    this.trigrams = TrigramSignature.trigramsOf(term);
+    this.wordStart = WordBoundary.isWordChar(pattern[0]);
+    this.wordEnd = WordBoundary.isWordChar(pattern[last]);
+  }
+
+  @Override
+  public MatchResult find(String body) {
+    return walk(body, null);
+  }
+
+  @Override
+  public MatchResult replace(String body) {
+    return walk(body, replacements);
+  }
+
+  @Override
+  public boolean mayMatch(TrigramSignature signature) {
+    return signature.mightContainAll(trigrams);
+  }
+
+  @Override
+  public int getRuleCount() {
+    return 1;
+  }
+
+  @Override
+  public String getTerm(int rule) {
+    return term;
+  }
+
+  @Override
+  public String getReplacement(int rule) {
+    return replacements[rule];
+  }
+
+  @Override
+  public String getKey() {
+    return "literal:" + folding.getKey() + ':' + term;
+  }
+
+  /**
+   * Walks the body once.
+   *
+   * @param body the body
+   * @param replacements the replacements, or null to only find
+   * @return the match result
+   */
+  private MatchResult walk(String body, String[] replacements) {
+    if (body == null || body.length() < pattern.length) {
+      return MatchResult.of(body, null, null, null, 0, 1, 0, replacements);
+    }
+    int length = pattern.length;
+    int[] starts = new int[INITIAL_OFFSETS];
+    int count = 0;
+    int[] partials = new int[INITIAL_OFFSETS];
+    int partialCount = 0;
+    int from = indexOf(body, 0);
+    while (from >= 0) {
+      if (WordBoundary.before(body, 0, from, wordStart)
+          && WordBoundary.after(body, from + length, body.length(), wordEnd)) {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = from;
+        // Partials are found in order, so the ones this match overlaps are the last ones
+        while (partialCount > 0 && partials[partialCount - 1] + length > from) {
+          partialCount--;
+        }
+        from = indexOf(body, from + length);
+      } else {
+        if (partialCount == partials.length) {
+          partials = Arrays.copyOf(partials, partialCount * 2);
+        }
+        partials[partialCount++] = from;
+        from = indexOf(body, from + 1);
+      }
+    }
+    int[] ends = new int[count];
+    for (int i = 0; i < count; i++) {
+      ends[i] = starts[i] + length;
+    }
+    return MatchResult.of(body, starts, ends, null, count, 1, partialCount, replacements);
+  }
+
+  @Override
+  public int getMaxTermLength() {
+    return pattern.length;
+  }
+
+  @Override
+  public Occurrences scan(String body, int textStart, int textEnd, int from, int to) {
+    Occurrences occurrences = new Occurrences();
+    int limit = Math.min(to - 1, textEnd - pattern.length);
+    for (int at = indexOf(body, from, limit); at >= 0; at = indexOf(body, at + 1, limit)) {
+      occurrences.add(at, 0, WordBoundary.before(body, textStart, at, wordStart)
+          && WordBoundary.after(body, at + pattern.length, textEnd, wordEnd));
+    }
+    return occurrences;
+  }
+
+  /**
+   * Chooses the matches like {@link #walk(String, String[])}: whole word occurrences are taken
+   * leftmost first, skipping any that overlaps the previous match, and an occurrence inside
+   * other words is a partial unless it overlaps a match.
+   */
+  @Override
+  public MatchResult select(String body, Occurrences occurrences, String[] replacements) {
+    int[] starts = new int[INITIAL_OFFSETS];
+    int count = 0;
+    int lastEnd = 0;
+    for (int i = 0; i < occurrences.size(); i++) {
+      int start = occurrences.startAt(i);
+      if (start >= lastEnd && occurrences.isWholeWordAt(i)) {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = start;
+        lastEnd = start + pattern.length;
+      }
+    }
+    int[] ends = new int[count];
+    for (int i = 0; i < count; i++) {
+      ends[i] = starts[i] + pattern.length;
+    }
+    int partialCount = occurrences.countPartials(starts, ends, count,
+        rule -> pattern.length);
+    return MatchResult.of(body, starts, ends, null, count, 1, partialCount, replacements);
+  }
+
+  /**
+   * Boyer-Moore-Horspool search for the term.
+   *
+   * @param body the body
+   * @param from the index to start from
+   * @return the index of the next occurrence, or -1
+   */
+  private int indexOf(String body, int from) {
+    return indexOf(body, from, body.length() - pattern.length);
+  }
+
+  /**
+   * Boyer-Moore-Horspool search for the term, up to a last start offset.
+   *
+   * @param body the body
+   * @param from the index to start from
+   * @param limit the last start offset, inclusive
+   * @return the index of the next occurrence, or -1
+   */
+  private int indexOf(String body, int from, int limit) {
+    int last = pattern.length - 1;
+    int i = from;
+    while (i <= limit) {
+      int j = last;
+      char lastChar = folding.fold(body.charAt(i + last));
+      char c = lastChar;
+      while (c == pattern[j]) {
+        if (j == 0) {
+          return i;
+        }
+        c = folding.fold(body.charAt(i + --j));
+      }
+      i += shift[lastChar & (TABLE_SIZE - 1)];
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,165 @@
+package org.emeritus.search.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.emeritus.search.dto.ReplaceRule;
+import org.emeritus.search.exception.BadRequestException;
+import org.emeritus.search.service.helper.PatternCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compiles rule sets into {@link TermMatcher}s. Terms are matched literally as whole words by
+ * default, without going through {@code java.util.regex}: a single term with Boyer-Moore-Horspool
+ * and several with one Aho-Corasick automaton. Regular expressions are used only when the caller
+ * asks for regex mode, on a linear-time engine where the syntax allows and otherwise on
+ * {@code java.util.regex} with a per-body budget. Large bodies are matched in chunks on the match
+ * pool.
+ */
+@Component
+public class MatchEngine {
+
+  /** Whether bodies are matched as HTML, in text nodes only. */
+  @Value("${search.html.text-only:true}")
+  private boolean htmlTextOnly;
+
+  /** The attributes whose values are matched like text. */
+  @Value("${search.html.attribute-allowlist:alt,title}")
+  private List<String> attributeAllowlist;
+
+  /** The character accesses a backtracking regex may make per character of body. */
+  @Value("${search.regex.accesses-per-char:100}")
+  private long regexAccessesPerChar;
+
+  /** The character accesses a backtracking regex may make on any body. */
+  @Value("${search.regex.min-accesses:1000000}")
+  private long regexMinAccesses;
+
+  /** The time a backtracking regex may take per body. */
+  @Value("${search.regex.timeout-ms:2000}")
+  private long regexTimeoutMs;
+
+  /** Whether large bodies are matched in parallel chunks. */
+  @Value("${search.match.chunked-enabled:true}")
+  private boolean chunkedEnabled;
+
+  /** The body size from which a body is matched in chunks. */
+  @Value("${search.match.chunk-threshold-kb:512}")
+  private int chunkThresholdKb;
+
+  /** The chunk size. */
+  @Value("${search.match.chunk-size-kb:128}")
+  private int chunkSizeKb;
+
+  /** The pattern cache. */
+  @Autowired
+  private PatternCache patternCache;
+
+  /** The match pool. */
+  @Autowired
+  @Qualifier("matchPool")
+  private ForkJoinPool matchPool;
+
+  /** The lower case attribute allowlist. */
+  private Set<String> attributeNames;
+
+  /** The chunked scan. */
+  private ChunkedScan chunkedScan;
+
+  /**
+   * Inits the attribute allowlist and the chunked scan.
+   */
+  @PostConstruct
+  public void init() {
+    attributeNames = attributeAllowlist.stream().map(String::trim).filter(s -> !s.isEmpty())
+        .map(s -> s.toLowerCase(Locale.ROOT)).collect(Collectors.toUnmodifiableSet());
+    chunkedScan = new ChunkedScan(matchPool,
+        chunkedEnabled ? chunkThresholdKb * 1024 : Integer.MAX_VALUE, chunkSizeKb * 1024);
+  }
+
+  /**
+   * Compiles the rules. The replacement of a rule may be null when the matcher is only used to
+   * find. Unless disabled, bodies are treated as HTML and only their text is matched.
+   *
+   * @param rules the rules, in order
+   * @param options the match options
+   * @return the term matcher
+   * @throws BadRequestException if there is no rule, a source text is empty, or regex mode is
+   *         asked for with several rules, accent folding or an invalid expression
+   */
+  public TermMatcher compile(List<ReplaceRule> rules, MatchOptions options) {
+    RangeMatcher termMatcher = compileText(rules, options);
+    return htmlTextOnly ? new HtmlTextMatcher(termMatcher, attributeNames, chunkedScan)
+        : termMatcher;
+  }
+
+  /**
+   * Compiles the rules for plain text.
+   *
+   * @param rules the rules
+   * @param options the match options
+   * @return the term matcher
+   */
+  private RangeMatcher compileText(List<ReplaceRule> rules, MatchOptions options) {
+    if (rules == null || rules.isEmpty()) {
+      throw new BadRequestException("At least one search text is required");
+    }
+    List<String> terms = new ArrayList<>(rules.size());
+    List<String> replacements = new ArrayList<>(rules.size());
+    for (ReplaceRule rule : rules) {
+      if (rule.getSourceText() == null || rule.getSourceText().isEmpty()) {
+        throw new BadRequestException("Search text must not be empty");
+      }
+      terms.add(rule.getSourceText());
+      replacements.add(rule.getTextToBeReplace() == null ? "" : rule.getTextToBeReplace());
+    }
+    if (options.isRegex()) {
+      if (rules.size() > 1) {
+        throw new BadRequestException("Regex mode takes a single rule");
+      }
+      if (options.isIgnoreAccents()) {
+        throw new BadRequestException("Accent-insensitive matching is not available for regex");
+      }
+      return compileRegex(terms.get(0), replacements.get(0), options.isIgnoreCase());
+    }
+    CharFolding folding = CharFolding.of(options.isIgnoreCase(), options.isIgnoreAccents());
+    ChunkableMatcher matcher = rules.size() == 1
+        ? new LiteralWordMatcher(terms.get(0), replacements.get(0), folding)
+        : new AhoCorasickMatcher(terms, replacements, folding);
+    return new ChunkedMatcher(matcher, chunkedScan);
+  }
+
+  /**
+   * Compiles a regular expression, on the linear-time engine when it accepts the syntax and
+   * otherwise on {@code java.util.regex} under the configured budget.
+   *
+   * @param regex the regex
+   * @param replacement the replacement template
+   * @param ignoreCase whether to ignore case
+   * @return the term matcher
+   */
+  private RegexMatcher compileRegex(String regex, String replacement, boolean ignoreCase) {
+    try {
+      return RegexMatcher.linear(regex, ignoreCase, replacement);
+    } catch (com.google.re2j.PatternSyntaxException e) {
+      // Not in the linear-time subset, e.g. backreferences or lookaround
+    }
+    int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+    try {
+      return RegexMatcher.guarded(patternCache.compile(regex, flags), replacement,
+          regexAccessesPerChar, regexMinAccesses, TimeUnit.MILLISECONDS.toNanos(regexTimeoutMs));
+    } catch (PatternSyntaxException e) {
+      throw new BadRequestException("Invalid regular expression: " + e.getDescription());
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package org.emeritus.search.matcher;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * How the terms of a rule set are matched.
+ */
+@Data
+@Builder
+public class MatchOptions {
+
+  /** Whether the source text is a regular expression rather than a literal word. */
+  private boolean regex;
+
+  /** Whether upper and lower case match each other. */
+  private boolean ignoreCase;
+
+  /** Whether accented letters match their unaccented base letter. */
+  private boolean ignoreAccents;
+
+}
@@ -0,0 +1,240 @@
+package org.emeritus.search.matcher;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of one pass of a {@link TermMatcher} over a body: where each rule matched, how often
+ * a term only appeared inside other words and, when asked for, the rewritten body.
+ */
+public final class MatchResult {
+
+  /** An empty offsets array. */
+  private static final int[] EMPTY = new int[0];
+
+  /** The start offsets of the matches. */
+  private final int[] starts;
+
+  /** The end offsets of the matches, exclusive. */
+  private final int[] ends;
+
+  /** The rule of each match, or null when there is a single rule. */
+  private final int[] rules;
+
+  /** The replacement of each match, or null when replacements are per rule. */
+  private final String[] expansions;
+
+  /** The number of matches. */
+  private final int count;
+
+  /** The number of matches per rule. */
+  private final int[] ruleCounts;
+
+  /** The number of occurrences inside other words. */
+  private final int partialCount;
+
+  /** The rewritten body. */
+  private final String rewritten;
+
+  /** Whether the rewritten body differs from the original. */
+  private final boolean changed;
+
+  /**
+   * Instantiates a new match result.
+   *
+   * @param starts the start offsets, of which the first count are used
+   * @param ends the end offsets, of which the first count are used
+   * @param rules the rule of each match, or null
+   * @param expansions the replacement of each match, or null
+   * @param count the count
+   * @param ruleCounts the rule counts
+   * @param partialCount the partial count
+   * @param rewritten the rewritten body, or null
+   * @param changed whether the rewritten body differs from the original
+   */
+  private MatchResult(int[] starts, int[] ends, int[] rules, String[] expansions, int count,
+      int[] ruleCounts, int partialCount, String rewritten, boolean changed) {
+    this.starts = starts;
+    this.ends = ends;
+    this.rules = rules;
+    this.expansions = expansions;
+    this.count = count;
+    this.ruleCounts = ruleCounts;
+    this.partialCount = partialCount;
+    this.rewritten = rewritten;
+    this.changed = changed;
+  }
+
+  /**
+   * Builds the result of a walk, rewriting the body with {@link ReplacementWriter} when
+   * replacements are given.
+   *
+   * @param body the body
+   * @param starts the start offsets, in increasing order and not overlapping
+   * @param ends the end offsets
+   * @param rules the rule of each match, or null when there is a single rule
+   * @param count the count
+   * @param ruleCount the number of rules
+   * @param partialCount the partial count
+   * @param replacements the replacement per rule, or null to only find
+   * @return the match result
+   */
+  static MatchResult of(String body, int[] starts, int[] ends, int[] rules, int count,
+      int ruleCount, int partialCount, String[] replacements) {
+    if (count == 0) {
+      return new MatchResult(EMPTY, EMPTY, null, null, 0, new int[ruleCount], partialCount,
+          replacements == null ? null : body, false);
+    }
+    int[] ruleCounts = new int[ruleCount];
+    for (int i = 0; i < count; i++) {
+      ruleCounts[rules == null ? 0 : rules[i]]++;
+    }
+    if (replacements == null) {
+      return new MatchResult(starts, ends, rules, null, count, ruleCounts, partialCount, null,
+          false);
+    }
+    String rewritten = ReplacementWriter.write(body, starts, ends, count,
+        i -> replacements[rules == null ? 0 : rules[i]]);
+    return new MatchResult(starts, ends, rules, null, count, ruleCounts, partialCount,
+        rewritten, rewritten != body);
+  }
+
+  /**
+   * Builds the result of a single rule walk whose replacement differs per match, as with regex
+   * replacement templates.
+   *
+   * @param body the body
+   * @param starts the start offsets, in increasing order and not overlapping
+   * @param ends the end offsets
+   * @param count the count
+   * @param expansions the replacement of each match
+   * @param rewrite whether to rewrite the body
+   * @return the match result
+   */
+  static MatchResult ofExpanded(String body, int[] starts, int[] ends, int count,
+      String[] expansions, boolean rewrite) {
+    if (count == 0) {
+      return new MatchResult(EMPTY, EMPTY, null, null, 0, new int[1], 0, rewrite ? body : null,
+          false);
+    }
+    if (!rewrite) {
+      return new MatchResult(starts, ends, null, expansions, count, new int[] {count}, 0, null,
+          false);
+    }
+    String rewritten = ReplacementWriter.write(body, starts, ends, count, i -> expansions[i]);
+    return new MatchResult(starts, ends, null, expansions, count, new int[] {count}, 0,
+        rewritten, rewritten != body);
+  }
+
+  /**
+   * Gets the start offset of a match.
+   *
+   * @param match the match index
+   * @return the start offset
+   */
+  int startAt(int match) {
+    return starts[match];
+  }
+
+  /**
+   * Gets the end offset of a match, exclusive.
+   *
+   * @param match the match index
+   * @return the end offset
+   */
+  int endAt(int match) {
+    return ends[match];
+  }
+
+  /**
+   * Gets the rule of a match.
+   *
+   * @param match the match index
+   * @return the rule index
+   */
+  int ruleAt(int match) {
+    return rules == null ? 0 : rules[match];
+  }
+
+  /**
+   * Gets the replacement of a match when it differs per match.
+   *
+   * @param match the match index
+   * @return the replacement, or null when replacements are per rule
+   */
+  String expansionAt(int match) {
+    return expansions == null ? null : expansions[match];
+  }
+
+  /**
+   * Gets the number of matches, over all rules.
+   *
+   * @return the count
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the number of matches of each rule, in rule order.
+   *
+   * @return the rule counts
+   */
+  public int[] getRuleCounts() {
+    return ruleCounts.clone();
+  }
+
+  /**
+   * Gets the number of occurrences that were not matched because they sit inside other words.
+   *
+   * @return the partial count
+   */
+  public int getPartialCount() {
+    return partialCount;
+  }
+
+  /**
+   * Checks if any term matched.
+   *
+   * @return true, if found
+   */
+  public boolean isFound() {
+    return count > 0;
+  }
+
+  /**
+   * Gets the start offsets of the matches, in order.
+   *
+   * @return the offsets
+   */
+  public int[] getOffsets() {
+    return Arrays.copyOf(starts, count);
+  }
+
+  /**
+   * Gets the end offsets of the matches, exclusive, in order.
+   *
+   * @return the end offsets
+   */
+  public int[] getEndOffsets() {
+    return Arrays.copyOf(ends, count);
+  }
+
+  /**
+   * Gets the rewritten body. Null unless a replacement was asked for; the original body when
+   * nothing matched or every replacement equals the text it replaces.
+   *
+   * @return the rewritten body
+   */
+  public String getRewritten() {
+    return rewritten;
+  }
+
+  /**
+   * Checks if the rewritten body differs from the original. False when only finding.
+   *
+   * @return true, if changed
+   */
+  public boolean isChanged() {
+    return changed;
+  }
+}
@@ -0,0 +1,146 @@
+package org.emeritus.search.matcher;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The occurrences of the terms of a {@link ChunkableMatcher} in one range of a body, whole word
+ * or not, in start order and then rule order. Each is packed in a long as its start, its rule and
+ * a flag set when it sits inside another word.
+ */
+final class Occurrences {
+
+  /** The initial capacity. */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** The packed occurrences. */
+  private long[] values;
+
+  /** The count. */
+  private int count;
+
+  /**
+   * Instantiates new empty occurrences.
+   */
+  Occurrences() {
+    this.values = new long[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Instantiates new occurrences over packed values.
+   *
+   * @param values the values
+   * @param count the count
+   */
+  private Occurrences(long[] values, int count) {
+    this.values = values;
+    this.count = count;
+  }
+
+  /**
+   * Adds an occurrence.
+   *
+   * @param start the start
+   * @param rule the rule
+   * @param wholeWord whether it is delimited by word boundaries
+   */
+  void add(int start, int rule, boolean wholeWord) {
+    if (count == values.length) {
+      values = Arrays.copyOf(values, count * 2);
+    }
+    values[count++] = ((long) start << 32) | ((long) rule << 1) | (wholeWord ? 0 : 1);
+  }
+
+  /**
+   * Sorts the occurrences by start, then rule. Needed when they were not found in start order.
+   */
+  void sort() {
+    Arrays.sort(values, 0, count);
+  }
+
+  /**
+   * Concatenates the occurrences of two adjacent ranges, the first one before the second.
+   *
+   * @param first the first range
+   * @param second the second range
+   * @return the occurrences of both ranges
+   */
+  static Occurrences concat(Occurrences first, Occurrences second) {
+    if (second.count == 0) {
+      return first;
+    }
+    if (first.count == 0) {
+      return second;
+    }
+    long[] values = Arrays.copyOf(first.values, first.count + second.count);
+    System.arraycopy(second.values, 0, values, first.count, second.count);
+    return new Occurrences(values, values.length);
+  }
+
+  /**
+   * Gets the count.
+   *
+   * @return the count
+   */
+  int size() {
+    return count;
+  }
+
+  /**
+   * Gets the start of an occurrence.
+   *
+   * @param index the index
+   * @return the start
+   */
+  int startAt(int index) {
+    return (int) (values[index] >>> 32);
+  }
+
+  /**
+   * Gets the rule of an occurrence.
+   *
+   * @param index the index
+   * @return the rule
+   */
+  int ruleAt(int index) {
+    return (int) values[index] >>> 1;
+  }
+
+  /**
+   * Checks if an occurrence is delimited by word boundaries.
+   *
+   * @param index the index
+   * @return true, if whole word
+   */
+  boolean isWholeWordAt(int index) {
+    return (values[index] & 1) == 0;
+  }
+
+  /**
+   * Counts the occurrences inside other words that overlap none of the chosen matches, so text
+   * already replaced is not also reported as found inside other words.
+   *
+   * @param starts the starts of the matches, in order and not overlapping
+   * @param ends the ends of the matches
+   * @param matchCount the number of matches
+   * @param lengthOfRule the term length of a rule
+   * @return the partial count
+   */
+  int countPartials(int[] starts, int[] ends, int matchCount, IntUnaryOperator lengthOfRule) {
+    int partialCount = 0;
+    int next = 0;
+    for (int i = 0; i < count; i++) {
+      if (isWholeWordAt(i)) {
+        continue;
+      }
+      int start = startAt(i);
+      while (next < matchCount && ends[next] <= start) {
+        next++;
+      }
+      if (next == matchCount || starts[next] >= start + lengthOfRule.applyAsInt(ruleAt(i))) {
+        partialCount++;
+      }
+    }
+    return partialCount;
+  }
+}
@@ -0,0 +1,35 @@
+package org.emeritus.search.matcher;
+
+/**
+ * A matcher that can also match runs of a larger body in place, such as the text nodes of an
+ * HTML body, without copying them out. Each run is matched as if it were the whole body, and the
+ * offsets of its matches are offsets into the body.
+ */
+interface RangeMatcher extends TermMatcher {
+
+  /**
+   * Starts matching runs of a body.
+   *
+   * @param body the body
+   * @param expand whether to expand the replacement of each match, for matchers whose
+   *        replacement differs per match
+   * @return the range search
+   */
+  RangeSearch search(String body, boolean expand);
+
+  /**
+   * The matching of the runs of one body.
+   */
+  @FunctionalInterface
+  interface RangeSearch {
+
+    /**
+     * Finds the matches of the terms in a run of the body.
+     *
+     * @param start the start of the run
+     * @param end the end of the run, exclusive
+     * @return the match result, with offsets into the body
+     */
+    MatchResult find(int start, int end);
+  }
+}
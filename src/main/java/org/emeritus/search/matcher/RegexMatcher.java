@@ -0,0 +1,407 @@
+package org.emeritus.search.matcher;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import org.emeritus.search.exception.BadRequestException;
+
+/**
+ * Matcher for a user supplied regular expression, used only when regex mode is asked for. The
+ * expression is applied as given, with no word boundaries added, and the replacement is a
+ * template that may refer to capture groups.
+ *
+ * <p>Expressions run on one of two engines. The linear engine (RE2/J) takes time proportional to
+ * the body whatever the expression, and is used whenever it accepts the syntax. Expressions it
+ * rejects, such as those with backreferences or lookaround, run on {@code java.util.regex} over a
+ * {@link BudgetedCharSequence}, so a pathological one fails with a clear error instead of
+ * pinning a core.
+ */
+final class RegexMatcher implements RangeMatcher {
+
+  /** The initial capacity of the offsets arrays. */
+  private static final int INITIAL_OFFSETS = 8;
+
+  /** The engine name, part of the key. */
+  private final String engine;
+
+  /** The expression. */
+  private final String regex;
+
+  /** The engine flags, part of the key. */
+  private final int flags;
+
+  /** Opens the finders of a body. */
+  private final FinderFactory finders;
+
+  /** The replacement template. */
+  private final ReplacementTemplate template;
+
+  /**
+   * The replacement as a one element array indexed by rule: the unescaped text when the template
+   * has no group reference, otherwise the template as given.
+   */
+  private final String[] replacements;
+
+  /**
+   * Instantiates a new regex matcher.
+   *
+   * @param engine the engine
+   * @param regex the regex
+   * @param flags the flags
+   * @param finders the finders
+   * @param template the template
+   * @param replacement the replacement
+   */
+  private RegexMatcher(String engine, String regex, int flags, FinderFactory finders,
+      ReplacementTemplate template, String replacement) {
+    this.engine = engine;
+    this.regex = regex;
+    this.flags = flags;
+    this.finders = finders;
+    this.template = template;
+    this.replacements =
+        new String[] {template.isLiteral() ? template.expand(null) : replacement};
+  }
+
+  /**
+   * Creates a matcher on the linear-time engine.
+   *
+   * @param regex the regex, in {@code java.util.regex} syntax
+   * @param ignoreCase whether to ignore case
+   * @param replacement the replacement template
+   * @return the regex matcher
+   * @throws com.google.re2j.PatternSyntaxException if the linear engine does not accept the
+   *         syntax
+   * @throws BadRequestException if the template refers to a missing group
+   */
+  static RegexMatcher linear(String regex, boolean ignoreCase, String replacement) {
+    com.google.re2j.Pattern pattern = com.google.re2j.Pattern.compile(toLinearSyntax(regex),
+        ignoreCase ? com.google.re2j.Pattern.CASE_INSENSITIVE : 0);
+    ReplacementTemplate template = ReplacementTemplate.parse(replacement, pattern.groupCount(),
+        pattern.namedGroups()::containsKey);
+    return new RegexMatcher("re2j", regex, pattern.flags(),
+        body -> (start, end) -> new LinearFinder(pattern.matcher(
+            start == 0 && end == body.length() ? body : CharBuffer.wrap(body, start, end)), start),
+        template, replacement);
+  }
+
+  /**
+   * Creates a matcher on the backtracking engine, bounded per body by a character-access budget
+   * and a timeout. The bounds cover the whole body, however many runs of it are matched.
+   *
+   * @param pattern the pattern
+   * @param replacement the replacement template
+   * @param accessesPerChar the character accesses allowed per character of body
+   * @param minAccesses the character accesses allowed on any body
+   * @param timeoutNanos the time allowed per body, in nanoseconds
+   * @return the regex matcher
+   * @throws BadRequestException if the template refers to a missing group
+   */
+  static RegexMatcher guarded(java.util.regex.Pattern pattern, String replacement,
+      long accessesPerChar, long minAccesses, long timeoutNanos) {
+    ReplacementTemplate template = ReplacementTemplate.parse(replacement,
+        pattern.matcher("").groupCount(), name -> hasGroup(pattern, name));
+    return new RegexMatcher("jdk", pattern.pattern(), pattern.flags(), body -> {
+      BudgetedCharSequence.Budget budget = new BudgetedCharSequence.Budget(body.length(),
+          Math.max(minAccesses, accessesPerChar * body.length()), timeoutNanos);
+      return (start, end) -> new GuardedFinder(
+          pattern.matcher(new BudgetedCharSequence(body, budget)).region(start, end));
+    }, template, replacement);
+  }
+
+  /**
+   * Rewrites the named groups of an expression from the {@code java.util.regex} syntax
+   * {@code (?<name>...)} to the {@code (?P<name>...)} accepted by the linear engine. Escaped
+   * characters and character classes are left alone.
+   *
+   * @param regex the regex
+   * @return the regex in linear engine syntax
+   */
+  static String toLinearSyntax(String regex) {
+    if (!regex.contains("(?<")) {
+      return regex;
+    }
+    StringBuilder out = new StringBuilder(regex.length() + 8);
+    boolean inClass = false;
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      out.append(c);
+      if (c == '\\' && i + 1 < regex.length()) {
+        out.append(regex.charAt(++i));
+      } else if (c == '[') {
+        inClass = true;
+      } else if (c == ']') {
+        inClass = false;
+      } else if (c == '(' && !inClass && regex.startsWith("?<", i + 1) && i + 3 < regex.length()
+          && Character.isLetter(regex.charAt(i + 3))) {
+        out.append("?P<");
+        i += 2;
+      }
+    }
+    return out.toString();
+  }
+
+  /**
+   * Checks if a backtracking pattern has a named group. {@code java.util.regex.Pattern} does not
+   * list its groups, so the name is looked up on a match of a variant that also matches the empty
+   * string.
+   *
+   * @param pattern the pattern
+   * @param name the name
+   * @return true, if the group exists
+   */
+  private static boolean hasGroup(java.util.regex.Pattern pattern, String name) {
+    java.util.regex.Matcher probe =
+        java.util.regex.Pattern.compile("(?:" + pattern.pattern() + ")|", pattern.flags())
+            .matcher("");
+    probe.matches();
+    try {
+      probe.group(name);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public MatchResult find(String body) {
+    return walk(body, null, 0, body == null ? 0 : body.length(), false, false);
+  }
+
+  @Override
+  public MatchResult replace(String body) {
+    return walk(body, null, 0, body == null ? 0 : body.length(), true, true);
+  }
+
+  /**
+   * Matches each run on a region or view of the body, all runs drawing on the one budget of the
+   * body. When expanding, the template is expanded for each match without rewriting the body,
+   * which the caller rewrites from the offsets.
+   */
+  @Override
+  public RangeSearch search(String body, boolean expand) {
+    BodyFinders runs = finders.open(body);
+    return (start, end) -> walk(body, runs, start, end, expand, false);
+  }
+
+  @Override
+  public boolean mayMatch(TrigramSignature signature) {
+    return true;
+  }
+
+  @Override
+  public int getRuleCount() {
+    return 1;
+  }
+
+  @Override
+  public String getTerm(int rule) {
+    return regex;
+  }
+
+  @Override
+  public String getReplacement(int rule) {
+    return replacements[rule];
+  }
+
+  @Override
+  public String getKey() {
+    return "regex:" + engine + ':' + flags + ':' + regex;
+  }
+
+  /**
+   * Walks a run of the body once. Empty matches are skipped, since replacing them would insert
+   * text between every character.
+   *
+   * @param body the body
+   * @param runs the finders of the body, or null to open them for this walk alone
+   * @param start the start of the run
+   * @param end the end of the run, exclusive
+   * @param expand whether to expand the template for each match
+   * @param rewrite whether to rewrite the body
+   * @return the match result
+   */
+  private MatchResult walk(String body, BodyFinders runs, int start, int end, boolean expand,
+      boolean rewrite) {
+    if (body == null || start == end) {
+      return MatchResult.of(body, null, null, null, 0, 1, 0, rewrite ? replacements : null);
+    }
+    Finder finder = (runs == null ? finders.open(body) : runs).over(start, end);
+    boolean perMatch = expand && !template.isLiteral();
+    int[] starts = new int[INITIAL_OFFSETS];
+    int[] ends = new int[INITIAL_OFFSETS];
+    String[] expansions = perMatch ? new String[INITIAL_OFFSETS] : null;
+    int count = 0;
+    while (finder.find()) {
+      if (finder.end() == finder.start()) {
+        continue;
+      }
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, count * 2);
+        ends = Arrays.copyOf(ends, count * 2);
+        if (perMatch) {
+          expansions = Arrays.copyOf(expansions, count * 2);
+        }
+      }
+      if (perMatch) {
+        expansions[count] = template.expand(finder);
+      }
+      starts[count] = finder.start();
+      ends[count++] = finder.end();
+    }
+    if (perMatch) {
+      return MatchResult.ofExpanded(body, starts, ends, count, expansions, rewrite);
+    }
+    return MatchResult.of(body, starts, ends, null, count, 1, 0, rewrite ? replacements : null);
+  }
+
+  /**
+   * Opens the finders of a body.
+   */
+  @FunctionalInterface
+  private interface FinderFactory {
+
+    /**
+     * Opens the finders of a body, setting up whatever bounds apply to the body as a whole.
+     *
+     * @param body the body
+     * @return the finders of the body
+     */
+    BodyFinders open(String body);
+  }
+
+  /**
+   * Opens finders over runs of one body. Safe to use from several threads at once.
+   */
+  @FunctionalInterface
+  private interface BodyFinders {
+
+    /**
+     * Opens a finder that matches the run as if it were the whole body, reporting offsets into
+     * the body.
+     *
+     * @param start the start of the run
+     * @param end the end of the run, exclusive
+     * @return the finder
+     */
+    Finder over(int start, int end);
+  }
+
+  /**
+   * A running search over one body, on either engine.
+   */
+  private interface Finder extends ReplacementTemplate.Groups {
+
+    /**
+     * Finds the next match.
+     *
+     * @return true, if found
+     */
+    boolean find();
+
+    /**
+     * Gets the start of the current match.
+     *
+     * @return the start
+     */
+    int start();
+
+    /**
+     * Gets the end of the current match, exclusive.
+     *
+     * @return the end
+     */
+    int end();
+  }
+
+  /**
+   * A finder on the linear-time engine.
+   */
+  private static final class LinearFinder implements Finder {
+
+    /** The matcher, over a view of the run. */
+    private final com.google.re2j.Matcher matcher;
+
+    /** The offset of the run in the body. */
+    private final int offset;
+
+    /**
+     * Instantiates a new linear finder.
+     *
+     * @param matcher the matcher
+     * @param offset the offset
+     */
+    LinearFinder(com.google.re2j.Matcher matcher, int offset) {
+      this.matcher = matcher;
+      this.offset = offset;
+    }
+
+    @Override
+    public boolean find() {
+      return matcher.find();
+    }
+
+    @Override
+    public int start() {
+      return offset + matcher.start();
+    }
+
+    @Override
+    public int end() {
+      return offset + matcher.end();
+    }
+
+    @Override
+    public String group(int group) {
+      return matcher.group(group);
+    }
+
+    @Override
+    public String group(String name) {
+      return matcher.group(name);
+    }
+  }
+
+  /**
+   * A finder on the backtracking engine, over a region of the body with opaque and anchoring
+   * bounds, so lookaround and anchors see the run alone.
+   */
+  private static final class GuardedFinder implements Finder {
+
+    /** The matcher. */
+    private final java.util.regex.Matcher matcher;
+
+    /**
+     * Instantiates a new guarded finder.
+     *
+     * @param matcher the matcher
+     */
+    GuardedFinder(java.util.regex.Matcher matcher) {
+      this.matcher = matcher;
+    }
+
+    @Override
+    public boolean find() {
+      return matcher.find();
+    }
+
+    @Override
+    public int start() {
+      return matcher.start();
+    }
+
+    @Override
+    public int end() {
+      return matcher.end();
+    }
+
+    @Override
+    public String group(int group) {
+      return matcher.group(group);
+    }
+
+    @Override
+    public String group(String name) {
+      return matcher.group(name);
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package org.emeritus.search.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import org.emeritus.search.exception.BadRequestException;
+
+/**
+ * A regex replacement template, parsed once per request. Follows the syntax of
+ * {@code java.util.regex.Matcher#appendReplacement}: {@code $n} and {@code ${name}} refer to
+ * capture groups, and a backslash takes the next character literally. A group that did not take
+ * part in a match expands to nothing.
+ */
+final class ReplacementTemplate {
+
+  /** The literal text before each group reference, then the trailing text. */
+  private final String[] literals;
+
+  /** The referenced group numbers, or -1 for a named reference. */
+  private final int[] groups;
+
+  /** The referenced group names, or null for a numbered reference. */
+  private final String[] names;
+
+  /**
+   * Instantiates a new replacement template.
+   *
+   * @param literals the literals
+   * @param groups the groups
+   * @param names the names
+   */
+  private ReplacementTemplate(String[] literals, int[] groups, String[] names) {
+    this.literals = literals;
+    this.groups = groups;
+    this.names = names;
+  }
+
+  /**
+   * Parses a template against the groups of a pattern.
+   *
+   * @param template the template
+   * @param groupCount the number of capture groups of the pattern
+   * @param hasGroup tells whether the pattern has a group of a given name
+   * @return the replacement template
+   * @throws BadRequestException if the template is malformed or refers to a missing group
+   */
+  static ReplacementTemplate parse(String template, int groupCount,
+      Predicate<String> hasGroup) {
+    List<String> literals = new ArrayList<>();
+    List<Integer> groups = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+    int i = 0;
+    while (i < template.length()) {
+      char c = template.charAt(i++);
+      if (c == '\\') {
+        if (i == template.length()) {
+          throw new BadRequestException("Replacement ends with an unescaped backslash");
+        }
+        literal.append(template.charAt(i++));
+      } else if (c != '$') {
+        literal.append(c);
+      } else if (i == template.length()) {
+        throw new BadRequestException("Replacement ends with an unescaped $");
+      } else if (template.charAt(i) == '{') {
+        int close = template.indexOf('}', i);
+        if (close < 0) {
+          throw new BadRequestException("Unclosed group reference in replacement");
+        }
+        String name = template.substring(i + 1, close);
+        if (name.isEmpty() || !hasGroup.test(name)) {
+          throw new BadRequestException("No group named '" + name + "' in the expression");
+        }
+        literals.add(literal.toString());
+        literal.setLength(0);
+        groups.add(-1);
+        names.add(name);
+        i = close + 1;
+      } else {
+        int group = Character.digit(template.charAt(i), 10);
+        if (group < 0) {
+          throw new BadRequestException("Group reference in replacement must be $n or ${name}");
+        }
+        if (group > groupCount) {
+          throw new BadRequestException("No group " + group + " in the expression");
+        }
+        i++;
+        while (i < template.length()) {
+          int digit = Character.digit(template.charAt(i), 10);
+          if (digit < 0 || group * 10 + digit > groupCount) {
+            break;
+          }
+          group = group * 10 + digit;
+          i++;
+        }
+        literals.add(literal.toString());
+        literal.setLength(0);
+        groups.add(group);
+        names.add(null);
+      }
+    }
+    literals.add(literal.toString());
+    return new ReplacementTemplate(literals.toArray(new String[0]),
+        groups.stream().mapToInt(Integer::intValue).toArray(), names.toArray(new String[0]));
+  }
+
+  /**
+   * Checks if the template has no group reference.
+   *
+   * @return true, if literal
+   */
+  boolean isLiteral() {
+    return groups.length == 0;
+  }
+
+  /**
+   * Expands the template for the current match.
+   *
+   * @param groupsOfMatch the groups of the current match
+   * @return the expansion
+   */
+  String expand(Groups groupsOfMatch) {
+    if (groups.length == 0) {
+      return literals[0];
+    }
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < groups.length; i++) {
+      out.append(literals[i]);
+      String value = groups[i] < 0 ? groupsOfMatch.group(names[i])
+          : groupsOfMatch.group(groups[i]);
+      if (value != null) {
+        out.append(value);
+      }
+    }
+    return out.append(literals[groups.length]).toString();
+  }
+
+  /**
+   * The capture groups of the current match.
+   */
+  interface Groups {
+
+    /**
+     * Gets a numbered group.
+     *
+     * @param group the group number
+     * @return the group text, or null if it did not take part in the match
+     */
+    String group(int group);
+
+    /**
+     * Gets a named group.
+     *
+     * @param name the group name
+     * @return the group text, or null if it did not take part in the match
+     */
+    String group(String name);
+  }
+}
@@ -0,0 +1,56 @@
+package org.emeritus.search.matcher;
+
+import java.util.function.IntFunction;
+
+/**
+ * Writes a rewritten body from precomputed match offsets. A first pass over the matches sizes the
+ * output and checks whether any replacement differs from the text it replaces; when none does,
+ * the original body is returned as is and nothing is allocated. Otherwise the body is written once
+ * into a buffer of exactly its final size. Replacements are always copied literally.
+ */
+final class ReplacementWriter {
+
+  /**
+   * Instantiates a new replacement writer.
+   */
+  private ReplacementWriter() {}
+
+  /**
+   * Writes the body with each match replaced.
+   *
+   * @param body the body
+   * @param starts the start offsets, in increasing order and not overlapping
+   * @param ends the end offsets
+   * @param count the number of matches
+   * @param replacementOf the replacement of each match, by match index
+   * @return the rewritten body, or the same instance when no replacement changes it
+   */
+  static String write(String body, int[] starts, int[] ends, int count,
+      IntFunction<String> replacementOf) {
+    int size = body.length();
+    boolean changed = false;
+    for (int i = 0; i < count; i++) {
+      String replacement = replacementOf.apply(i);
+      int length = ends[i] - starts[i];
+      size += replacement.length() - length;
+      changed |= replacement.length() != length
+          || !body.regionMatches(starts[i], replacement, 0, length);
+    }
+    if (!changed) {
+      return body;
+    }
+    char[] out = new char[size];
+    int read = 0;
+    int write = 0;
+    for (int i = 0; i < count; i++) {
+      String replacement = replacementOf.apply(i);
+      body.getChars(read, starts[i], out, write);
+      write += starts[i] - read;
+      replacement.getChars(0, replacement.length(), out, write);
+      write += replacement.length();
+      read = ends[i];
+    }
+    body.getChars(read, body.length(), out, write);
+    return new String(out);
+  }
+}
@@ -0,0 +1,63 @@
+package org.emeritus.search.matcher;
+
+/**
+ * A rule set compiled for repeated matching against many bodies. Each rule is a term and the text
+ * that replaces it.
+ */
+public interface TermMatcher {
+
+  /**
+   * Finds the matches of the terms in the body.
+   *
+   * @param body the body
+   * @return the match result
+   */
+  MatchResult find(String body);
+
+  /**
+   * Finds the matches of the terms in the body and replaces each with the replacement of its
+   * rule, taken literally.
+   *
+   * @param body the body
+   * @return the match result, with the rewritten body
+   */
+  MatchResult replace(String body);
+
+  /**
+   * Checks whether the terms may occur in a body, from its trigram signature alone.
+   *
+   * @param signature the signature of the body
+   * @return false if no term can occur in the body, so it need not be scanned
+   */
+  boolean mayMatch(TrigramSignature signature);
+
+  /**
+   * Gets the number of rules.
+   *
+   * @return the rule count
+   */
+  int getRuleCount();
+
+  /**
+   * Gets the term of a rule.
+   *
+   * @param rule the rule index
+   * @return the term
+   */
+  String getTerm(int rule);
+
+  /**
+   * Gets the replacement of a rule.
+   *
+   * @param rule the rule index
+   * @return the replacement
+   */
+  String getReplacement(int rule);
+
+  /**
+   * Gets a key identifying the terms together with their match options.
+   *
+   * @return the key
+   */
+  String getKey();
+}
@@ -0,0 +1,176 @@
+package org.emeritus.search.matcher;
+
+/**
+ * Compact summary of the trigrams in a body: a one-hash Bloom filter over the trigrams of the
+ * body folded for case and accents, sized to about two bits per distinct trigram within fixed
+ * bounds. The filter is first built with two bits for every trigram of the body, which can only
+ * overestimate the distinct ones; their number is then estimated from the bits left clear and
+ * the filter folded in halves down to two bits for each. A term can only occur in the body if
+ * every one of its trigrams is in the filter, under any match options, so a missing trigram lets
+ * the body be skipped without scanning it.
+ */
+public final class TrigramSignature {
+
+  /** The smallest filter, in bits. */
+  private static final int MIN_BITS = 64;
+
+  /** The largest filter, in bits. */
+  private static final int MAX_BITS = 1 << 22;
+
+  /** The bits per distinct trigram. */
+  private static final int BITS_PER_TRIGRAM = 2;
+
+  /** The folding applied before taking trigrams, the loosest there is. */
+  private static final CharFolding FOLDING = CharFolding.of(true, true);
+
+  /** The filter bits. */
+  private final long[] bits;
+
+  /** The mask selecting a bit index. */
+  private final int mask;
+
+  /**
+   * Instantiates a new trigram signature.
+   *
+   * @param bits the bits
+   */
+  private TrigramSignature(long[] bits) {
+    this.bits = bits;
+    this.mask = bits.length * Long.SIZE - 1;
+  }
+
+  /**
+   * Computes the signature of a body.
+   *
+   * @param body the body
+   * @return the trigram signature
+   */
+  public static TrigramSignature of(String body) {
+    int trigrams = body == null ? 0 : Math.max(0, body.length() - 2);
+    long[] bits = new long[sizeFor(trigrams) / Long.SIZE];
+    if (trigrams == 0) {
+      return new TrigramSignature(bits);
+    }
+    int mask = bits.length * Long.SIZE - 1;
+    char a = FOLDING.fold(body.charAt(0));
+    char b = FOLDING.fold(body.charAt(1));
+    for (int i = 2; i < body.length(); i++) {
+      char c = FOLDING.fold(body.charAt(i));
+      int bit = hash(a, b, c) & mask;
+      bits[bit >>> 6] |= 1L << bit;
+      a = b;
+      b = c;
+    }
+    // A body repeats trigrams a lot; fold away the bits its distinct ones do not need
+    int size = sizeFor(estimateDistinct(bits, trigrams));
+    while (bits.length * Long.SIZE > size) {
+      bits = fold(bits);
+    }
+    return new TrigramSignature(bits);
+  }
+
+  /**
+   * Gets the trigram hashes of a term, folded the way bodies are.
+   *
+   * @param term the term
+   * @return the trigram hashes, empty if the term is shorter than three chars
+   */
+  static int[] trigramsOf(String term) {
+    if (term.length() < 3) {
+      return new int[0];
+    }
+    String folded = FOLDING.fold(term);
+    int[] trigrams = new int[folded.length() - 2];
+    for (int i = 0; i < trigrams.length; i++) {
+      trigrams[i] = hash(folded.charAt(i), folded.charAt(i + 1), folded.charAt(i + 2));
+    }
+    return trigrams;
+  }
+
+  /**
+   * Checks whether all the trigrams may be in the body. Always true for no trigrams.
+   *
+   * @param trigrams the trigram hashes
+   * @return false if the body certainly lacks one of them
+   */
+  boolean mightContainAll(int[] trigrams) {
+    for (int trigram : trigrams) {
+      int bit = trigram & mask;
+      if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the size of the signature in bytes, for cache weighing.
+   *
+   * @return the size in bytes
+   */
+  public int getSizeInBytes() {
+    return bits.length * Long.BYTES;
+  }
+
+  /**
+   * Gets the filter size for a number of trigrams: the power of two bits nearest above two bits
+   * per trigram, within the bounds.
+   *
+   * @param trigrams the trigrams
+   * @return the size in bits
+   */
+  private static int sizeFor(long trigrams) {
+    long wanted = Math.max(MIN_BITS, Math.min(MAX_BITS, BITS_PER_TRIGRAM * trigrams));
+    return (int) Long.highestOneBit(wanted - 1) << 1;
+  }
+
+  /**
+   * Estimates the number of distinct trigrams set in a filter from the fraction of its bits left
+   * clear, as in linear counting.
+   *
+   * @param bits the bits
+   * @param trigrams the number of trigrams set, distinct or not, for a saturated filter
+   * @return the estimate
+   */
+  private static long estimateDistinct(long[] bits, int trigrams) {
+    long set = 0;
+    for (long word : bits) {
+      set += Long.bitCount(word);
+    }
+    long size = (long) bits.length * Long.SIZE;
+    if (set == size) {
+      return trigrams;
+    }
+    return (long) Math.ceil(-size * Math.log((double) (size - set) / size));
+  }
+
+  /**
+   * Folds a filter into one of half the size. A bit is indexed by the low bits of its hash, so
+   * the upper half lands on the lower one.
+   *
+   * @param bits the bits, at least two words
+   * @return the folded bits
+   */
+  private static long[] fold(long[] bits) {
+    int half = bits.length / 2;
+    long[] folded = new long[half];
+    for (int i = 0; i < half; i++) {
+      folded[i] = bits[i] | bits[i + half];
+    }
+    return folded;
+  }
+
+  /**
+   * Hashes a trigram, taking the high half of a multiplicative hash so every input bit reaches
+   * the low bits used for indexing.
+   *
+   * @param a the first char
+   * @param b the second char
+   * @param c the third char
+   * @return the hash
+   */
+  private static int hash(char a, char b, char c) {
+    long h = ((long) a << 32) | ((long) b << 16) | c;
+    return (int) ((h * 0x9E3779B97F4A7C15L) >>> 32);
+  }
+}
@@ -0,0 +1,60 @@
+package org.emeritus.search.matcher;
+
+/**
+ * Word boundary checks on the characters around a literal occurrence. A side of the term that is
+ * a word character must not touch another word character, as with a regex {@code \b}; a side
+ * that is not, as in {@code C++} or {@code $100}, delimits itself and matches next to anything.
+ * Word characters are letters, digits and the underscore.
+ */
+final class WordBoundary {
+
+  /** Word characters below 128, looked up without calling into Character. */
+  private static final boolean[] ASCII_WORD = new boolean[128];
+
+  static {
+    for (char c = 0; c < ASCII_WORD.length; c++) {
+      ASCII_WORD[c] = c == '_' || Character.isLetterOrDigit(c);
+    }
+  }
+
+  /**
+   * Instantiates a new word boundary.
+   */
+  private WordBoundary() {}
+
+  /**
+   * Checks for a word boundary before the occurrence starting at the index.
+   *
+   * @param body the body
+   * @param textStart the start of the text holding the occurrence, a boundary in itself
+   * @param start the start of the occurrence
+   * @param wordStart whether the first char of the occurrence is a word character
+   * @return true, if a boundary
+   */
+  static boolean before(String body, int textStart, int start, boolean wordStart) {
+    return !wordStart || start == textStart || !isWordChar(body.charAt(start - 1));
+  }
+
+  /**
+   * Checks for a word boundary after the occurrence ending at the index.
+   *
+   * @param body the body
+   * @param end the end of the occurrence, exclusive
+   * @param textEnd the end of the text holding the occurrence, a boundary in itself
+   * @param wordEnd whether the last char of the occurrence is a word character
+   * @return true, if a boundary
+   */
+  static boolean after(String body, int end, int textEnd, boolean wordEnd) {
+    return !wordEnd || end == textEnd || !isWordChar(body.charAt(end));
+  }
+
+  /**
+   * Checks if is word char.
+   *
+   * @param c the c
+   * @return true, if is word char
+   */
+  static boolean isWordChar(char c) {
+    return c < ASCII_WORD.length ? ASCII_WORD[c] : Character.isLetterOrDigit(c);
+  }
+}
@@ -0,0 +1,21 @@
+package org.emeritus.search.model;
+
+import java.util.Date;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The searchable text of a page, assignment or discussion topic at some point, with the time it
+ * was last updated when Canvas reports one.
+ */
+@Data
+@AllArgsConstructor
+public class ContentRevision {
+
+  /** The body, description or message. */
+  private String body;
+
+  /** The updated at. */
+  private Date updatedAt;
+
+}
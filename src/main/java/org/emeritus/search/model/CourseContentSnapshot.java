@@ -0,0 +1,192 @@
+package org.emeritus.search.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.emeritus.canvas.model.DiscussionTopic;
+import org.emeritus.canvas.model.Page;
+import org.emeritus.canvas.model.assignment.Assignment;
+
+/**
+ * Immutable, indexed view of the content of one course. Built once per course so each module item
+ * resolves to its page, discussion topic or assignment in constant time.
+ */
+public final class CourseContentSnapshot {
+
+  /** The course id. */
+  private final String courseId;
+
+  /** The pages by url slug. */
+  private final Map<String, Page> pagesByUrl;
+
+  /** The discussion topics by id. */
+  private final LongIndex<DiscussionTopic> topicsById;
+
+  /** The assignments by id. */
+  private final LongIndex<Assignment> assignmentsById;
+
+  /**
+   * Instantiates a new course content snapshot.
+   *
+   * @param courseId the course id
+   * @param pagesByUrl the pages by url
+   * @param topicsById the topics by id
+   * @param assignmentsById the assignments by id
+   */
+  private CourseContentSnapshot(String courseId, Map<String, Page> pagesByUrl,
+      LongIndex<DiscussionTopic> topicsById, LongIndex<Assignment> assignmentsById) {
+    this.courseId = courseId;
+    this.pagesByUrl = pagesByUrl;
+    this.topicsById = topicsById;
+    this.assignmentsById = assignmentsById;
+  }
+
+  /**
+   * Indexes the content of a course.
+   *
+   * @param courseId the course id
+   * @param pages the pages
+   * @param discussionTopics the discussion topics
+   * @param assignments the assignments
+   * @return the course content snapshot
+   */
+  public static CourseContentSnapshot of(String courseId, List<Page> pages,
+      List<DiscussionTopic> discussionTopics, List<Assignment> assignments) {
+    Map<String, Page> pagesByUrl = new HashMap<>(Math.max(16, pages.size() * 4 / 3 + 1));
+    for (Page page : pages) {
+      if (page.getUrl() != null) {
+        pagesByUrl.putIfAbsent(page.getUrl(), page);
+      }
+    }
+    LongIndex<DiscussionTopic> topicsById = new LongIndex<>(discussionTopics.size());
+    for (DiscussionTopic discussionTopic : discussionTopics) {
+      if (discussionTopic.getId() != null) {
+        topicsById.putIfAbsent(discussionTopic.getId(), discussionTopic);
+      }
+    }
+    LongIndex<Assignment> assignmentsById = new LongIndex<>(assignments.size());
+    for (Assignment assignment : assignments) {
+      if (assignment.getId() != null) {
+        assignmentsById.putIfAbsent(assignment.getId(), assignment);
+      }
+    }
+    return new CourseContentSnapshot(courseId, Collections.unmodifiableMap(pagesByUrl), topicsById,
+        assignmentsById);
+  }
+
+  /**
+   * Gets the course id.
+   *
+   * @return the course id
+   */
+  public String getCourseId() {
+    return courseId;
+  }
+
+  /**
+   * Gets the page with the given url slug.
+   *
+   * @param pageUrl the page url
+   * @return the page, or null
+   */
+  public Page getPage(String pageUrl) {
+    return pageUrl != null ? pagesByUrl.get(pageUrl) : null;
+  }
+
+  /**
+   * Gets the discussion topic with the given id.
+   *
+   * @param contentId the content id
+   * @return the discussion topic, or null
+   */
+  public DiscussionTopic getDiscussionTopic(Long contentId) {
+    return contentId != null ? topicsById.get(contentId) : null;
+  }
+
+  /**
+   * Gets the assignment with the given id.
+   *
+   * @param contentId the content id
+   * @return the assignment, or null
+   */
+  public Assignment getAssignment(Long contentId) {
+    return contentId != null ? assignmentsById.get(contentId) : null;
+  }
+
+  /**
+   * Open addressing hash index keyed by primitive long ids, avoiding a boxed Long per entry.
+   *
+   * @param <T> the value type
+   */
+  private static final class LongIndex<T> {
+
+    /** The keys. */
+    private final long[] keys;
+
+    /** The values; a null value marks a free slot. */
+    private final Object[] values;
+
+    /** The mask. */
+    private final int mask;
+
+    /**
+     * Instantiates a new long index sized for the expected number of entries.
+     *
+     * @param expectedSize the expected size
+     */
+    LongIndex(int expectedSize) {
+      int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+      keys = new long[capacity];
+      values = new Object[capacity];
+      mask = capacity - 1;
+    }
+
+    /**
+     * Put if absent.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    void putIfAbsent(long key, T value) {
+      int slot = slot(key);
+      while (values[slot] != null) {
+        if (keys[slot] == key) {
+          return;
+        }
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      values[slot] = value;
+    }
+
+    /**
+     * Gets the value for the key.
+     *
+     * @param key the key
+     * @return the value, or null
+     */
+    @SuppressWarnings("unchecked")
+    T get(long key) {
+      int slot = slot(key);
+      while (values[slot] != null) {
+        if (keys[slot] == key) {
+          return (T) values[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+      return null;
+    }
+
+    /**
+     * Slot.
+     *
+     * @param key the key
+     * @return the int
+     */
+    private int slot(long key) {
+      long hash = key * 0x9E3779B97F4A7C15L;
+      return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+  }
+}
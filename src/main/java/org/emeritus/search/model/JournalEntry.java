@@ -0,0 +1,41 @@
+package org.emeritus.search.model;
+
+import java.util.Date;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * One Canvas write of a search and replace run, as read back from the replace journal.
+ */
+@Data
+@Builder
+public class JournalEntry {
+
+  /** The id. */
+  private Long id;
+
+  /** The run id, the result id of the replace. */
+  private String runId;
+
+  /** The course id. */
+  private String courseId;
+
+  /** The content type: Page, Assignment or Discussion. */
+  private String contentType;
+
+  /** The page url, assignment id or discussion topic id. */
+  private String contentKey;
+
+  /** The SHA-256 of the content before the write. */
+  private String beforeHash;
+
+  /** The content before the write. */
+  private String beforeBody;
+
+  /** The SHA-256 of the content written. */
+  private String afterHash;
+
+  /** The created date. */
+  private Date createdDate;
+
+}
@@ -0,0 +1,373 @@
+package org.emeritus.search.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import org.emeritus.canvas.lms.rest.api.constant.ParamConstants;
+import org.emeritus.canvas.model.Course;
+import org.emeritus.canvas.model.DiscussionTopic;
+import org.emeritus.canvas.model.Module;
+import org.emeritus.canvas.model.Page;
+import org.emeritus.canvas.model.assignment.Assignment;
+import org.emeritus.search.service.helper.CanvasRestClient;
+import org.emeritus.search.service.helper.ContentFlights;
+import org.emeritus.search.service.helper.TrigramPrefilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * The Class CourseContentService. Reads the modules, pages, assignments and discussion topics of
+ * a course from Canvas. Full list reads of the same course and content type that overlap in time
+ * share one download. The trigram signature of each page, assignment and discussion topic is
+ * computed as it is downloaded, once for all the searches sharing the download.
+ */
+@Service
+public class CourseContentService {
+
+  /** The Constant PAGINATION_PAGE_SIZE. */
+  public static final Integer PAGINATION_PAGE_SIZE = 100;
+
+  /** The Constant COURSES_PATH. */
+  private static final String COURSES_PATH = "/courses/";
+
+  /** The Constant INCLUDE. */
+  private static final String INCLUDE = "include[]";
+
+  /** The Constant MODULES. */
+  private static final String MODULES = "modules";
+
+  /** The Constant PAGES. */
+  private static final String PAGES = "pages";
+
+  /** The Constant ASSIGNMENTS. */
+  private static final String ASSIGNMENTS = "assignments";
+
+  /** The Constant DISCUSSION_TOPICS. */
+  private static final String DISCUSSION_TOPICS = "discussion_topics";
+
+  /** The logger. */
+  private Logger logger = LoggerFactory.getLogger(CourseContentService.class);
+
+  /** The canvas rest client. */
+  @Autowired
+  private CanvasRestClient canvasRestClient;
+
+  /** The content flights. */
+  @Autowired
+  private ContentFlights contentFlights;
+
+  /** The trigram prefilter. */
+  @Autowired
+  private TrigramPrefilter trigramPrefilter;
+
+  /**
+   * Gets the modules, with their items.
+   *
+   * @param courseId the course id
+   * @return the modules
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public List<Module> getModules(String courseId) throws IOException {
+    List<Module> modules = new ArrayList<>();
+    contentFlights.forEachBatch(courseId, MODULES, handler -> {
+      MultiValueMap<String, String> params = CanvasRestClient.queryParams();
+      params.add(INCLUDE, "items");
+      canvasRestClient.forEachPage(COURSES_PATH + courseId + "/modules", params,
+          PAGINATION_PAGE_SIZE, Module.class, handler);
+    }, collect(modules, this::processModules));
+    return modules;
+  }
+
+  /**
+   * Process modules.
+   *
+   * @param modules the modules
+   */
+  private void processModules(List<Module> modules) {
+    logger.info("Total modules: {}", modules.size());
+  }
+
+  /**
+   * List pages in course, with their bodies.
+   *
+   * @param courseId the course id
+   * @return the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public List<Page> listPagesInCourse(String courseId) throws IOException {
+    List<Page> pages = new ArrayList<>();
+    forEachPageBatch(courseId, collect(pages, batch -> {
+    }));
+    return pages;
+  }
+
+  /**
+   * Hands the pages of a course, with their bodies, to the handler one pagination batch at a
+   * time.
+   *
+   * @param courseId the course id
+   * @param handler the handler
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void forEachPageBatch(String courseId, Predicate<List<Page>> handler)
+      throws IOException {
+    contentFlights.forEachBatch(courseId, PAGES, source -> canvasRestClient.forEachPage(
+        COURSES_PATH + courseId + "/pages", pageParams(), PAGINATION_PAGE_SIZE, Page.class,
+        indexed(source, this::indexPage)), logged(handler, this::processPages));
+  }
+
+  /**
+   * Hands the pages of a course to the handler newest first, one batch at a time and without
+   * fetching ahead, so the handler can stop at the first page it has already seen. Not shared
+   * with other callers since each one stops at a different point.
+   *
+   * @param courseId the course id
+   * @param handler the handler
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void forEachPageBatchNewestFirst(String courseId, Predicate<List<Page>> handler)
+      throws IOException {
+    MultiValueMap<String, String> params = pageParams();
+    params.add("sort", "updated_at");
+    params.add("order", "desc");
+    canvasRestClient.forEachPage(COURSES_PATH + courseId + "/pages", params,
+        PAGINATION_PAGE_SIZE, Page.class, false,
+        indexed(logged(handler, this::processPages), this::indexPage));
+  }
+
+  /**
+   * Lists the html urls of the pages of a course, without their bodies, so it is cheap enough to
+   * find the pages deleted or renamed since a previous scan.
+   *
+   * @param courseId the course id
+   * @return the html urls
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Set<String> listPageUrls(String courseId) throws IOException {
+    Set<String> urls = new HashSet<>();
+    canvasRestClient.forEachPage(COURSES_PATH + courseId + "/pages",
+        CanvasRestClient.queryParams(), PAGINATION_PAGE_SIZE, Page.class, batch -> {
+          batch.forEach(page -> urls.add(page.getHtmlUrl()));
+          return true;
+        });
+    return urls;
+  }
+
+  /**
+   * Page params.
+   *
+   * @return the multi value map
+   */
+  private MultiValueMap<String, String> pageParams() {
+    MultiValueMap<String, String> params = CanvasRestClient.queryParams();
+    params.add(INCLUDE, "body");
+    return params;
+  }
+
+  /**
+   * Computes the trigram signature of a page.
+   *
+   * @param page the page
+   */
+  private void indexPage(Page page) {
+    trigramPrefilter.index(page.getHtmlUrl(), page.getBody(), page.getUpdatedAt());
+  }
+
+  /**
+   * Process pages.
+   *
+   * @param pages the pages
+   */
+  private void processPages(List<Page> pages) {
+    logger.info("Total pages: : {}", pages.size());
+  }
+
+  /**
+   * List course assignments.
+   *
+   * @param courseId the course id
+   * @return the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public List<Assignment> listCourseAssignments(String courseId) throws IOException {
+    List<Assignment> assignments = new ArrayList<>();
+    forEachAssignmentBatch(courseId, collect(assignments, batch -> {
+    }));
+    return assignments;
+  }
+
+  /**
+   * Hands the assignments of a course to the handler one pagination batch at a time.
+   *
+   * @param courseId the course id
+   * @param handler the handler
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void forEachAssignmentBatch(String courseId, Predicate<List<Assignment>> handler)
+      throws IOException {
+    contentFlights.forEachBatch(courseId, ASSIGNMENTS,
+        source -> canvasRestClient.forEachPage(COURSES_PATH + courseId + "/assignments",
+            CanvasRestClient.queryParams(), ParamConstants.PAGINATION_PAGE_SIZE, Assignment.class,
+            indexed(source, assignment -> trigramPrefilter.index(assignment.getHtmlUrl(),
+                assignment.getDescription(), assignment.getUpdatedAt()))),
+        logged(handler, this::processAssignment));
+  }
+
+  /**
+   * Process assignment.
+   *
+   * @param assignments the assignments
+   */
+  private void processAssignment(List<Assignment> assignments) {
+    logger.info("Assignments count: {}", assignments.size());
+  }
+
+  /**
+   * Gets the course all discussion topics.
+   *
+   * @param courseId the course id
+   * @return the course all discussion topics
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public List<DiscussionTopic> getCourseAllDiscussionTopics(String courseId) throws IOException {
+    List<DiscussionTopic> discussionTopics = new ArrayList<>();
+    forEachDiscussionTopicBatch(courseId, collect(discussionTopics, batch -> {
+    }));
+    return discussionTopics;
+  }
+
+  /**
+   * Hands the discussion topics of a course to the handler one pagination batch at a time.
+   *
+   * @param courseId the course id
+   * @param handler the handler
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void forEachDiscussionTopicBatch(String courseId,
+      Predicate<List<DiscussionTopic>> handler) throws IOException {
+    contentFlights.forEachBatch(courseId, DISCUSSION_TOPICS,
+        source -> canvasRestClient.forEachPage(COURSES_PATH + courseId + "/discussion_topics",
+            CanvasRestClient.queryParams(), ParamConstants.PAGINATION_PAGE_SIZE,
+            DiscussionTopic.class, indexed(source, discussionTopic -> trigramPrefilter
+                .index(discussionTopic.getHtmlUrl(), discussionTopic.getMessage(), null))),
+        logged(handler, this::processDiscussions));
+  }
+
+  /**
+   * Process discussions.
+   *
+   * @param discussionTopic the discussion topic
+   */
+  private void processDiscussions(List<DiscussionTopic> discussionTopic) {
+    logger.info("Total discussons topics: : {}", discussionTopic.size());
+  }
+
+  /**
+   * Gets the single course.
+   *
+   * @param courseId the course id
+   * @return the single course
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Optional<Course> getSingleCourse(String courseId) throws IOException {
+    return canvasRestClient.getObject(COURSES_PATH + courseId, CanvasRestClient.queryParams(),
+        Course.class);
+  }
+
+  /**
+   * Gets a single page, as it is now in Canvas.
+   *
+   * @param courseId the course id
+   * @param pageUrl the page url
+   * @return the page, or empty when it no longer exists
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Optional<Page> getPage(String courseId, String pageUrl) throws IOException {
+    return canvasRestClient.getObject(COURSES_PATH + courseId + "/pages/" + pageUrl,
+        CanvasRestClient.queryParams(), Page.class);
+  }
+
+  /**
+   * Gets a single assignment, as it is now in Canvas.
+   *
+   * @param courseId the course id
+   * @param assignmentId the assignment id
+   * @return the assignment, or empty when it no longer exists
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Optional<Assignment> getAssignment(String courseId, Integer assignmentId)
+      throws IOException {
+    return canvasRestClient.getObject(COURSES_PATH + courseId + "/assignments/" + assignmentId,
+        CanvasRestClient.queryParams(), Assignment.class);
+  }
+
+  /**
+   * Gets a single discussion topic, as it is now in Canvas.
+   *
+   * @param courseId the course id
+   * @param topicId the topic id
+   * @return the discussion topic, or empty when it no longer exists
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Optional<DiscussionTopic> getDiscussionTopic(String courseId, Long topicId)
+      throws IOException {
+    return canvasRestClient.getObject(COURSES_PATH + courseId + "/discussion_topics/" + topicId,
+        CanvasRestClient.queryParams(), DiscussionTopic.class);
+  }
+
+  /**
+   * Handler that logs each batch and collects it into the list.
+   *
+   * @param <T> the generic type
+   * @param target the target
+   * @param processor the batch logger
+   * @return the predicate
+   */
+  private static <T> Predicate<List<T>> collect(List<T> target,
+      Consumer<List<T>> processor) {
+    return batch -> {
+      processor.accept(batch);
+      target.addAll(batch);
+      return true;
+    };
+  }
+
+  /**
+   * Handler that indexes each item of a batch before handing the batch on.
+   *
+   * @param <T> the generic type
+   * @param handler the handler
+   * @param indexer the indexer
+   * @return the predicate
+   */
+  private static <T> Predicate<List<T>> indexed(Predicate<List<T>> handler, Consumer<T> indexer) {
+    return batch -> {
+      batch.forEach(indexer);
+      return handler.test(batch);
+    };
+  }
+
+  /**
+   * Handler that logs each batch before handing it on.
+   *
+   * @param <T> the generic type
+   * @param handler the handler
+   * @param processor the batch logger
+   * @return the predicate
+   */
+  private static <T> Predicate<List<T>> logged(Predicate<List<T>> handler,
+      Consumer<List<T>> processor) {
+    return batch -> {
+      processor.accept(batch);
+      return handler.test(batch);
+    };
+  }
+}
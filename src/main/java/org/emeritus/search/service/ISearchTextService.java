@@ -2,13 +2,23 @@ package org.emeritus.search.service;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 import org.emeritus.search.dto.CoursePageInfo;
+import org.emeritus.search.dto.ReplacePreviewResult;
+import org.emeritus.search.dto.ReplaceResult;
 import org.emeritus.search.dto.SearchReplaceDto;
 
 public interface ISearchTextService {
 
-  Boolean searchTextAndReplaceAcrossCourses(SearchReplaceDto searchReplaceDto) throws IOException;
+  ReplaceResult searchTextAndReplaceAcrossCourses(SearchReplaceDto searchReplaceDto)
+      throws IOException;
 
   List<CoursePageInfo> getMatchingPages(SearchReplaceDto searchReplaceDto) throws IOException;
 
+  Optional<List<CoursePageInfo>> getReplaceResult(String resultId);
+
+  ReplacePreviewResult previewReplace(SearchReplaceDto searchReplaceDto) throws IOException;
+
+  Optional<ReplaceResult> commitPreview(String previewId, List<String> itemIds);
+
 }
@@ -0,0 +1,242 @@
+package org.emeritus.search.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.apache.commons.lang3.StringUtils;
+import org.emeritus.canvas.model.Course;
+import org.emeritus.canvas.model.DiscussionTopic;
+import org.emeritus.canvas.model.Page;
+import org.emeritus.canvas.model.assignment.Assignment;
+import org.emeritus.search.dto.CoursePageInfo;
+import org.emeritus.search.dto.PageInfo;
+import org.emeritus.search.dto.ReplaceResult;
+import org.emeritus.search.dto.ReplaceStatus;
+import org.emeritus.search.model.JournalEntry;
+import org.emeritus.search.service.helper.CanvasCall;
+import org.emeritus.search.service.helper.CanvasContentWriter;
+import org.emeritus.search.service.helper.CourseWriter;
+import org.emeritus.search.service.helper.ReplaceJournal;
+import org.emeritus.search.service.helper.ReplaceResultStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+/**
+ * The Class ReplaceRollbackService. Puts the items written by a search and replace run back to
+ * the content they had before, from the replace journal. Courses are restored concurrently on the
+ * course scan executor and the items of a course on its write stage. An item edited in Canvas
+ * since the run, whose content no longer hashes to what Canvas saved for the run, is left alone.
+ * The journal keeps the hash of the content as Canvas returned it from the write, not of the text
+ * sent, so HTML that Canvas sanitizes on save is not mistaken for an edit.
+ */
+@Service
+public class ReplaceRollbackService {
+
+  /** The Constant PAGE. */
+  private static final String PAGE = "Page";
+
+  /** The Constant DISCUSSION. */
+  private static final String DISCUSSION = "Discussion";
+
+  /** The Constant ASSIGNMENT. */
+  private static final String ASSIGNMENT = "Assignment";
+
+  /** The logger. */
+  private Logger logger = LoggerFactory.getLogger(ReplaceRollbackService.class);
+
+  /** The replace journal. */
+  @Autowired
+  private ReplaceJournal replaceJournal;
+
+  /** The replace result store. */
+  @Autowired
+  private ReplaceResultStore replaceResultStore;
+
+  /** The course content service. */
+  @Autowired
+  private CourseContentService courseContentService;
+
+  /** The canvas content writer. */
+  @Autowired
+  private CanvasContentWriter canvasContentWriter;
+
+  /** The course scan executor. */
+  @Autowired
+  @Qualifier("courseScanExecutor")
+  private ThreadPoolTaskExecutor courseScanExecutor;
+
+  /** The canvas write executor. */
+  @Autowired
+  @Qualifier("canvasWriteExecutor")
+  private ThreadPoolTaskExecutor canvasWriteExecutor;
+
+  /** The max Canvas updates in flight for one course. */
+  @Value("${search.write.max-in-flight-per-course:4}")
+  private int maxWritesPerCourse;
+
+  /**
+   * Rolls back a search and replace run. Items already restored by an earlier rollback of the run
+   * are not touched again.
+   *
+   * @param runId the run id, the result id of the replace
+   * @return the report of what was restored, skipped or failed in each course, empty if the run
+   *         has nothing left to restore
+   */
+  public Optional<ReplaceResult> rollback(String runId) {
+    Map<String, List<JournalEntry>> entriesByCourse = new LinkedHashMap<>();
+    for (JournalEntry entry : replaceJournal.findRun(runId)) {
+      entriesByCourse.computeIfAbsent(entry.getCourseId(), courseId -> new ArrayList<>())
+          .add(entry);
+    }
+    if (entriesByCourse.isEmpty()) {
+      return Optional.empty();
+    }
+
+    // Restore the courses concurrently, reporting them in the order they were written
+    List<CompletableFuture<CoursePageInfo>> courseRollbacks = new ArrayList<>();
+    entriesByCourse.forEach((courseId, entries) -> courseRollbacks.add(CompletableFuture
+        .supplyAsync(() -> rollbackCourse(courseId, entries), courseScanExecutor)));
+    List<CoursePageInfo> coursePageInfoList = new ArrayList<>();
+    for (CompletableFuture<CoursePageInfo> courseRollback : courseRollbacks) {
+      coursePageInfoList.add(courseRollback.join());
+    }
+    String resultId = replaceResultStore.put(coursePageInfoList);
+    return Optional.of(ReplaceResult.builder().resultId(resultId)
+        .coursePageInfoList(coursePageInfoList).build());
+  }
+
+  /**
+   * Rolls back the items of one course.
+   *
+   * @param courseId the course id
+   * @param entries the journal entries of the course
+   * @return the outcome for every item
+   */
+  private CoursePageInfo rollbackCourse(String courseId, List<JournalEntry> entries) {
+    CourseWriter writer =
+        new CourseWriter(canvasWriteExecutor.getThreadPoolExecutor(), maxWritesPerCourse);
+    List<CompletableFuture<PageInfo>> outcomes = new ArrayList<>();
+    for (JournalEntry entry : entries) {
+      CanvasCall<Boolean> restore = () -> restore(entry);
+      outcomes.add(writer.submit(restore).handle((restored, e) -> {
+        PageInfo.PageInfoBuilder pageInfo = PageInfo.builder()
+            .itemId(courseId + ':' + entry.getContentType() + ':' + entry.getContentKey())
+            .pageTitle(entry.getContentType() + ' ' + entry.getContentKey());
+        if (e != null) {
+          Throwable cause =
+              e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+          logger.error("Error while restoring {} {} of course {}", entry.getContentType(),
+              entry.getContentKey(), courseId, cause);
+          return pageInfo.status(ReplaceStatus.FAILED).message(cause.getMessage()).build();
+        }
+        if (!restored) {
+          return pageInfo.status(ReplaceStatus.SKIPPED)
+              .message("Item edited in Canvas after the replace").build();
+        }
+        return pageInfo.status(ReplaceStatus.RESTORED).build();
+      }));
+    }
+
+    // Wait for the writes, then mark what was restored so it is not restored twice
+    List<PageInfo> pageInfoList = new ArrayList<>(outcomes.size());
+    List<Long> restoredIds = new ArrayList<>();
+    for (int i = 0; i < outcomes.size(); i++) {
+      PageInfo pageInfo = outcomes.get(i).join();
+      if (pageInfo.getStatus() == ReplaceStatus.RESTORED) {
+        restoredIds.add(entries.get(i).getId());
+      }
+      pageInfoList.add(pageInfo);
+    }
+    replaceJournal.markRestored(restoredIds);
+    return CoursePageInfo.builder().courseId(courseId).courseName(getCourseName(courseId))
+        .sourceText(StringUtils.EMPTY).pageInfoList(pageInfoList).build();
+  }
+
+  /**
+   * Restores one item when Canvas still holds what the run wrote.
+   *
+   * @param entry the journal entry
+   * @return true, if restored; false if the item was edited since
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private boolean restore(JournalEntry entry) throws IOException {
+    String courseId = entry.getCourseId();
+    String key = entry.getContentKey();
+    switch (entry.getContentType()) {
+      case PAGE:
+        Optional<String> body = courseContentService.getPage(courseId, key).map(Page::getBody);
+        if (!isUnchangedSinceRun(entry, body)) {
+          return false;
+        }
+        canvasContentWriter.updatePageBody(courseId, key, entry.getBeforeBody());
+        return true;
+
+      case ASSIGNMENT:
+        Integer assignmentId = Integer.valueOf(key);
+        Optional<String> description = courseContentService
+            .getAssignment(courseId, assignmentId).map(Assignment::getDescription);
+        if (!isUnchangedSinceRun(entry, description)) {
+          return false;
+        }
+        canvasContentWriter.updateAssignmentDescription(courseId, assignmentId,
+            entry.getBeforeBody());
+        return true;
+
+      case DISCUSSION:
+        Long topicId = Long.valueOf(key);
+        Optional<String> message = courseContentService.getDiscussionTopic(courseId, topicId)
+            .map(DiscussionTopic::getMessage);
+        if (!isUnchangedSinceRun(entry, message)) {
+          return false;
+        }
+        canvasContentWriter.updateDiscussionMessage(courseId, topicId, entry.getBeforeBody());
+        return true;
+
+      default:
+        throw new IOException("Unknown content type " + entry.getContentType());
+    }
+  }
+
+  /**
+   * Checks if the item still holds the content Canvas saved for the run.
+   *
+   * @param entry the journal entry
+   * @param current the current content, empty if the item no longer exists
+   * @return true, if unchanged since the run
+   * @throws IOException if the item no longer exists
+   */
+  private static boolean isUnchangedSinceRun(JournalEntry entry, Optional<String> current)
+      throws IOException {
+    if (!current.isPresent()) {
+      throw new IOException("Item no longer exists in Canvas");
+    }
+    return ReplaceJournal.hash(current.get()).equals(entry.getAfterHash());
+  }
+
+  /**
+   * Gets the course name.
+   *
+   * @param courseId the course id
+   * @return the course name, empty if it cannot be read
+   */
+  private String getCourseName(String courseId) {
+    try {
+      return courseContentService.getSingleCourse(courseId).map(Course::getName)
+          .orElse(StringUtils.EMPTY);
+    } catch (IOException e) {
+      logger.warn("Error while reading course {}", courseId, e);
+      return StringUtils.EMPTY;
+    }
+  }
+}
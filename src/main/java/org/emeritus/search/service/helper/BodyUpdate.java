@@ -0,0 +1,19 @@
+package org.emeritus.search.service.helper;
+
+import java.io.IOException;
+
+/**
+ * Saves a rewritten body, description or message of one item to Canvas.
+ */
+@FunctionalInterface
+public interface BodyUpdate {
+
+  /**
+   * Writes the body.
+   *
+   * @param body the rewritten body
+   * @return the body as Canvas saved it, or null if Canvas did not return it
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  String write(String body) throws IOException;
+}
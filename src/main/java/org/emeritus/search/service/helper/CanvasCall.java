@@ -0,0 +1,20 @@
+package org.emeritus.search.service.helper;
+
+import java.io.IOException;
+
+/**
+ * A unit of work against the Canvas API.
+ *
+ * @param <T> the result type
+ */
+@FunctionalInterface
+public interface CanvasCall<T> {
+
+  /**
+   * Executes the call.
+   *
+   * @return the result
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  T call() throws IOException;
+}
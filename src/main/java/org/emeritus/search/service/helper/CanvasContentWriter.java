@@ -0,0 +1,166 @@
+package org.emeritus.search.service.helper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Saves replaced content to Canvas with partial updates that carry only the rewritten field. The
+ * identifiers go in the path, and the JSON body is written straight from the rewritten text, so
+ * fields that were never touched are neither sent nor overwritten. Each update returns the field
+ * as Canvas saved it, which may differ from the text sent since Canvas sanitizes HTML. The size
+ * of every update body is recorded, tagged by payload kind, to compare with the full object
+ * updates.
+ */
+@Component
+public class CanvasContentWriter implements MeterBinder {
+
+  /** The name of the payload size summary. */
+  public static final String PAYLOAD_BYTES = "search.write.payload.bytes";
+
+  /** The JSON wrapper opening a page body update. */
+  private static final byte[] PAGE_PREFIX = ascii("{\"wiki_page\":{\"body\":\"");
+
+  /** The JSON wrapper closing a page body update. */
+  private static final byte[] PAGE_SUFFIX = ascii("\"}}");
+
+  /** The JSON wrapper opening an assignment description update. */
+  private static final byte[] ASSIGNMENT_PREFIX = ascii("{\"assignment\":{\"description\":\"");
+
+  /** The JSON wrapper closing an assignment description update. */
+  private static final byte[] ASSIGNMENT_SUFFIX = ascii("\"}}");
+
+  /** The JSON wrapper opening a discussion topic message update. */
+  private static final byte[] TOPIC_PREFIX = ascii("{\"message\":\"");
+
+  /** The JSON wrapper closing a discussion topic message update. */
+  private static final byte[] TOPIC_SUFFIX = ascii("\"}");
+
+  /** The object mapper used to size full object updates. */
+  private final ObjectMapper fullPayloadMapper =
+      JsonMapper.builder().propertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE).build();
+
+  /** The canvas rest client. */
+  @Autowired
+  private CanvasRestClient canvasRestClient;
+
+  /** The minimal payload sizes. */
+  private DistributionSummary minimalBytes;
+
+  /** The full payload sizes. */
+  private DistributionSummary fullBytes;
+
+  /**
+   * Updates the body of a page.
+   *
+   * @param courseId the course id
+   * @param pageUrl the page url
+   * @param body the body
+   * @return the body as Canvas saved it, or null if Canvas did not return it
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public String updatePageBody(String courseId, String pageUrl, String body) throws IOException {
+    return put("/courses/" + courseId + "/pages/" + pageUrl, PAGE_PREFIX, body, PAGE_SUFFIX,
+        "body");
+  }
+
+  /**
+   * Updates the description of an assignment.
+   *
+   * @param courseId the course id
+   * @param assignmentId the assignment id
+   * @param description the description
+   * @return the description as Canvas saved it, or null if Canvas did not return it
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public String updateAssignmentDescription(String courseId, Integer assignmentId,
+      String description) throws IOException {
+    return put("/courses/" + courseId + "/assignments/" + assignmentId, ASSIGNMENT_PREFIX,
+        description, ASSIGNMENT_SUFFIX, "description");
+  }
+
+  /**
+   * Updates the message of a discussion topic.
+   *
+   * @param courseId the course id
+   * @param topicId the topic id
+   * @param message the message
+   * @return the message as Canvas saved it, or null if Canvas did not return it
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public String updateDiscussionMessage(String courseId, Long topicId, String message)
+      throws IOException {
+    return put("/courses/" + courseId + "/discussion_topics/" + topicId, TOPIC_PREFIX, message,
+        TOPIC_SUFFIX, "message");
+  }
+
+  /**
+   * Records the size of a full object update sent through the canvas-lms-api writers, as the
+   * model object serializes to JSON.
+   *
+   * @param model the model object sent
+   */
+  public void recordFullPayload(Object model) {
+    if (fullBytes == null) {
+      return;
+    }
+    try {
+      fullBytes.record(fullPayloadMapper.writeValueAsBytes(model).length);
+    } catch (JsonProcessingException e) {
+      // Sizing is best effort and never fails the update
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    minimalBytes = DistributionSummary.builder(PAYLOAD_BYTES).baseUnit("bytes")
+        .description("Size of the Canvas update bodies").tag("payload", "minimal")
+        .register(registry);
+    fullBytes = DistributionSummary.builder(PAYLOAD_BYTES).baseUnit("bytes")
+        .description("Size of the Canvas update bodies").tag("payload", "full")
+        .register(registry);
+  }
+
+  /**
+   * Sends a single string field update.
+   *
+   * @param path the path below /api/v1
+   * @param prefix the JSON before the value
+   * @param value the value, unescaped
+   * @param suffix the JSON after the value
+   * @param field the field of the saved object holding the value
+   * @return the value as Canvas saved it, or null if Canvas did not return it
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private String put(String path, byte[] prefix, String value, byte[] suffix, String field)
+      throws IOException {
+    byte[] escaped = JsonStringEncoder.getInstance().quoteAsUTF8(value);
+    byte[] payload = new byte[prefix.length + escaped.length + suffix.length];
+    System.arraycopy(prefix, 0, payload, 0, prefix.length);
+    System.arraycopy(escaped, 0, payload, prefix.length, escaped.length);
+    System.arraycopy(suffix, 0, payload, prefix.length + escaped.length, suffix.length);
+    if (minimalBytes != null) {
+      minimalBytes.record(payload.length);
+    }
+    return canvasRestClient.putJson(path, payload).path(field).textValue();
+  }
+
+  /**
+   * Encodes an ASCII constant.
+   *
+   * @param value the value
+   * @return the bytes
+   */
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,247 @@
+package org.emeritus.search.service.helper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.PostConstruct;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Shared limiter for all Canvas calls. The number of requests allowed in flight grows additively
+ * while the Canvas rate limit bucket (X-Rate-Limit-Remaining) stays healthy and is cut
+ * multiplicatively when the bucket runs low or Canvas throttles a request.
+ */
+@Component
+public class CanvasRateLimiter implements MeterBinder {
+
+  /** The Constant RATE_LIMIT_REMAINING. */
+  public static final String RATE_LIMIT_REMAINING = "X-Rate-Limit-Remaining";
+
+  /** The Constant REQUEST_COST. */
+  public static final String REQUEST_COST = "X-Request-Cost";
+
+  /** The logger. */
+  private Logger logger = LoggerFactory.getLogger(CanvasRateLimiter.class);
+
+  /** The initial limit. */
+  @Value("${canvas.ratelimit.initial-limit:8}")
+  private double initialLimit;
+
+  /** The min limit. */
+  @Value("${canvas.ratelimit.min-limit:1}")
+  private double minLimit;
+
+  /** The max limit. */
+  @Value("${canvas.ratelimit.max-limit:64}")
+  private double maxLimit;
+
+  /** The bucket level above which the limit may grow. */
+  @Value("${canvas.ratelimit.high-water:300}")
+  private double highWater;
+
+  /** The bucket level below which the limit is cut. */
+  @Value("${canvas.ratelimit.low-water:100}")
+  private double lowWater;
+
+  /** The decrease factor. */
+  @Value("${canvas.ratelimit.decrease-factor:0.5}")
+  private double decreaseFactor;
+
+  /** The minimum time between two decreases, so one burst of low readings cuts only once. */
+  @Value("${canvas.ratelimit.decrease-cooldown-ms:1000}")
+  private long decreaseCooldownMs;
+
+  /** The lock. */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** The permit available. */
+  private final Condition permitAvailable = lock.newCondition();
+
+  /** The current limit. */
+  private double limit;
+
+  /** The in flight. */
+  private int inFlight;
+
+  /** The last reported bucket level. */
+  private volatile double bucketRemaining = Double.NaN;
+
+  /** The last reported request cost. */
+  private volatile double lastRequestCost = Double.NaN;
+
+  /** The last decrease time. */
+  private long lastDecreaseAt;
+
+  /** The throttled counter. */
+  private Counter throttledCounter;
+
+  /**
+   * Inits the limit.
+   */
+  @PostConstruct
+  public void init() {
+    limit = initialLimit;
+  }
+
+  /**
+   * Runs a call while holding a permit. Used for calls whose response headers are not visible,
+   * such as the canvas-lms-api writers; they count against the limit but do not adjust it.
+   *
+   * @param <T> the generic type
+   * @param call the call
+   * @return the result
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public <T> T execute(CanvasCall<T> call) throws IOException {
+    acquire();
+    try {
+      return call.call();
+    } finally {
+      release(null, false);
+    }
+  }
+
+  /**
+   * Waits for a permit.
+   *
+   * @throws InterruptedIOException if interrupted while waiting
+   */
+  public void acquire() throws InterruptedIOException {
+    lock.lock();
+    try {
+      while (inFlight >= (int) limit) {
+        permitAvailable.await();
+      }
+      inFlight++;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a Canvas request permit");
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns a permit and adapts the limit to the rate limit headers of the response.
+   *
+   * @param response the response, or null when none was received
+   * @param throttled whether Canvas rejected the request for exceeding the rate limit
+   */
+  public void release(HttpResponse response, boolean throttled) {
+    double remaining = headerValue(response, RATE_LIMIT_REMAINING);
+    double cost = headerValue(response, REQUEST_COST);
+    lock.lock();
+    try {
+      inFlight--;
+      if (!Double.isNaN(remaining)) {
+        bucketRemaining = remaining;
+      }
+      if (!Double.isNaN(cost)) {
+        lastRequestCost = cost;
+      }
+      if (throttled || (!Double.isNaN(remaining) && remaining < lowWater)) {
+        decrease(throttled);
+      } else if (!Double.isNaN(remaining) && remaining > highWater) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+      permitAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Cuts the limit, at most once per cooldown.
+   *
+   * @param throttled the throttled
+   */
+  private void decrease(boolean throttled) {
+    if (throttled && throttledCounter != null) {
+      throttledCounter.increment();
+    }
+    long now = System.currentTimeMillis();
+    if (now - lastDecreaseAt >= decreaseCooldownMs) {
+      lastDecreaseAt = now;
+      limit = Math.max(minLimit, limit * decreaseFactor);
+      logger.info("Canvas rate limit bucket at {}, in-flight limit lowered to {}",
+          bucketRemaining, (int) limit);
+    }
+  }
+
+  /**
+   * Header value.
+   *
+   * @param response the response
+   * @param name the name
+   * @return the header value, or NaN when absent
+   */
+  private static double headerValue(HttpResponse response, String name) {
+    Header header = response != null ? response.getFirstHeader(name) : null;
+    if (header == null) {
+      return Double.NaN;
+    }
+    try {
+      return Double.parseDouble(header.getValue().trim());
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * Gets the current limit.
+   *
+   * @return the limit
+   */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the in flight.
+   *
+   * @return the in flight
+   */
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Publishes canvas.ratelimit.* metrics.
+   *
+   * @param registry the registry
+   */
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("canvas.ratelimit.limit", this, CanvasRateLimiter::getLimit)
+        .description("Canvas requests allowed in flight").register(registry);
+    Gauge.builder("canvas.ratelimit.in-flight", this, CanvasRateLimiter::getInFlight)
+        .description("Canvas requests currently in flight").register(registry);
+    Gauge.builder("canvas.ratelimit.bucket-remaining", this, limiter -> limiter.bucketRemaining)
+        .description("Last X-Rate-Limit-Remaining reported by Canvas").register(registry);
+    Gauge.builder("canvas.ratelimit.request-cost", this, limiter -> limiter.lastRequestCost)
+        .description("Last X-Request-Cost reported by Canvas").register(registry);
+    throttledCounter = Counter.builder("canvas.ratelimit.throttled")
+        .description("Requests rejected by Canvas for exceeding the rate limit")
+        .register(registry);
+  }
+}
@@ -0,0 +1,523 @@
+package org.emeritus.search.service.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.emeritus.search.exception.CanvasApiException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponentsBuilder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+/**
+ * The Class CanvasRestClient. Reads Canvas REST resources over the shared pooled HTTP client and
+ * maps them onto the canvas-lms-api model classes, and sends pre-serialized updates.
+ */
+@Component
+public class CanvasRestClient {
+
+  /** The Constant API_PATH. */
+  private static final String API_PATH = "/api/v1";
+
+  /** The Constant PER_PAGE. */
+  private static final String PER_PAGE = "per_page";
+
+  /** The Constant LINK_PATTERN. */
+  private static final Pattern LINK_PATTERN = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"([^\"]+)\"");
+
+  /** The Constant REL_NEXT. */
+  private static final String REL_NEXT = "next";
+
+  /** The Constant REL_LAST. */
+  private static final String REL_LAST = "last";
+
+  /** The Constant PAGE_PARAM. */
+  private static final String PAGE_PARAM = "page";
+
+  /** The Constant LINK. */
+  private static final String LINK = "Link";
+
+  /** The Constant RATE_LIMIT_EXCEEDED. */
+  private static final String RATE_LIMIT_EXCEEDED = "Rate Limit Exceeded";
+
+  /** The max retries of a throttled request. */
+  @Value("${canvas.ratelimit.max-retries:3}")
+  private int maxThrottleRetries;
+
+  /** The initial backoff of a throttled request in milliseconds. */
+  @Value("${canvas.ratelimit.retry-backoff-ms:500}")
+  private long throttleBackoffMs;
+
+  /** The base url. */
+  @Value("${canvas.baseurl}")
+  private String baseUrl;
+
+  /** The token helper. */
+  @Autowired
+  private TokenHelper tokenHelper;
+
+  /** The canvas http client. */
+  @Autowired
+  private CloseableHttpClient canvasHttpClient;
+
+  /** The canvas rate limiter. */
+  @Autowired
+  private CanvasRateLimiter canvasRateLimiter;
+
+  /** The executor pages fetched ahead run on. */
+  @Autowired
+  @Qualifier("canvasPageExecutor")
+  private ThreadPoolTaskExecutor canvasPageExecutor;
+
+  /** The max pages fetched ahead of the handler. */
+  @Value("${canvas.pagination.max-parallel-pages:8}")
+  private int maxParallelPages;
+
+  /** The object mapper for Canvas payloads. */
+  private final ObjectMapper canvasObjectMapper =
+      JsonMapper.builder().propertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+          .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+          .enable(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_AS_NULL)
+          .enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY).build();
+
+  /**
+   * Copies a Canvas model object through its JSON form, so the copy can be changed without
+   * touching the fetched object, which other searches may still be reading.
+   *
+   * @param <T> the generic type
+   * @param model the model object
+   * @return the copy
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T copy(T model) {
+    return (T) canvasObjectMapper.convertValue(model, model.getClass());
+  }
+
+  /**
+   * Query params.
+   *
+   * @return a new, empty query parameter map
+   */
+  public static MultiValueMap<String, String> queryParams() {
+    return new LinkedMultiValueMap<>();
+  }
+
+  /**
+   * Gets every item of a paginated list, following the Link rel="next" header. The callback is
+   * invoked with each page of results as it arrives.
+   *
+   * @param <T> the generic type
+   * @param path the path below /api/v1
+   * @param params the query params
+   * @param pageSize the page size
+   * @param type the item type
+   * @param callback the per page callback
+   * @return the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public <T> List<T> getList(String path, MultiValueMap<String, String> params, Integer pageSize,
+      Class<T> type, Consumer<List<T>> callback) throws IOException {
+    List<T> results = new ArrayList<>();
+    forEachPage(path, params, pageSize, type, page -> {
+      callback.accept(page);
+      results.addAll(page);
+      return true;
+    });
+    return results;
+  }
+
+  /**
+   * Streams a paginated list one page at a time without keeping earlier pages. Each page is
+   * handed to the handler as soon as it is read; the handler returns false to stop fetching
+   * further pages. When Canvas reports a numbered last page, the remaining pages are fetched
+   * concurrently and still handed over in order.
+   *
+   * @param <T> the generic type
+   * @param path the path below /api/v1
+   * @param params the query params
+   * @param pageSize the page size
+   * @param type the item type
+   * @param pageHandler the page handler
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public <T> void forEachPage(String path, MultiValueMap<String, String> params, Integer pageSize,
+      Class<T> type, Predicate<List<T>> pageHandler) throws IOException {
+    forEachPage(path, params, pageSize, type, true, pageHandler);
+  }
+
+  /**
+   * Streams a paginated list one page at a time without keeping earlier pages. Callers that
+   * expect to stop after the first few pages should pass parallel = false so no page is fetched
+   * ahead of the handler.
+   *
+   * @param <T> the generic type
+   * @param path the path below /api/v1
+   * @param params the query params
+   * @param pageSize the page size
+   * @param type the item type
+   * @param parallel whether numbered pages may be fetched ahead concurrently
+   * @param pageHandler the page handler
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public <T> void forEachPage(String path, MultiValueMap<String, String> params, Integer pageSize,
+      Class<T> type, boolean parallel, Predicate<List<T>> pageHandler) throws IOException {
+    JavaType listType =
+        canvasObjectMapper.getTypeFactory().constructCollectionType(List.class, type);
+    MultiValueMap<String, String> pagedParams = new LinkedMultiValueMap<>(params);
+    pagedParams.set(PER_PAGE, String.valueOf(pageSize));
+    CanvasResponse<List<T>> firstPage = getJson(buildUrl(path, pagedParams), listType, false);
+    if (!pageHandler.test(firstPage.body)) {
+      return;
+    }
+    String url = link(firstPage.linkHeader, REL_NEXT);
+    int nextPage = pageNumber(url);
+    int lastPage = parallel ? pageNumber(link(firstPage.linkHeader, REL_LAST)) : -1;
+    if (nextPage > 0 && lastPage > nextPage) {
+      forEachNumberedPage(url, nextPage, lastPage, listType, pageHandler);
+      return;
+    }
+    while (url != null) {
+      CanvasResponse<List<T>> response = getJson(url, listType, false);
+      url = pageHandler.test(response.body) ? link(response.linkHeader, REL_NEXT) : null;
+    }
+  }
+
+  /**
+   * Fetches the numbered pages from..to with up to max-parallel-pages requests ahead of the
+   * handler, handing them over in page order. Pages still in flight are cancelled when the
+   * handler stops or a request fails.
+   *
+   * @param <T> the generic type
+   * @param nextUrl the url of page from
+   * @param from the first page to fetch
+   * @param to the last page to fetch
+   * @param listType the list type
+   * @param pageHandler the page handler
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private <T> void forEachNumberedPage(String nextUrl, int from, int to, JavaType listType,
+      Predicate<List<T>> pageHandler) throws IOException {
+    Deque<Future<List<T>>> window = new ArrayDeque<>();
+    int submitted = from;
+    try {
+      for (int page = from; page <= to; page++) {
+        while (submitted <= to && window.size() < maxParallelPages) {
+          String pageUrl = UriComponentsBuilder.fromHttpUrl(nextUrl)
+              .replaceQueryParam(PAGE_PARAM, submitted++).build(true).toUriString();
+          window.add(canvasPageExecutor.submit(
+              () -> this.<List<T>>getJson(pageUrl, listType, false).body));
+        }
+        if (!pageHandler.test(await(window.poll()))) {
+          return;
+        }
+      }
+    } finally {
+      window.forEach(pending -> pending.cancel(true));
+    }
+  }
+
+  /**
+   * Waits for a page fetched ahead.
+   *
+   * @param <T> the generic type
+   * @param pending the pending page
+   * @return the page
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static <T> T await(Future<T> pending) throws IOException {
+    try {
+      return pending.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching a Canvas page");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Page number of a pagination link.
+   *
+   * @param url the url
+   * @return the page number, or -1 for a missing link or a bookmark style page
+   */
+  private static int pageNumber(String url) {
+    if (url == null) {
+      return -1;
+    }
+    String page = UriComponentsBuilder.fromHttpUrl(url).build().getQueryParams()
+        .getFirst(PAGE_PARAM);
+    return NumberUtils.toInt(page, -1);
+  }
+
+  /**
+   * Gets a single object.
+   *
+   * @param <T> the generic type
+   * @param path the path below /api/v1
+   * @param params the query params
+   * @param type the type
+   * @return the object, or empty when Canvas answers 404
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public <T> Optional<T> getObject(String path, MultiValueMap<String, String> params,
+      Class<T> type) throws IOException {
+    String url = buildUrl(path, params);
+    CanvasResponse<T> response =
+        getJson(url, canvasObjectMapper.getTypeFactory().constructType(type), true);
+    return Optional.ofNullable(response.body);
+  }
+
+  /**
+   * Sends an authenticated PUT of a JSON body that is already serialized, while holding a rate
+   * limiter permit. A request Canvas throttles is retried with backoff a limited number of times.
+   *
+   * @param path the path below /api/v1
+   * @param json the UTF-8 JSON body
+   * @return the object Canvas saved, as JSON, or a missing node when the response has no body
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public JsonNode putJson(String path, byte[] json) throws IOException {
+    String url = buildUrl(path, queryParams());
+    for (int attempt = 0;; attempt++) {
+      HttpPut request = new HttpPut(url);
+      request.setHeader(HttpHeaders.AUTHORIZATION, tokenHelper.getAuthorizationHeader());
+      request.setHeader(HttpHeaders.ACCEPT, "application/json");
+      request.setEntity(new ByteArrayEntity(json, ContentType.APPLICATION_JSON));
+      canvasRateLimiter.acquire();
+      CloseableHttpResponse response = null;
+      boolean throttled = false;
+      try {
+        response = canvasHttpClient.execute(request);
+        int statusCode = response.getStatusLine().getStatusCode();
+        throttled = isThrottled(response);
+        if (throttled && attempt < maxThrottleRetries) {
+          continue;
+        }
+        if (statusCode >= HttpStatus.SC_BAD_REQUEST) {
+          throw new CanvasApiException(statusCode,
+              "Canvas update " + url + " failed with status " + statusCode);
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+          return MissingNode.getInstance();
+        }
+        try (InputStream content = entity.getContent()) {
+          JsonNode saved = canvasObjectMapper.readTree(content);
+          return saved == null ? MissingNode.getInstance() : saved;
+        }
+      } finally {
+        if (response != null) {
+          EntityUtils.consumeQuietly(response.getEntity());
+          response.close();
+        }
+        canvasRateLimiter.release(response, throttled);
+        if (throttled && attempt < maxThrottleRetries) {
+          backOff(attempt);
+        }
+      }
+    }
+  }
+
+  /**
+   * Builds the url.
+   *
+   * @param path the path
+   * @param params the params
+   * @return the string
+   */
+  private String buildUrl(String path, MultiValueMap<String, String> params) {
+    return UriComponentsBuilder.fromHttpUrl(baseUrl).path(API_PATH).path(path).queryParams(params)
+        .encode().toUriString();
+  }
+
+  /**
+   * Sends an authenticated GET and reads the JSON body while holding a rate limiter permit. A
+   * request Canvas throttles is retried with backoff a limited number of times.
+   *
+   * @param <T> the generic type
+   * @param url the url
+   * @param type the type
+   * @param allowNotFound whether a 404 yields an empty body instead of an error
+   * @return the canvas response
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private <T> CanvasResponse<T> getJson(String url, JavaType type, boolean allowNotFound)
+      throws IOException {
+    for (int attempt = 0;; attempt++) {
+      HttpGet request = new HttpGet(url);
+      request.setHeader(HttpHeaders.AUTHORIZATION, tokenHelper.getAuthorizationHeader());
+      request.setHeader(HttpHeaders.ACCEPT, "application/json");
+      canvasRateLimiter.acquire();
+      CloseableHttpResponse response = null;
+      boolean throttled = false;
+      try {
+        response = canvasHttpClient.execute(request);
+        int statusCode = response.getStatusLine().getStatusCode();
+        throttled = isThrottled(response);
+        if (throttled && attempt < maxThrottleRetries) {
+          continue;
+        }
+        if (statusCode == HttpStatus.SC_NOT_FOUND && allowNotFound) {
+          return new CanvasResponse<>(null, null);
+        }
+        if (statusCode >= HttpStatus.SC_BAD_REQUEST) {
+          throw new CanvasApiException(statusCode,
+              "Canvas request " + url + " failed with status " + statusCode);
+        }
+        return new CanvasResponse<>(read(response.getEntity(), type),
+            response.getFirstHeader(LINK));
+      } finally {
+        if (response != null) {
+          EntityUtils.consumeQuietly(response.getEntity());
+          response.close();
+        }
+        canvasRateLimiter.release(response, throttled);
+        if (throttled && attempt < maxThrottleRetries) {
+          backOff(attempt);
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks if Canvas rejected the request for exceeding the rate limit.
+   *
+   * @param response the response
+   * @return true, if is throttled
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private boolean isThrottled(CloseableHttpResponse response) throws IOException {
+    if (response.getStatusLine().getStatusCode() != HttpStatus.SC_FORBIDDEN
+        || response.getEntity() == null) {
+      return false;
+    }
+    return EntityUtils.toString(response.getEntity()).contains(RATE_LIMIT_EXCEEDED);
+  }
+
+  /**
+   * Backs off before retrying a throttled request.
+   *
+   * @param attempt the attempt
+   * @throws InterruptedIOException if interrupted
+   */
+  private void backOff(int attempt) throws InterruptedIOException {
+    try {
+      Thread.sleep(throttleBackoffMs << attempt);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while backing off a throttled request");
+    }
+  }
+
+  /**
+   * Reads the JSON body.
+   *
+   * @param <T> the generic type
+   * @param entity the entity
+   * @param type the type
+   * @return the t
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private <T> T read(HttpEntity entity, JavaType type) throws IOException {
+    if (entity == null) {
+      return null;
+    }
+    try (InputStream content = entity.getContent()) {
+      return canvasObjectMapper.readValue(content, type);
+    }
+  }
+
+  /**
+   * Link with the given relation.
+   *
+   * @param linkHeader the link header
+   * @param rel the rel
+   * @return the url, or null when the relation is absent
+   */
+  private static String link(Header linkHeader, String rel) {
+    return parseLinks(linkHeader).stream().filter(link -> rel.equals(link[1]))
+        .map(link -> link[0]).findFirst().orElse(null);
+  }
+
+  /**
+   * Parses the Link header into url / rel pairs.
+   *
+   * @param header the header
+   * @return the list of links
+   */
+  static List<String[]> parseLinks(Header header) {
+    if (header == null || header.getValue() == null) {
+      return Collections.emptyList();
+    }
+    List<String[]> links = new ArrayList<>();
+    Matcher matcher = LINK_PATTERN.matcher(header.getValue());
+    while (matcher.find()) {
+      links.add(new String[] {matcher.group(1), matcher.group(2)});
+    }
+    return links;
+  }
+
+  /**
+   * A Canvas response body with its Link header.
+   *
+   * @param <T> the generic type
+   */
+  private static final class CanvasResponse<T> {
+
+    /** The body. */
+    private final T body;
+
+    /** The link header. */
+    private final Header linkHeader;
+
+    /**
+     * Instantiates a new canvas response.
+     *
+     * @param body the body
+     * @param linkHeader the link header
+     */
+    CanvasResponse(T body, Header linkHeader) {
+      this.body = body;
+      this.linkHeader = linkHeader;
+    }
+  }
+}
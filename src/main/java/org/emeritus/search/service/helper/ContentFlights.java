@@ -0,0 +1,407 @@
+package org.emeritus.search.service.helper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Single-flight coalescing of course content downloads. Callers asking for the same course and
+ * content type before the first batch of a fetch arrives attach to that fetch and receive the
+ * same batches instead of issuing their own Canvas requests. Once the first batch is out, later
+ * callers start a fetch of their own, so no batch has to be kept for them: each batch is held
+ * only until every attached caller has taken it. An attached caller falling more than a few
+ * batches behind is detached and fetches the rest itself, so heap stays proportional to those
+ * few batches rather than to the course, and a slow caller never holds up the others. A caller
+ * whose handler fails or stops only detaches itself; the fetch goes on for the others. If the
+ * caller running the fetch is cancelled, the attached callers fetch again, passing over the
+ * batches they already handled. Batches are shared read-only, so callers
+ * must not mutate the model objects they receive.
+ */
+@Component
+public class ContentFlights {
+
+  /** Whether concurrent fetches are coalesced. */
+  @Value("${search.coalesce.enabled:true}")
+  private boolean enabled;
+
+  /** The most batches an attached caller may fall behind before it fetches on its own. */
+  @Value("${search.coalesce.max-pending-batches:4}")
+  private int maxPendingBatches;
+
+  /** The flights in progress. */
+  private final Map<String, BatchFlight<?>> flights = new ConcurrentHashMap<>();
+
+  /**
+   * Source of the batches of a content list.
+   *
+   * @param <T> the generic type
+   */
+  @FunctionalInterface
+  public interface BatchSource<T> {
+
+    /**
+     * Fetches every batch, handing each to the handler.
+     *
+     * @param handler the handler
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void fetch(Predicate<List<T>> handler) throws IOException;
+  }
+
+  /**
+   * Hands every batch of the course's content list to the handler, joining a fetch of the same
+   * list that has not delivered anything yet or starting one. The handler may return false to
+   * ignore the remaining batches; the fetch stops early once no caller wants more. An exception
+   * thrown by the handler is rethrown to its caller only.
+   *
+   * @param <T> the generic type
+   * @param courseId the course id
+   * @param contentType the content type
+   * @param source the source
+   * @param handler the handler
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> void forEachBatch(String courseId, String contentType, BatchSource<T> source,
+      Predicate<List<T>> handler) throws IOException {
+    if (!enabled) {
+      source.fetch(handler);
+      return;
+    }
+    String key = courseId + '|' + contentType;
+    Predicate<List<T>> resumed = handler;
+    int resumeAt = 0;
+    while (true) {
+      BatchFlight<T> flight = new BatchFlight<>(maxPendingBatches);
+      BatchFlight<T> inProgress = (BatchFlight<T>) flights.putIfAbsent(key, flight);
+      if (inProgress != null) {
+        Follower<T> follower = inProgress.join();
+        if (follower != null) {
+          if (follower.consume(resumed)) {
+            return;
+          }
+          // Dropped by that fetch, or its caller was cancelled; fetch again past what was handled
+          resumeAt = Math.max(resumeAt, follower.taken);
+          resumed = skipping(resumeAt, handler);
+          continue;
+        }
+        // That fetch is already delivering; lead a new one in its place
+        if (!flights.replace(key, inProgress, flight)) {
+          continue;
+        }
+      }
+      lead(key, flight, source, resumed);
+      return;
+    }
+  }
+
+  /**
+   * Runs a fetch, handing its batches to the handler and to the callers attached to it.
+   *
+   * @param <T> the generic type
+   * @param key the key
+   * @param flight the flight
+   * @param source the source
+   * @param handler the handler
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private <T> void lead(String key, BatchFlight<T> flight, BatchSource<T> source,
+      Predicate<List<T>> handler) throws IOException {
+    Leader<T> leader = new Leader<>(flight, handler);
+    try {
+      source.fetch(leader);
+      flight.complete(null);
+    } catch (IOException | RuntimeException e) {
+      if (e instanceof InterruptedIOException || Thread.currentThread().isInterrupted()) {
+        // Only this caller was cancelled; the attached callers fetch again without it
+        flight.abandon();
+      } else {
+        flight.complete(e);
+      }
+      throw e;
+    } finally {
+      flights.remove(key, flight);
+    }
+    if (leader.failure != null) {
+      throw leader.failure;
+    }
+  }
+
+  /**
+   * Wraps a handler to pass over the batches it already handled in an earlier fetch.
+   *
+   * @param <T> the generic type
+   * @param count the number of batches to pass over
+   * @param handler the handler
+   * @return the handler
+   */
+  private static <T> Predicate<List<T>> skipping(int count, Predicate<List<T>> handler) {
+    int[] seen = new int[1];
+    return batch -> seen[0]++ < count || handler.test(batch);
+  }
+
+  /**
+   * The callers attached to one in-progress fetch.
+   *
+   * @param <T> the generic type
+   */
+  private static final class BatchFlight<T> {
+
+    /** The attached callers, other than the one fetching. */
+    private final List<Follower<T>> followers = new ArrayList<>();
+
+    /** The most batches a caller may have pending. */
+    private final int maxPending;
+
+    /** Whether the first batch was published, after which no caller may attach. */
+    private boolean started;
+
+    /**
+     * Instantiates a new batch flight.
+     *
+     * @param maxPending the most batches a caller may have pending
+     */
+    BatchFlight(int maxPending) {
+      this.maxPending = maxPending;
+    }
+
+    /**
+     * Attaches a caller, unless the fetch already delivered a batch.
+     *
+     * @return the follower, or null if too late to attach
+     */
+    synchronized Follower<T> join() {
+      if (started) {
+        return null;
+      }
+      Follower<T> follower = new Follower<>(this);
+      followers.add(follower);
+      return follower;
+    }
+
+    /**
+     * Hands a batch to every attached caller, detaching those too far behind to take it.
+     *
+     * @param batch the batch
+     */
+    synchronized void publish(List<T> batch) {
+      started = true;
+      for (Iterator<Follower<T>> it = followers.iterator(); it.hasNext();) {
+        if (!it.next().offer(batch, maxPending)) {
+          it.remove();
+        }
+      }
+    }
+
+    /**
+     * Checks for attached callers still taking batches.
+     *
+     * @return true, if any
+     */
+    synchronized boolean hasFollowers() {
+      return !followers.isEmpty();
+    }
+
+    /**
+     * Detaches a caller.
+     *
+     * @param follower the follower
+     */
+    synchronized void leave(Follower<T> follower) {
+      followers.remove(follower);
+    }
+
+    /**
+     * Ends the fetch for every attached caller.
+     *
+     * @param failure the failure of the fetch, or null on success
+     */
+    synchronized void complete(Exception failure) {
+      started = true;
+      for (Follower<T> follower : followers) {
+        follower.end(failure);
+      }
+    }
+
+    /**
+     * Ends the fetch for every attached caller without a result, so that they fetch again.
+     */
+    synchronized void abandon() {
+      started = true;
+      for (Follower<T> follower : followers) {
+        follower.abandon();
+      }
+    }
+  }
+
+  /**
+   * The batch handler of the caller running the fetch. It publishes each batch to the attached
+   * callers before handling it, and keeps the fetch going while any of them still wants batches.
+   *
+   * @param <T> the generic type
+   */
+  private static final class Leader<T> implements Predicate<List<T>> {
+
+    /** The flight. */
+    private final BatchFlight<T> flight;
+
+    /** The handler. */
+    private final Predicate<List<T>> handler;
+
+    /** Whether the handler wants more batches. */
+    private boolean active = true;
+
+    /** The exception thrown by the handler. */
+    private RuntimeException failure;
+
+    /**
+     * Instantiates a new leader.
+     *
+     * @param flight the flight
+     * @param handler the handler
+     */
+    Leader(BatchFlight<T> flight, Predicate<List<T>> handler) {
+      this.flight = flight;
+      this.handler = handler;
+    }
+
+    @Override
+    public boolean test(List<T> batch) {
+      flight.publish(batch);
+      if (active) {
+        try {
+          active = handler.test(batch);
+        } catch (RuntimeException e) {
+          // The caller's own failure; the others still get the rest of the fetch
+          failure = e;
+          active = false;
+        }
+      }
+      return active || flight.hasFollowers();
+    }
+  }
+
+  /**
+   * An attached caller, taking the batches of the fetch in order.
+   *
+   * @param <T> the generic type
+   */
+  private static final class Follower<T> {
+
+    /** The flight. */
+    private final BatchFlight<T> flight;
+
+    /** The batches published and not taken yet. */
+    private final ArrayDeque<List<T>> pending = new ArrayDeque<>();
+
+    /** Whether the fetch finished. */
+    private boolean done;
+
+    /** The failure of the fetch. */
+    private Exception failure;
+
+    /** Whether the fetch ended before delivering every batch, without failing. */
+    private boolean abandoned;
+
+    /** The number of batches taken. */
+    private int taken;
+
+    /**
+     * Instantiates a new follower.
+     *
+     * @param flight the flight
+     */
+    Follower(BatchFlight<T> flight) {
+      this.flight = flight;
+    }
+
+    /**
+     * Queues a batch, or abandons the fetch if too many batches are pending already.
+     *
+     * @param batch the batch
+     * @param maxPending the most batches pending
+     * @return true, if queued
+     */
+    synchronized boolean offer(List<T> batch, int maxPending) {
+      if (pending.size() >= maxPending) {
+        abandon();
+        return false;
+      }
+      pending.add(batch);
+      notifyAll();
+      return true;
+    }
+
+    /**
+     * Ends the fetch.
+     *
+     * @param failure the failure, or null on success
+     */
+    synchronized void end(Exception failure) {
+      this.done = true;
+      this.failure = failure;
+      notifyAll();
+    }
+
+    /**
+     * Ends the fetch before its last batch.
+     */
+    synchronized void abandon() {
+      this.done = true;
+      this.abandoned = true;
+      notifyAll();
+    }
+
+    /**
+     * Hands each batch to the handler as it arrives, until the fetch ends or the handler stops.
+     *
+     * @param handler the handler
+     * @return false, if the fetch was abandoned and the batches after those taken are missing
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    boolean consume(Predicate<List<T>> handler) throws IOException {
+      try {
+        while (true) {
+          List<T> batch;
+          synchronized (this) {
+            while (pending.isEmpty() && !done) {
+              try {
+                wait();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a shared fetch");
+              }
+            }
+            if (pending.isEmpty()) {
+              if (abandoned) {
+                return false;
+              }
+              if (failure != null) {
+                throw new IOException("Shared Canvas fetch failed", failure);
+              }
+              return true;
+            }
+            batch = pending.poll();
+            taken++;
+          }
+          if (!handler.test(batch)) {
+            return true;
+          }
+        }
+      } finally {
+        flight.leave(this);
+        synchronized (this) {
+          pending.clear();
+        }
+      }
+    }
+  }
+}
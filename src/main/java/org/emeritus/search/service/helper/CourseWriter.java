@@ -0,0 +1,68 @@
+package org.emeritus.search.service.helper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The write stage of one course. Canvas updates are handed to the write executor so the course
+ * scan can go on while they are in flight, with at most a fixed number of them running for the
+ * course at a time. Once the cap is reached, {@link #submit(CanvasCall)} waits for a write to
+ * finish, so a course with many matches slows its own scan down instead of flooding the pool.
+ */
+public class CourseWriter {
+
+  /** The executor the writes run on. */
+  private final Executor executor;
+
+  /** The permits, one per write in flight. */
+  private final Semaphore permits;
+
+  /**
+   * Instantiates a new course writer.
+   *
+   * @param executor the executor the writes run on
+   * @param maxInFlight the max writes in flight for the course
+   */
+  public CourseWriter(Executor executor, int maxInFlight) {
+    this.executor = executor;
+    this.permits = new Semaphore(Math.max(1, maxInFlight));
+  }
+
+  /**
+   * Starts a write once the course has a free permit.
+   *
+   * @param <T> the generic type
+   * @param call the call
+   * @return the future result of the call, failing with its exception
+   */
+  public <T> CompletableFuture<T> submit(CanvasCall<T> call) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.completeExceptionally(
+          new InterruptedIOException("Interrupted while waiting to write to Canvas"));
+      return future;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          future.complete(call.call());
+        } catch (IOException | RuntimeException e) {
+          future.completeExceptionally(e);
+        } finally {
+          permits.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      permits.release();
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+}
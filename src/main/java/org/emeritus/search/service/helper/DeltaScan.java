@@ -0,0 +1,137 @@
+package org.emeritus.search.service.helper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import org.emeritus.search.dto.PageInfo;
+
+/**
+ * One scan of a course content type, started from {@link DeltaScanStore#begin}. Items not updated
+ * since the previous scan keep their previous matches; changed items are matched again and merged
+ * in. Every item listed by the scan is recorded, so once the whole list has been seen the matches
+ * of items deleted or renamed since the previous scan are dropped. Not thread safe: a scan is
+ * driven by a single fetch.
+ */
+public class DeltaScan {
+
+  /** The store. */
+  private final DeltaScanStore store;
+
+  /** The key. */
+  private final String key;
+
+  /** The watermark of the previous scan, Long.MIN_VALUE for a full scan. */
+  private final long since;
+
+  /** The time of the last full scan. */
+  private final long fullScanAt;
+
+  /** The matches by redirect url. */
+  private final Map<String, PageInfo> matches;
+
+  /** The redirect urls of the items listed by this scan. */
+  private final Set<String> listed = new HashSet<>();
+
+  /** The newest updated_at seen so far. */
+  private long highWaterMark;
+
+  /**
+   * Instantiates a new delta scan.
+   *
+   * @param store the store
+   * @param key the key
+   * @param since the since
+   * @param fullScanAt the full scan at
+   * @param matches the matches
+   */
+  DeltaScan(DeltaScanStore store, String key, long since, long fullScanAt,
+      Map<String, PageInfo> matches) {
+    this.store = store;
+    this.key = key;
+    this.since = since;
+    this.fullScanAt = fullScanAt;
+    this.matches = matches;
+    this.highWaterMark = since;
+  }
+
+  /**
+   * Checks if the scan only needs items updated since the previous one.
+   *
+   * @return true, if is incremental
+   */
+  public boolean isIncremental() {
+    return since != Long.MIN_VALUE;
+  }
+
+  /**
+   * Picks the items of a batch updated at or after the previous watermark, dropping their previous
+   * matches. Items without an updated_at are always treated as changed. Every item of the batch
+   * is recorded as listed.
+   *
+   * @param <T> the generic type
+   * @param batch the batch
+   * @param updatedAt the updated at accessor
+   * @param redirectUrl the redirect url the item is reported under
+   * @return the changed items
+   */
+  public <T> List<T> changedItems(List<T> batch, Function<T, Date> updatedAt,
+      Function<T, String> redirectUrl) {
+    List<T> changed = new ArrayList<>(batch.size());
+    for (T item : batch) {
+      String url = redirectUrl.apply(item);
+      listed.add(url);
+      Date updated = updatedAt.apply(item);
+      if (updated == null || updated.getTime() >= since) {
+        changed.add(item);
+        matches.remove(url);
+        if (updated != null) {
+          highWaterMark = Math.max(highWaterMark, updated.getTime());
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Adds the matches of changed items.
+   *
+   * @param pageInfoList the page info list
+   */
+  public void addMatches(List<PageInfo> pageInfoList) {
+    for (PageInfo pageInfo : pageInfoList) {
+      matches.put(pageInfo.getRedirectUrl(), pageInfo);
+    }
+  }
+
+  /**
+   * Records items as listed without matching them, such as those of a listing without bodies.
+   *
+   * @param redirectUrls the redirect urls
+   */
+  public void markListed(Collection<String> redirectUrls) {
+    listed.addAll(redirectUrls);
+  }
+
+  /**
+   * Drops the matches of items this scan did not list, which were deleted or renamed since the
+   * previous scan. Only call once every item of the course has been listed.
+   */
+  public void dropUnlisted() {
+    matches.keySet().retainAll(listed);
+  }
+
+  /**
+   * Stores the new watermark and matches and returns the merged matches.
+   *
+   * @return the matches
+   */
+  public List<PageInfo> complete() {
+    store.save(key, highWaterMark, fullScanAt, matches);
+    return new ArrayList<>(matches.values());
+  }
+}
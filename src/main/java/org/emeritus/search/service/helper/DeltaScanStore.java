@@ -0,0 +1,108 @@
+package org.emeritus.search.service.helper;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.emeritus.search.dto.PageInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Keeps, per course, content type and search query, the newest updated_at seen by the last scan
+ * together with the matches it produced, so the next scan only has to look at what changed.
+ */
+@Component
+public class DeltaScanStore {
+
+  /** Whether delta scans are enabled. */
+  @Value("${search.delta.enabled:true}")
+  private boolean enabled;
+
+  /** The interval after which a full rescan is forced. */
+  @Value("${search.delta.full-rescan-minutes:1440}")
+  private long fullRescanMinutes;
+
+  /** The max entries. */
+  @Value("${search.delta.max-entries:10000}")
+  private long maxEntries;
+
+  /** The states. */
+  private Cache<String, State> states;
+
+  /**
+   * Inits the cache.
+   */
+  @PostConstruct
+  public void init() {
+    states = CacheBuilder.newBuilder().maximumSize(maxEntries)
+        .expireAfterAccess(fullRescanMinutes, TimeUnit.MINUTES).build();
+  }
+
+  /**
+   * Begins a scan. The scan is incremental when a recent enough previous scan of the same course,
+   * content type and query exists, and a full scan otherwise.
+   *
+   * @param courseId the course id
+   * @param contentType the content type
+   * @param queryKey the query key
+   * @return the delta scan
+   */
+  public DeltaScan begin(String courseId, String contentType, String queryKey) {
+    String key = courseId + '|' + contentType + '|' + queryKey;
+    State previous = enabled ? states.getIfPresent(key) : null;
+    long now = System.currentTimeMillis();
+    if (previous == null
+        || now - previous.fullScanAt > Duration.ofMinutes(fullRescanMinutes).toMillis()) {
+      return new DeltaScan(this, key, Long.MIN_VALUE, now, new LinkedHashMap<>());
+    }
+    return new DeltaScan(this, key, previous.watermark, previous.fullScanAt,
+        new LinkedHashMap<>(previous.matches));
+  }
+
+  /**
+   * Stores the outcome of a scan.
+   *
+   * @param key the key
+   * @param watermark the watermark
+   * @param fullScanAt the time of the last full scan
+   * @param matches the matches
+   */
+  void save(String key, long watermark, long fullScanAt, Map<String, PageInfo> matches) {
+    if (enabled) {
+      states.put(key, new State(watermark, fullScanAt, Collections.unmodifiableMap(matches)));
+    }
+  }
+
+  /**
+   * The retained outcome of one scan.
+   */
+  private static final class State {
+
+    /** The newest updated_at seen, in epoch millis. */
+    private final long watermark;
+
+    /** The time of the last full scan, in epoch millis. */
+    private final long fullScanAt;
+
+    /** The matches by redirect url. */
+    private final Map<String, PageInfo> matches;
+
+    /**
+     * Instantiates a new state.
+     *
+     * @param watermark the watermark
+     * @param fullScanAt the full scan at
+     * @param matches the matches
+     */
+    State(long watermark, long fullScanAt, Map<String, PageInfo> matches) {
+      this.watermark = watermark;
+      this.fullScanAt = fullScanAt;
+      this.matches = matches;
+    }
+  }
+}
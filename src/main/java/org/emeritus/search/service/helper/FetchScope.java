@@ -0,0 +1,128 @@
+package org.emeritus.search.service.helper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a group of independent Canvas calls concurrently as one unit. {@link #join()} waits for all
+ * of them; the first failure cancels (and interrupts) the calls still running and is rethrown, and
+ * closing the scope cancels anything that was not joined.
+ */
+public class FetchScope implements AutoCloseable {
+
+  /** The completion service. */
+  private final ExecutorCompletionService<Object> completionService;
+
+  /** The forked calls. */
+  private final List<Future<Object>> forks = new ArrayList<>();
+
+  /**
+   * Instantiates a new fetch scope.
+   *
+   * @param executor the executor the calls run on
+   */
+  public FetchScope(ExecutorService executor) {
+    this.completionService = new ExecutorCompletionService<>(executor);
+  }
+
+  /**
+   * Starts a call in this scope.
+   *
+   * @param <T> the generic type
+   * @param call the call
+   * @return the subtask holding the result once the scope is joined
+   */
+  public <T> Subtask<T> fork(CanvasCall<T> call) {
+    Future<Object> future = completionService.submit(call::call);
+    forks.add(future);
+    return new Subtask<>(future);
+  }
+
+  /**
+   * Waits for every forked call to finish.
+   *
+   * @throws IOException the first failure of any forked call
+   */
+  public void join() throws IOException {
+    try {
+      for (int i = 0; i < forks.size(); i++) {
+        completionService.take().get();
+      }
+    } catch (InterruptedException e) {
+      cancelAll();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching from Canvas");
+    } catch (ExecutionException e) {
+      cancelAll();
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Cancels the calls that are still running.
+   */
+  @Override
+  public void close() {
+    cancelAll();
+  }
+
+  /**
+   * Cancel all.
+   */
+  private void cancelAll() {
+    for (Future<Object> fork : forks) {
+      fork.cancel(true);
+    }
+  }
+
+  /**
+   * The result of a call forked in a {@link FetchScope}.
+   *
+   * @param <T> the generic type
+   */
+  public static final class Subtask<T> {
+
+    /** The future. */
+    private final Future<Object> future;
+
+    /**
+     * Instantiates a new subtask.
+     *
+     * @param future the future
+     */
+    private Subtask(Future<Object> future) {
+      this.future = future;
+    }
+
+    /**
+     * Gets the result. Only valid after the owning scope was joined successfully.
+     *
+     * @return the result
+     */
+    @SuppressWarnings("unchecked")
+    public T get() {
+      if (!future.isDone()) {
+        throw new IllegalStateException("Fetch scope has not been joined");
+      }
+      try {
+        return (T) future.get();
+      } catch (InterruptedException | ExecutionException | CancellationException e) {
+        throw new IllegalStateException("Subtask did not complete successfully", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package org.emeritus.search.service.helper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caps the number of courses scanned at the same time against a single Canvas host.
+ */
+@Component
+public class HostConcurrencyLimiter {
+
+  /** The max in flight per host. */
+  @Value("${search.scan.max-in-flight-per-host:8}")
+  private int maxInFlightPerHost;
+
+  /** The permits by host. */
+  private final Map<String, Semaphore> permitsByHost = new ConcurrentHashMap<>();
+
+  /**
+   * Runs the call once a permit for the host of the given url is available.
+   *
+   * @param <T> the generic type
+   * @param canvasUrl the canvas url
+   * @param call the call
+   * @return the result of the call
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public <T> T execute(String canvasUrl, CanvasCall<T> call) throws IOException {
+    Semaphore permits = permitsByHost.computeIfAbsent(hostOf(canvasUrl),
+        host -> new Semaphore(maxInFlightPerHost, true));
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a Canvas host permit");
+    }
+    try {
+      return call.call();
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * Host of.
+   *
+   * @param canvasUrl the canvas url
+   * @return the host
+   */
+  private String hostOf(String canvasUrl) {
+    String host = URI.create(canvasUrl).getHost();
+    return host != null ? host : canvasUrl;
+  }
+}
@@ -0,0 +1,99 @@
+package org.emeritus.search.service.helper;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Bounded cache of compiled patterns, shared across requests, so a term is compiled once rather
+ * than once per page, assignment and discussion topic. Hit and miss counts are exported as
+ * {@code cache.*} metrics tagged {@code cache=search.patterns}.
+ */
+@Component
+public class PatternCache implements MeterBinder {
+
+  /** The max entries. */
+  @Value("${search.pattern-cache.max-entries:1000}")
+  private long maxEntries;
+
+  /** The patterns. */
+  private LoadingCache<PatternKey, Pattern> patterns;
+
+  /**
+   * Inits the cache.
+   */
+  @PostConstruct
+  public void init() {
+    patterns = CacheBuilder.newBuilder().maximumSize(maxEntries).recordStats()
+        .build(CacheLoader.from(key -> Pattern.compile(key.regex, key.flags)));
+  }
+
+  /**
+   * Gets the compiled pattern.
+   *
+   * @param regex the regex
+   * @param flags the {@link Pattern} flags
+   * @return the pattern
+   * @throws java.util.regex.PatternSyntaxException if the regex is invalid
+   */
+  public Pattern compile(String regex, int flags) {
+    try {
+      return patterns.getUnchecked(new PatternKey(regex, flags));
+    } catch (UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    GuavaCacheMetrics.monitor(registry, patterns, "search.patterns");
+  }
+
+  /**
+   * The cache key: a regex together with its match options.
+   */
+  private static final class PatternKey {
+
+    /** The regex. */
+    private final String regex;
+
+    /** The flags. */
+    private final int flags;
+
+    /**
+     * Instantiates a new pattern key.
+     *
+     * @param regex the regex
+     * @param flags the flags
+     */
+    PatternKey(String regex, int flags) {
+      this.regex = regex;
+      this.flags = flags;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof PatternKey)) {
+        return false;
+      }
+      PatternKey other = (PatternKey) o;
+      return flags == other.flags && regex.equals(other.regex);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(regex, flags);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package org.emeritus.search.service.helper;
+
+import java.util.Optional;
+import org.emeritus.search.dto.PageInfo;
+import org.emeritus.search.matcher.MatchResult;
+import org.emeritus.search.model.ContentRevision;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * A matched item waiting to be written: the revision that was matched, the match with the
+ * rewritten body, and how to read the item again and save it. Items decided without a write,
+ * such as those where the replacement changes nothing, carry their outcome instead.
+ */
+@Data
+@Builder
+public class PendingReplacement {
+
+  /** The course id. */
+  private String courseId;
+
+  /** The content type: Page, Assignment or Discussion. */
+  private String contentType;
+
+  /** The page url, assignment id or discussion topic id. */
+  private String contentKey;
+
+  /** The page title. */
+  private String pageTitle;
+
+  /** The redirect url. */
+  private String redirectUrl;
+
+  /** The match, with the rewritten body. */
+  private MatchResult match;
+
+  /** The revision that was matched. */
+  private ContentRevision seen;
+
+  /** The SHA-256 of the matched body, pinned for the check before writing. */
+  private String seenHash;
+
+  /** Reads the item as it is now in Canvas. */
+  private CanvasCall<Optional<ContentRevision>> current;
+
+  /** Saves the rewritten body. */
+  private BodyUpdate update;
+
+  /** Whether the write was made but could not be journaled. */
+  private boolean journalFailed;
+
+  /** The outcome, when it is known without writing. */
+  private PageInfo outcome;
+
+  /**
+   * Gets the item id, unique within a run.
+   *
+   * @return the item id
+   */
+  public String getItemId() {
+    return courseId + ':' + contentType + ':' + contentKey;
+  }
+
+  /**
+   * Starts the report of the item.
+   *
+   * @return the page info builder
+   */
+  public PageInfo.PageInfoBuilder report() {
+    return PageInfo.builder().itemId(getItemId()).pageTitle(pageTitle).redirectUrl(redirectUrl);
+  }
+
+  /**
+   * Checks if the item in Canvas is still the revision that was matched. Revisions are compared
+   * by updated at when both have one, and otherwise by the pinned content hash, since discussion
+   * topics do not report an updated at.
+   *
+   * @param current the revision now in Canvas
+   * @return true, if unchanged since it was matched
+   */
+  public boolean isUnchangedIn(ContentRevision current) {
+    if (seen.getUpdatedAt() != null && current.getUpdatedAt() != null) {
+      return seen.getUpdatedAt().equals(current.getUpdatedAt());
+    }
+    return ReplaceJournal.hash(current.getBody()).equals(seenHash);
+  }
+
+  /**
+   * Gets the characters held for the item, the matched and the rewritten text.
+   *
+   * @return the retained chars
+   */
+  public long getRetainedChars() {
+    if (outcome != null) {
+      return 0;
+    }
+    return length(seen.getBody()) + length(match.getRewritten());
+  }
+
+  /**
+   * Length of a text that may be null.
+   *
+   * @param text the text
+   * @return the length
+   */
+  private static long length(String text) {
+    return text == null ? 0 : text.length();
+  }
+}
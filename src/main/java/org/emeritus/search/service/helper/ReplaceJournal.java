@@ -0,0 +1,321 @@
+package org.emeritus.search.service.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.PostConstruct;
+import org.apache.commons.lang3.StringUtils;
+import org.emeritus.search.model.JournalEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Records every Canvas write of a search and replace run in the replace journal table, with the
+ * content it overwrote, so the run can be rolled back. An entry is inserted before its write is
+ * reported, so no write that completed is lost to a restart. The entries of concurrent writes are
+ * group committed: each writer queues its entry, and whichever writer takes the insert lock first
+ * inserts everything queued so far in JDBC batches, so the other writers usually find their
+ * entry already inserted once they get the lock. A write waits about one batch insert, never on
+ * a timer.
+ */
+@Component
+public class ReplaceJournal implements MeterBinder {
+
+  /** The name of the journal entry counter. */
+  public static final String ENTRIES = "search.journal.entries";
+
+  /** The logger. */
+  private Logger logger = LoggerFactory.getLogger(ReplaceJournal.class);
+
+  /** Whether writes are journaled. */
+  @Value("${search.journal.enabled:true}")
+  private boolean enabled;
+
+  /** The schema of the journal table, empty for the default one. */
+  @Value("${search.journal.schema:${spring.liquibase.default-schema:}}")
+  private String schema;
+
+  /** The max entries per insert batch. */
+  @Value("${search.journal.batch-size:200}")
+  private int batchSize;
+
+  /** The jdbc template. */
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /** The entries waiting to be inserted, at most one per writer thread. */
+  private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+
+  /** Held while the queued entries are inserted. */
+  private final Object insertLock = new Object();
+
+  /** The insert statement. */
+  private String insertSql;
+
+  /** The select statement of a run. */
+  private String selectRunSql;
+
+  /** The statement marking an entry restored. */
+  private String markRestoredSql;
+
+  /** The entries inserted. */
+  private Counter recorded;
+
+  /** The entries whose insert failed. */
+  private Counter failed;
+
+  /**
+   * Builds the statements.
+   */
+  @PostConstruct
+  public void init() {
+    String table = StringUtils.isEmpty(schema) ? "replace_journal" : schema + ".replace_journal";
+    insertSql = "insert into " + table + " (run_id, course_id, content_type, content_key, "
+        + "before_hash, before_body, after_hash, created_date) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    selectRunSql = "select id, run_id, course_id, content_type, content_key, before_hash, "
+        + "before_body, after_hash, created_date from " + table
+        + " where run_id = ? and restored_date is null order by id";
+    markRestoredSql = "update " + table + " set restored_date = ? where id = ?";
+  }
+
+  /**
+   * Records a write, returning once the entry is inserted or its insert failed.
+   *
+   * @param runId the run id
+   * @param courseId the course id
+   * @param contentType the content type
+   * @param contentKey the page url, assignment id or discussion topic id
+   * @param before the content overwritten
+   * @param after the content written, as Canvas saved it
+   * @return false if the entry could not be inserted, so the write, which did happen, cannot be
+   *         rolled back
+   */
+  public boolean record(String runId, String courseId, String contentType, String contentKey,
+      String before, String after) {
+    if (!enabled) {
+      return true;
+    }
+    // Hash and compress before queueing, so the insert lock is held only for the database
+    Pending pending = new Pending(runId, courseId, contentType, contentKey, hash(before),
+        compress(before), hash(after), new Timestamp(System.currentTimeMillis()));
+    queue.add(pending);
+    synchronized (insertLock) {
+      if (!pending.done) {
+        flush();
+      }
+    }
+    return pending.failure == null;
+  }
+
+  /**
+   * Gets the entries of a run not restored yet.
+   *
+   * @param runId the run id
+   * @return the entries, in write order
+   */
+  public List<JournalEntry> findRun(String runId) {
+    return jdbcTemplate.query(selectRunSql,
+        (rs, row) -> JournalEntry.builder().id(rs.getLong("id")).runId(rs.getString("run_id"))
+            .courseId(rs.getString("course_id")).contentType(rs.getString("content_type"))
+            .contentKey(rs.getString("content_key")).beforeHash(rs.getString("before_hash"))
+            .beforeBody(decompress(rs.getBytes("before_body")))
+            .afterHash(rs.getString("after_hash")).createdDate(rs.getTimestamp("created_date"))
+            .build(),
+        runId);
+  }
+
+  /**
+   * Marks entries restored, so a later rollback of the run leaves them alone.
+   *
+   * @param ids the entry ids
+   */
+  public void markRestored(List<Long> ids) {
+    if (ids.isEmpty()) {
+      return;
+    }
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    List<Object[]> args = new ArrayList<>(ids.size());
+    for (Long id : ids) {
+      args.add(new Object[] {now, id});
+    }
+    jdbcTemplate.batchUpdate(markRestoredSql, args);
+  }
+
+  /**
+   * Hashes a content.
+   *
+   * @param content the content
+   * @return the SHA-256, in hex
+   */
+  public static String hash(String content) {
+    return Hashing.sha256().hashString(StringUtils.defaultString(content), StandardCharsets.UTF_8)
+        .toString();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    recorded = Counter.builder(ENTRIES).description("Replace journal entries")
+        .tag("outcome", "recorded").register(registry);
+    failed = Counter.builder(ENTRIES).description("Replace journal entries")
+        .tag("outcome", "failed").register(registry);
+  }
+
+  /**
+   * Inserts every entry queued so far, in batches. Called holding the insert lock.
+   */
+  private void flush() {
+    List<Pending> batch = new ArrayList<>(batchSize);
+    for (Pending pending = queue.poll(); pending != null; pending = queue.poll()) {
+      batch.add(pending);
+      if (batch.size() == batchSize) {
+        insert(batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      insert(batch);
+    }
+  }
+
+  /**
+   * Inserts a batch and marks its entries done. A failed batch is logged and counted, and each of
+   * its writers is told, so the write it already made is reported as not journaled.
+   *
+   * @param batch the batch
+   */
+  private void insert(List<Pending> batch) {
+    List<Object[]> args = new ArrayList<>(batch.size());
+    for (Pending pending : batch) {
+      args.add(new Object[] {pending.runId, pending.courseId, pending.contentType,
+          pending.contentKey, pending.beforeHash, pending.beforeBody, pending.afterHash,
+          pending.createdDate});
+    }
+    try {
+      jdbcTemplate.batchUpdate(insertSql, args);
+      if (recorded != null) {
+        recorded.increment(batch.size());
+      }
+    } catch (RuntimeException e) {
+      if (failed != null) {
+        failed.increment(batch.size());
+      }
+      logger.error("Error while inserting {} replace journal entries", batch.size(), e);
+      for (Pending pending : batch) {
+        pending.failure = e;
+      }
+    }
+    for (Pending pending : batch) {
+      pending.done = true;
+    }
+  }
+
+  /**
+   * Compresses a content with gzip.
+   *
+   * @param content the content
+   * @return the compressed bytes
+   */
+  private static byte[] compress(String content) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(StringUtils.defaultString(content).getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decompresses a gzip compressed content.
+   *
+   * @param bytes the bytes
+   * @return the content
+   */
+  private static String decompress(byte[] bytes) {
+    if (bytes == null) {
+      return null;
+    }
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * A write waiting to be inserted.
+   */
+  private static final class Pending {
+
+    /** The run id. */
+    private final String runId;
+
+    /** The course id. */
+    private final String courseId;
+
+    /** The content type. */
+    private final String contentType;
+
+    /** The content key. */
+    private final String contentKey;
+
+    /** The SHA-256 of the content overwritten. */
+    private final String beforeHash;
+
+    /** The content overwritten, compressed. */
+    private final byte[] beforeBody;
+
+    /** The SHA-256 of the content written. */
+    private final String afterHash;
+
+    /** The created date. */
+    private final Timestamp createdDate;
+
+    /** Whether the insert was attempted, guarded by the insert lock. */
+    private boolean done;
+
+    /** Why the insert failed, guarded by the insert lock. */
+    private RuntimeException failure;
+
+    /**
+     * Instantiates a new pending entry.
+     *
+     * @param runId the run id
+     * @param courseId the course id
+     * @param contentType the content type
+     * @param contentKey the content key
+     * @param beforeHash the SHA-256 of the content overwritten
+     * @param beforeBody the content overwritten, compressed
+     * @param afterHash the SHA-256 of the content written
+     * @param createdDate the created date
+     */
+    Pending(String runId, String courseId, String contentType, String contentKey,
+        String beforeHash, byte[] beforeBody, String afterHash, Timestamp createdDate) {
+      this.runId = runId;
+      this.courseId = courseId;
+      this.contentType = contentType;
+      this.contentKey = contentKey;
+      this.beforeHash = beforeHash;
+      this.beforeBody = beforeBody;
+      this.afterHash = afterHash;
+      this.createdDate = createdDate;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package org.emeritus.search.service.helper;
+
+import java.util.List;
+import java.util.Map;
+import org.emeritus.search.dto.CoursePageInfo;
+import org.emeritus.search.matcher.TermMatcher;
+
+/**
+ * A search and replace that was matched but not written. It pins the content fetched for the
+ * preview together with the match of every item, so committing it writes the items straight
+ * away without reading the courses again.
+ */
+public class ReplacePreview {
+
+  /** The compiled rules. */
+  private final TermMatcher termMatcher;
+
+  /** The report shown for the preview, per course and item. */
+  private final List<CoursePageInfo> report;
+
+  /** The pending replacements by item id. */
+  private final Map<String, PendingReplacement> pending;
+
+  /** The characters held. */
+  private final long retainedChars;
+
+  /**
+   * Instantiates a new replace preview.
+   *
+   * @param termMatcher the compiled rules
+   * @param report the report, per course and item
+   * @param pending the pending replacements by item id
+   */
+  public ReplacePreview(TermMatcher termMatcher, List<CoursePageInfo> report,
+      Map<String, PendingReplacement> pending) {
+    this.termMatcher = termMatcher;
+    this.report = report;
+    this.pending = pending;
+    this.retainedChars =
+        pending.values().stream().mapToLong(PendingReplacement::getRetainedChars).sum();
+  }
+
+  /**
+   * Gets the compiled rules.
+   *
+   * @return the term matcher
+   */
+  public TermMatcher getTermMatcher() {
+    return termMatcher;
+  }
+
+  /**
+   * Gets the report.
+   *
+   * @return the report
+   */
+  public List<CoursePageInfo> getReport() {
+    return report;
+  }
+
+  /**
+   * Gets the pending replacement of an item.
+   *
+   * @param itemId the item id
+   * @return the pending replacement, or null if the item has none
+   */
+  public PendingReplacement getPending(String itemId) {
+    return pending.get(itemId);
+  }
+
+  /**
+   * Gets the characters held.
+   *
+   * @return the retained chars
+   */
+  public long getRetainedChars() {
+    return retainedChars;
+  }
+}
@@ -0,0 +1,72 @@
+package org.emeritus.search.service.helper;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.emeritus.search.exception.BadRequestException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Keeps recent replace previews until they are committed or expire. The store is bounded by the
+ * characters of content the previews hold rather than by their number, since one preview may
+ * cover many large courses; the oldest previews are evicted first. The cache has a single
+ * segment, so the whole bound applies to every preview, and a preview larger than the bound is
+ * refused rather than stored and evicted at once.
+ */
+@Component
+public class ReplacePreviewStore {
+
+  /** The time a preview is kept. */
+  @Value("${search.preview.ttl-minutes:30}")
+  private long ttlMinutes;
+
+  /** The max characters held by all previews. */
+  @Value("${search.preview.max-chars:100000000}")
+  private long maxChars;
+
+  /** The previews. */
+  private Cache<String, ReplacePreview> previews;
+
+  /**
+   * Inits the cache.
+   */
+  @PostConstruct
+  public void init() {
+    previews = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(maxChars)
+        .weigher((String previewId, ReplacePreview preview) -> (int) Math.min(Integer.MAX_VALUE,
+            Math.max(1, preview.getRetainedChars())))
+        .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES).build();
+  }
+
+  /**
+   * Stores a preview.
+   *
+   * @param preview the preview
+   * @return the preview id
+   * @throws BadRequestException if the preview holds more content than the store
+   */
+  public String put(ReplacePreview preview) {
+    if (preview.getRetainedChars() > maxChars) {
+      throw new BadRequestException("Preview holds " + preview.getRetainedChars()
+          + " characters of content, over the limit of " + maxChars
+          + "; select fewer courses or replace without a preview");
+    }
+    String previewId = UUID.randomUUID().toString();
+    previews.put(previewId, preview);
+    return previewId;
+  }
+
+  /**
+   * Takes a preview out of the store, so it is committed at most once.
+   *
+   * @param previewId the preview id
+   * @return the preview, empty if unknown, expired or already taken
+   */
+  public Optional<ReplacePreview> take(String previewId) {
+    return Optional.ofNullable(previews.asMap().remove(previewId));
+  }
+}
@@ -0,0 +1,72 @@
+package org.emeritus.search.service.helper;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.emeritus.search.dto.CoursePageInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Keeps the reports of recent search and replace runs for a while, so the results page can render
+ * them without scanning the courses again.
+ */
+@Component
+public class ReplaceResultStore {
+
+  /** The time a report is kept. */
+  @Value("${search.result.ttl-minutes:60}")
+  private long ttlMinutes;
+
+  /** The max entries. */
+  @Value("${search.result.max-entries:1000}")
+  private long maxEntries;
+
+  /** The results. */
+  private Cache<String, List<CoursePageInfo>> results;
+
+  /**
+   * Inits the cache.
+   */
+  @PostConstruct
+  public void init() {
+    results = CacheBuilder.newBuilder().maximumSize(maxEntries)
+        .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES).build();
+  }
+
+  /**
+   * Stores a report.
+   *
+   * @param coursePageInfoList the report
+   * @return the result id
+   */
+  public String put(List<CoursePageInfo> coursePageInfoList) {
+    String resultId = UUID.randomUUID().toString();
+    put(resultId, coursePageInfoList);
+    return resultId;
+  }
+
+  /**
+   * Stores a report under an id chosen by the caller, such as the run id of a replace.
+   *
+   * @param resultId the result id
+   * @param coursePageInfoList the report
+   */
+  public void put(String resultId, List<CoursePageInfo> coursePageInfoList) {
+    results.put(resultId, coursePageInfoList);
+  }
+
+  /**
+   * Gets a report.
+   *
+   * @param resultId the result id
+   * @return the report, empty if unknown or expired
+   */
+  public Optional<List<CoursePageInfo>> get(String resultId) {
+    return Optional.ofNullable(results.getIfPresent(resultId));
+  }
+}
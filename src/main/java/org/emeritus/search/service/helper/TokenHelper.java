@@ -1,16 +1,21 @@
 package org.emeritus.search.service.helper;
 
+import javax.annotation.PostConstruct;
 import org.emeritus.canvas.CanvasApiFactory;
 import org.emeritus.canvas.oauth.NonRefreshableOauthToken;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
- * The Class TokenHelper.
+ * The Class TokenHelper. Holds the one Canvas API factory and admin token shared by every reader
+ * and writer lookup.
  */
 @Component
 public final class TokenHelper {
 
+  /** The Constant BEARER. */
+  private static final String BEARER = "Bearer ";
+
   /** The admin token. */
   @Value("${canvas.admin-token}")
   private String adminToken;
@@ -19,13 +24,27 @@ public final class TokenHelper {
   @Value("${canvas.baseurl}")
   private String baseUrl;
 
+  /** The api factory. */
+  private CanvasApiFactory apiFactory;
+
+  /** The oauth token. */
+  private NonRefreshableOauthToken oauthToken;
+
+  /**
+   * Creates the shared factory and token once the properties are injected.
+   */
+  @PostConstruct
+  public void init() {
+    apiFactory = new CanvasApiFactory(baseUrl);
+    oauthToken = new NonRefreshableOauthToken(adminToken);
+  }
+
   /**
    * Gets the api factory.
    *
    * @return the api factory
    */
   public CanvasApiFactory getApiFactory() {
-    CanvasApiFactory apiFactory = new CanvasApiFactory(baseUrl);
     return apiFactory;
   }
 
@@ -35,8 +54,16 @@ public final class TokenHelper {
    * @return the token
    */
   public NonRefreshableOauthToken getToken() {
-    NonRefreshableOauthToken oauthToken = new NonRefreshableOauthToken(adminToken);
     return oauthToken;
   }
 
+  /**
+   * Gets the authorization header value for direct Canvas REST calls.
+   *
+   * @return the authorization header
+   */
+  public String getAuthorizationHeader() {
+    return BEARER + adminToken;
+  }
+
 }
@@ -0,0 +1,128 @@
+package org.emeritus.search.service.helper;
+
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.PostConstruct;
+import org.emeritus.search.matcher.TermMatcher;
+import org.emeritus.search.matcher.TrigramSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Keeps a trigram signature per course item and uses it to skip items that cannot match a search
+ * without scanning them. Signatures are computed in the fetch path, once per download of an item,
+ * and looked up at search time without reading the body. An item with an updated at keeps its
+ * signature under its url and revision, so it serves every later search until the item is edited;
+ * this store is bounded by the total size of the signatures. An item without one, such as a
+ * discussion topic, has its signature held for as long as the fetched body itself.
+ */
+@Component
+public class TrigramPrefilter implements MeterBinder {
+
+  /** Whether the prefilter is enabled. */
+  @Value("${search.prefilter.enabled:true}")
+  private boolean enabled;
+
+  /** The max total size of the signatures, in megabytes. */
+  @Value("${search.prefilter.max-size-mb:64}")
+  private long maxSizeMb;
+
+  /** The signatures of items with an updated at, by url and revision. */
+  private Cache<String, TrigramSignature> signatures;
+
+  /** The signatures of items without an updated at, by the identity of the fetched body. */
+  private Cache<String, TrigramSignature> bodySignatures;
+
+  /** The skipped counter. */
+  private Counter skippedCounter;
+
+  /**
+   * Inits the caches.
+   */
+  @PostConstruct
+  public void init() {
+    signatures = CacheBuilder.newBuilder().maximumWeight(maxSizeMb * 1024 * 1024)
+        .weigher((String key, TrigramSignature signature) -> key.length() * 2
+            + signature.getSizeInBytes())
+        .recordStats().build();
+    bodySignatures = CacheBuilder.newBuilder().weakKeys().recordStats().build();
+  }
+
+  /**
+   * Computes the signature of a fetched item, unless it already has one for this revision.
+   * Bodies too short to be worth a signature are skipped.
+   *
+   * @param itemUrl the item url
+   * @param body the body
+   * @param updatedAt the updated at, or null if the item does not report one
+   */
+  public void index(String itemUrl, String body, Date updatedAt) {
+    if (!enabled || itemUrl == null || body == null || body.length() < 3) {
+      return;
+    }
+    try {
+      if (updatedAt == null) {
+        bodySignatures.get(body, () -> TrigramSignature.of(body));
+      } else {
+        signatures.get(revisionKey(itemUrl, body, updatedAt), () -> TrigramSignature.of(body));
+      }
+    } catch (ExecutionException e) {
+      // Left without a signature, so it is scanned
+    }
+  }
+
+  /**
+   * Checks whether the body of the item may match, from the signature computed when it was
+   * fetched. Items without one are always scanned.
+   *
+   * @param itemUrl the item url
+   * @param body the body
+   * @param updatedAt the updated at, or null if the item does not report one
+   * @param termMatcher the term matcher
+   * @return false if the body certainly does not match
+   */
+  public boolean mayMatch(String itemUrl, String body, Date updatedAt, TermMatcher termMatcher) {
+    if (!enabled || itemUrl == null || body == null) {
+      return true;
+    }
+    TrigramSignature signature = updatedAt == null ? bodySignatures.getIfPresent(body)
+        : signatures.getIfPresent(revisionKey(itemUrl, body, updatedAt));
+    if (signature == null) {
+      return true;
+    }
+    boolean mayMatch = termMatcher.mayMatch(signature);
+    if (!mayMatch && skippedCounter != null) {
+      skippedCounter.increment();
+    }
+    return mayMatch;
+  }
+
+  /**
+   * Revision key. The length and hash of the body guard against an edit within the same second
+   * as the previous one, which Canvas reports with the same updated at; a stale signature there
+   * would skip an item that now matches. The hash is the one the body string caches.
+   *
+   * @param itemUrl the item url
+   * @param body the body
+   * @param updatedAt the updated at
+   * @return the key
+   */
+  private static String revisionKey(String itemUrl, String body, Date updatedAt) {
+    return itemUrl + '|' + updatedAt.getTime() + '|' + body.length() + '|' + body.hashCode();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    GuavaCacheMetrics.monitor(registry, signatures, "search.trigram-signatures");
+    GuavaCacheMetrics.monitor(registry, bodySignatures, "search.trigram-body-signatures");
+    skippedCounter = Counter.builder("search.prefilter.skipped")
+        .description("Course items skipped without scanning by the trigram prefilter")
+        .register(registry);
+  }
+}
@@ -2,43 +2,72 @@ package org.emeritus.search.service.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
-import org.emeritus.canvas.interfaces.AssignmentReader;
 import org.emeritus.canvas.interfaces.AssignmentWriter;
-import org.emeritus.canvas.interfaces.CourseReader;
-import org.emeritus.canvas.interfaces.DiscussionTopicReader;
 import org.emeritus.canvas.interfaces.DiscussionTopicWriter;
-import org.emeritus.canvas.interfaces.ModuleReader;
-import org.emeritus.canvas.interfaces.PageReader;
 import org.emeritus.canvas.interfaces.PageWriter;
-import org.emeritus.canvas.lms.rest.api.constant.ParamConstants;
 import org.emeritus.canvas.model.Course;
 import org.emeritus.canvas.model.DiscussionTopic;
 import org.emeritus.canvas.model.Module;
 import org.emeritus.canvas.model.ModuleItem;
 import org.emeritus.canvas.model.Page;
 import org.emeritus.canvas.model.assignment.Assignment;
-import org.emeritus.canvas.requestOptions.DiscussionTopicOptions;
-import org.emeritus.canvas.requestOptions.GetSingleCourseOptions;
-import org.emeritus.canvas.requestOptions.ListCourseAssignmentsOptions;
-import org.emeritus.canvas.requestOptions.ListCoursePagesOptions;
-import org.emeritus.canvas.requestOptions.ListModulesOptions;
 import org.emeritus.search.dto.CoursePageInfo;
 import org.emeritus.search.dto.PageInfo;
+import org.emeritus.search.dto.ReplacePreviewResult;
+import org.emeritus.search.dto.ReplaceResult;
+import org.emeritus.search.dto.ReplaceRule;
+import org.emeritus.search.dto.ReplaceStatus;
 import org.emeritus.search.dto.SearchReplaceDto;
+import org.emeritus.search.exception.RegexBudgetExceededException;
+import org.emeritus.search.matcher.MatchEngine;
+import org.emeritus.search.matcher.MatchOptions;
+import org.emeritus.search.matcher.MatchResult;
+import org.emeritus.search.matcher.TermMatcher;
+import org.emeritus.search.model.ContentRevision;
+import org.emeritus.search.model.CourseContentSnapshot;
+import org.emeritus.search.service.CourseContentService;
 import org.emeritus.search.service.ISearchTextService;
+import org.emeritus.search.service.helper.CanvasCall;
+import org.emeritus.search.service.helper.CanvasContentWriter;
+import org.emeritus.search.service.helper.CanvasRateLimiter;
+import org.emeritus.search.service.helper.CanvasRestClient;
+import org.emeritus.search.service.helper.CourseWriter;
+import org.emeritus.search.service.helper.DeltaScan;
+import org.emeritus.search.service.helper.DeltaScanStore;
+import org.emeritus.search.service.helper.FetchScope;
+import org.emeritus.search.service.helper.FetchScope.Subtask;
+import org.emeritus.search.service.helper.HostConcurrencyLimiter;
+import org.emeritus.search.service.helper.PendingReplacement;
+import org.emeritus.search.service.helper.ReplacePreview;
+import org.emeritus.search.service.helper.ReplaceJournal;
+import org.emeritus.search.service.helper.ReplacePreviewStore;
+import org.emeritus.search.service.helper.ReplaceResultStore;
 import org.emeritus.search.service.helper.TokenHelper;
+import org.emeritus.search.service.helper.TrigramPrefilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 /**
@@ -54,12 +83,84 @@ public class SearchTextServiceImpl implements ISearchTextService {
   @Value("${canvas.baseurl}")
   public String baseUrl;
 
+  /** Whether searches match content one pagination batch at a time. */
+  @Value("${search.scan.streaming-enabled:true}")
+  private boolean streamingScan;
+
   /** The token helper. */
   @Autowired
   private TokenHelper tokenHelper;
 
-  /** The Constant PAGINATION_PAGE_SIZE. */
-  public static final Integer PAGINATION_PAGE_SIZE = 100;
+  /** The delta scan store. */
+  @Autowired
+  private DeltaScanStore deltaScanStore;
+
+  /** The course content service. */
+  @Autowired
+  private CourseContentService courseContentService;
+
+  /** The match engine. */
+  @Autowired
+  private MatchEngine matchEngine;
+
+  /** The trigram prefilter. */
+  @Autowired
+  private TrigramPrefilter trigramPrefilter;
+
+  /** The replace result store. */
+  @Autowired
+  private ReplaceResultStore replaceResultStore;
+
+  /** The replace preview store. */
+  @Autowired
+  private ReplacePreviewStore replacePreviewStore;
+
+  /** The replace journal. */
+  @Autowired
+  private ReplaceJournal replaceJournal;
+
+  /** The canvas rate limiter. */
+  @Autowired
+  private CanvasRateLimiter canvasRateLimiter;
+
+  /** The course scan executor. */
+  @Autowired
+  @Qualifier("courseScanExecutor")
+  private ThreadPoolTaskExecutor courseScanExecutor;
+
+  /** The canvas fetch executor. */
+  @Autowired
+  @Qualifier("canvasFetchExecutor")
+  private ThreadPoolTaskExecutor canvasFetchExecutor;
+
+  /** The canvas write executor. */
+  @Autowired
+  @Qualifier("canvasWriteExecutor")
+  private ThreadPoolTaskExecutor canvasWriteExecutor;
+
+  /** Whether updates send only the rewritten field. */
+  @Value("${search.write.minimal-payload:true}")
+  private boolean minimalPayload;
+
+  /** The canvas content writer. */
+  @Autowired
+  private CanvasContentWriter canvasContentWriter;
+
+  /** The canvas rest client. */
+  @Autowired
+  private CanvasRestClient canvasRestClient;
+
+  /** Whether each item is read again before it is written, to detect concurrent edits. */
+  @Value("${search.write.verify-before-write:true}")
+  private boolean verifyBeforeWrite;
+
+  /** The max Canvas updates in flight for one course. */
+  @Value("${search.write.max-in-flight-per-course:4}")
+  private int maxWritesPerCourse;
+
+  /** The host concurrency limiter. */
+  @Autowired
+  private HostConcurrencyLimiter hostConcurrencyLimiter;
 
   /** The Constant PAGE. */
   private static final String PAGE = "Page";
@@ -74,66 +175,249 @@ public class SearchTextServiceImpl implements ISearchTextService {
    * Search text and replace across courses.
    *
    * @param searchReplaceDto the search replace dto
-   * @return the boolean
+   * @return the report of what was replaced, skipped or failed in each course, also kept under
+   *         its result id for the results page; the writes are journaled under the same id
    * @throws IOException Signals that an I/O exception has occurred.
    */
   @Override
-  public Boolean searchTextAndReplaceAcrossCourses(SearchReplaceDto searchReplaceDto)
+  public ReplaceResult searchTextAndReplaceAcrossCourses(SearchReplaceDto searchReplaceDto)
       throws IOException {
     System.out.println("searchReplaceDto" + searchReplaceDto.getSourceText());
+    TermMatcher termMatcher =
+        matchEngine.compile(getRules(searchReplaceDto), getMatchOptions(searchReplaceDto));
+    String sourceText = describeSourceText(searchReplaceDto);
+    String runId = UUID.randomUUID().toString();
+    List<CoursePageInfo> coursePageInfoList = new ArrayList<>();
     for (String courseId : searchReplaceDto.getCourseIds()) {
-      List<Module> modules = getModules(courseId);
-      extractModuleItem(modules, courseId, searchReplaceDto);
+      try {
+        coursePageInfoList
+            .add(extractModuleItem(courseId, searchReplaceDto, termMatcher, runId));
+      } catch (IOException e) {
+        logger.error("Error while replacing text in course {}", courseId, e);
+        coursePageInfoList.add(CoursePageInfo.builder().courseId(courseId)
+            .sourceText(sourceText).courseName(StringUtils.EMPTY)
+            .pageInfoList(Collections.emptyList()).errorMessage(e.getMessage()).build());
+      }
     }
-    return true;
+    replaceResultStore.put(runId, coursePageInfoList);
+    return ReplaceResult.builder().resultId(runId).coursePageInfoList(coursePageInfoList)
+        .notJournaledCount(countNotJournaled(coursePageInfoList)).build();
   }
 
   /**
-   * Gets the modules.
+   * Previews a search and replace across courses. The courses are read and matched exactly as a
+   * replace would, but nothing is written: the fetched content and the match of every item are
+   * kept under the returned preview id, so committing it writes straight away.
    *
-   * @param courseId the course id
-   * @return the modules
+   * @param searchReplaceDto the search replace dto
+   * @return the items that would be replaced or skipped in each course, with the preview id
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  private List<Module> getModules(String courseId) throws IOException {
-    ModuleReader moduleReader = tokenHelper.getApiFactory().getReader(ModuleReader.class,
-        tokenHelper.getToken(), PAGINATION_PAGE_SIZE);
-    ListModulesOptions listModulesOptions = new ListModulesOptions(Long.parseLong(courseId));
-    List<ListModulesOptions.Include> moduleIncludes = new ArrayList<>();
-    moduleIncludes.add(ListModulesOptions.Include.items);
-    listModulesOptions.includes(moduleIncludes);
-    return moduleReader.withCallback(this::processModules).getModulesInCourse(listModulesOptions);
+  @Override
+  public ReplacePreviewResult previewReplace(SearchReplaceDto searchReplaceDto)
+      throws IOException {
+    TermMatcher termMatcher =
+        matchEngine.compile(getRules(searchReplaceDto), getMatchOptions(searchReplaceDto));
+    String sourceText = describeSourceText(searchReplaceDto);
+    List<CoursePageInfo> coursePageInfoList = new ArrayList<>();
+    Map<String, PendingReplacement> pending = new HashMap<>();
+    for (String courseId : searchReplaceDto.getCourseIds()) {
+      try {
+        CourseContent content = fetchCourseContent(courseId);
+        List<PageInfo> pageInfoList = new ArrayList<>();
+        walkModuleItems(courseId, content, termMatcher, item -> {
+          if (item.getOutcome() != null) {
+            pageInfoList.add(item.getOutcome());
+          } else {
+            pending.put(item.getItemId(), item);
+            pageInfoList.add(item.report().occurences(item.getMatch().getCount())
+                .ruleOccurences(getRuleOccurences(termMatcher, item.getMatch()))
+                .contentHash(item.getSeenHash()).status(ReplaceStatus.PENDING).build());
+          }
+        });
+        coursePageInfoList.add(CoursePageInfo.builder().courseId(courseId).sourceText(sourceText)
+            .courseName(content.courseName).pageInfoList(pageInfoList).build());
+      } catch (IOException e) {
+        logger.error("Error while previewing replace in course {}", courseId, e);
+        coursePageInfoList.add(CoursePageInfo.builder().courseId(courseId)
+            .sourceText(sourceText).courseName(StringUtils.EMPTY)
+            .pageInfoList(Collections.emptyList()).errorMessage(e.getMessage()).build());
+      }
+    }
+    String previewId =
+        replacePreviewStore.put(new ReplacePreview(termMatcher, coursePageInfoList, pending));
+    return ReplacePreviewResult.builder().previewId(previewId)
+        .coursePageInfoList(coursePageInfoList).build();
+  }
+
+  /**
+   * Commits a preview, writing its pending items from the content pinned at preview time with no
+   * read phase. Each item is still checked against Canvas just before it is written, so one
+   * edited since the preview is matched again from its fresh content. A preview is committed at
+   * most once.
+   *
+   * @param previewId the preview id
+   * @param itemIds the item ids to write, or null for every pending item
+   * @return the report of what was replaced, skipped or failed in each course, empty if the
+   *         preview is unknown, expired or already committed
+   */
+  @Override
+  public Optional<ReplaceResult> commitPreview(String previewId, List<String> itemIds) {
+    Optional<ReplacePreview> found = replacePreviewStore.take(previewId);
+    if (!found.isPresent()) {
+      return Optional.empty();
+    }
+    ReplacePreview preview = found.get();
+    String runId = UUID.randomUUID().toString();
+    Set<String> selected = itemIds == null ? null : new HashSet<>(itemIds);
+
+    // Start the writes of every course before waiting for any of them
+    List<List<CompletableFuture<PageInfo>>> courseOutcomes = new ArrayList<>();
+    for (CoursePageInfo coursePreview : preview.getReport()) {
+      CourseWriter writer =
+          new CourseWriter(canvasWriteExecutor.getThreadPoolExecutor(), maxWritesPerCourse);
+      List<CompletableFuture<PageInfo>> outcomes = new ArrayList<>();
+      for (PageInfo previewed : coursePreview.getPageInfoList()) {
+        PendingReplacement item = preview.getPending(previewed.getItemId());
+        if (item == null) {
+          outcomes.add(CompletableFuture.completedFuture(previewed));
+        } else if (selected != null && !selected.contains(item.getItemId())) {
+          outcomes.add(CompletableFuture.completedFuture(item.report()
+              .occurences(previewed.getOccurences())
+              .ruleOccurences(previewed.getRuleOccurences()).status(ReplaceStatus.SKIPPED)
+              .message("Not selected for replacement").build()));
+        } else {
+          outcomes.add(applyReplacement(item, preview.getTermMatcher(), writer, runId));
+        }
+      }
+      courseOutcomes.add(outcomes);
+    }
+
+    // Report the items in the order of the preview
+    List<CoursePageInfo> coursePageInfoList = new ArrayList<>();
+    for (int i = 0; i < courseOutcomes.size(); i++) {
+      CoursePageInfo coursePreview = preview.getReport().get(i);
+      List<PageInfo> pageInfoList = new ArrayList<>();
+      for (CompletableFuture<PageInfo> outcome : courseOutcomes.get(i)) {
+        pageInfoList.add(outcome.join());
+      }
+      coursePageInfoList.add(CoursePageInfo.builder().courseId(coursePreview.getCourseId())
+          .courseName(coursePreview.getCourseName()).sourceText(coursePreview.getSourceText())
+          .pageInfoList(pageInfoList).errorMessage(coursePreview.getErrorMessage()).build());
+    }
+    replaceResultStore.put(runId, coursePageInfoList);
+    return Optional.of(ReplaceResult.builder().resultId(runId)
+        .coursePageInfoList(coursePageInfoList)
+        .notJournaledCount(countNotJournaled(coursePageInfoList)).build());
   }
 
   /**
-   * Process modules.
+   * Counts the items replaced in Canvas whose write could not be journaled.
    *
-   * @param modules the modules
+   * @param coursePageInfoList the report
+   * @return the count
    */
-  private void processModules(List<Module> modules) {
-    logger.info("Total modules: {}", modules.size());
+  private static int countNotJournaled(List<CoursePageInfo> coursePageInfoList) {
+    return (int) coursePageInfoList.stream().flatMap(course -> course.getPageInfoList().stream())
+        .filter(pageInfo -> Boolean.TRUE.equals(pageInfo.getNotJournaled())).count();
   }
 
   /**
-   * Extract module item.
+   * Extract module item. The module items are matched one by one and each replacement is handed
+   * to the write stage as soon as it is found.
    *
-   * @param modules the modules
    * @param courseId the course id
    * @param searchReplaceDto the search replace dto
+   * @param termMatcher the compiled source text
+   * @param runId the run id the writes are journaled under
+   * @return the outcome for every item that contained the text
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  private void extractModuleItem(List<Module> modules, String courseId,
-      SearchReplaceDto searchReplaceDto) throws IOException {
-    List<Page> pages = listPagesInCourse(courseId);
-    List<DiscussionTopic> discussionTopics = getCourseAllDiscussionTopics(courseId);
-    List<Assignment> assignments = listCourseAssignments(courseId);
+  private CoursePageInfo extractModuleItem(String courseId, SearchReplaceDto searchReplaceDto,
+      TermMatcher termMatcher, String runId) throws IOException {
+    CourseContent content = fetchCourseContent(courseId);
+
+    // Matched items are written on the write executor while the scan goes on
+    CourseWriter writer =
+        new CourseWriter(canvasWriteExecutor.getThreadPoolExecutor(), maxWritesPerCourse);
+    List<CompletableFuture<PageInfo>> outcomes = new ArrayList<>();
+    walkModuleItems(courseId, content, termMatcher,
+        item -> outcomes.add(applyReplacement(item, termMatcher, writer, runId)));
+
+    // Wait for the writes still in flight, reporting the items in module order
+    List<PageInfo> pageInfoList = new ArrayList<>(outcomes.size());
+    for (CompletableFuture<PageInfo> outcome : outcomes) {
+      pageInfoList.add(outcome.join());
+    }
+    return CoursePageInfo.builder().courseId(courseId)
+        .sourceText(describeSourceText(searchReplaceDto)).courseName(content.courseName)
+        .pageInfoList(pageInfoList).build();
+  }
+
+  /**
+   * Fetches the content of a course. Modules, pages, discussion topics and assignments are
+   * fetched concurrently; a search of the same course running at the same time shares those
+   * fetches.
+   *
+   * @param courseId the course id
+   * @return the course content
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private CourseContent fetchCourseContent(String courseId) throws IOException {
+    try (FetchScope scope = new FetchScope(canvasFetchExecutor.getThreadPoolExecutor())) {
+      Subtask<List<Module>> moduleTask =
+          scope.fork(() -> courseContentService.getModules(courseId));
+      Subtask<List<Page>> pageTask =
+          scope.fork(() -> courseContentService.listPagesInCourse(courseId));
+      Subtask<List<DiscussionTopic>> topicTask =
+          scope.fork(() -> courseContentService.getCourseAllDiscussionTopics(courseId));
+      Subtask<List<Assignment>> assignmentTask =
+          scope.fork(() -> courseContentService.listCourseAssignments(courseId));
+      Subtask<Optional<Course>> courseTask =
+          scope.fork(() -> courseContentService.getSingleCourse(courseId));
+      scope.join();
+      Optional<Course> course = courseTask.get();
+      return new CourseContent(moduleTask.get(),
+          CourseContentSnapshot.of(courseId, pageTask.get(), topicTask.get(),
+              assignmentTask.get()),
+          course.isPresent() ? course.get().getName() : StringUtils.EMPTY);
+    }
+  }
 
-    for (Module module : modules) {
+  /**
+   * Matches the published module items of a course in module order, passing on each item that
+   * contains the text.
+   *
+   * @param courseId the course id
+   * @param content the course content
+   * @param termMatcher the compiled source text
+   * @param items receives the matched items
+   */
+  private void walkModuleItems(String courseId, CourseContent content, TermMatcher termMatcher,
+      Consumer<PendingReplacement> items) {
+    Set<Object> handled = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Module module : content.modules) {
       if (isModulePublished(module)) {
         for (ModuleItem moduleItem : module.getItems()) {
           if (isPublished(moduleItem)) {
-            handleModuleItemToFindAndReplace(searchReplaceDto, moduleItem, courseId, module, pages,
-                discussionTopics, assignments);
+            PendingReplacement item;
+            try {
+              item = prepareReplacement(termMatcher, moduleItem, courseId, content.snapshot,
+                  handled);
+            } catch (RegexBudgetExceededException e) {
+              // A pathological pattern on one body fails that item, not the whole course
+              logger.warn("Regex budget exceeded on item {} of course {}", moduleItem.getId(),
+                  courseId);
+              item = PendingReplacement.builder().courseId(courseId)
+                  .contentType(moduleItem.getType())
+                  .contentKey(String.valueOf(moduleItem.getId())).pageTitle(moduleItem.getTitle())
+                  .build();
+              item.setOutcome(item.report().status(ReplaceStatus.FAILED)
+                  .message(e.getMessage()).build());
+            }
+            if (item != null) {
+              items.accept(item);
+            }
           }
         }
       }
@@ -161,85 +445,85 @@ public class SearchTextServiceImpl implements ISearchTextService {
   }
 
   /**
-   * Handle module item to find and replace.
+   * Matches a module item. Each body is walked once by the match engine, which both locates the
+   * whole word matches and produces the rewritten body. Content linked from several module items
+   * is only handled the first time, since its write may still be in flight.
    *
-   * @param searchReplaceDto the search replace dto
+   * @param termMatcher the compiled source text
    * @param moduleItem the module item
    * @param courseId the course id
-   * @param module the module
-   * @param pages the pages
-   * @param discussionTopics the discussion topics
-   * @param assignments the assignments
-   * @throws IOException Signals that an I/O exception has occurred.
+   * @param snapshot the indexed course content
+   * @param handled the content already handled in the course
+   * @return the matched item, or null if it does not contain the text
    */
-  private void handleModuleItemToFindAndReplace(SearchReplaceDto searchReplaceDto,
-      ModuleItem moduleItem, String courseId, Module module, List<Page> pages,
-      List<DiscussionTopic> discussionTopics, List<Assignment> assignments) throws IOException {
+  private PendingReplacement prepareReplacement(TermMatcher termMatcher, ModuleItem moduleItem,
+      String courseId, CourseContentSnapshot snapshot, Set<Object> handled) {
     switch (moduleItem.getType()) {
       case PAGE:
-        Page page = getMatchingPage(pages, moduleItem.getPageUrl());
-        if (page != null && !StringUtils.isEmpty(page.getBody())
-            && (page.getBody().contains(searchReplaceDto.getSourceText()))) {
-
-          // Replace the text
-          String originalMessage = page.getBody();
-          String updatedMessage =
-              originalMessage.replaceAll("\\b" + searchReplaceDto.getSourceText() + "\\b",
-                  searchReplaceDto.getTextToBeReplace());
-
-          // Check if replacement occurred
-          if (!originalMessage.equals(updatedMessage)) {
-            // Set the updated message back to the page
-            page.setBody(updatedMessage);
-
-            // Update the page
-            updateCoursePage(page, courseId);
+        Page page = snapshot.getPage(moduleItem.getPageUrl());
+        if (page != null && handled.add(page) && !StringUtils.isEmpty(page.getBody())
+            && trigramPrefilter.mayMatch(page.getHtmlUrl(), page.getBody(), page.getUpdatedAt(),
+                termMatcher)) {
+          MatchResult match = termMatcher.replace(page.getBody());
+          if (isPresent(match)) {
+            // Update the page body once Canvas still holds the version that was matched
+            return prepared(termMatcher, match, PendingReplacement.builder()
+                .courseId(courseId).contentType(PAGE).contentKey(page.getUrl())
+                .pageTitle(page.getTitle())
+                .redirectUrl(page.getHtmlUrl())
+                .seen(new ContentRevision(page.getBody(), page.getUpdatedAt()))
+                .current(() -> courseContentService.getPage(courseId, page.getUrl())
+                    .map(fresh -> new ContentRevision(fresh.getBody(), fresh.getUpdatedAt())))
+                .update(body -> savePageBody(courseId, page, body)));
           }
         }
         break;
 
       case DISCUSSION:
-        DiscussionTopic discussionTopic =
-            getMatchingTopic(discussionTopics, moduleItem.getContentId());
-
-        if (discussionTopic != null && !StringUtils.isEmpty(discussionTopic.getMessage())
-            && discussionTopic.getMessage().contains(searchReplaceDto.getSourceText())) {
-
-          // Replace the text
-          String originalMessage = discussionTopic.getMessage();
-          String updatedMessage =
-              originalMessage.replaceAll("\\b" + searchReplaceDto.getSourceText() + "\\b",
-                  searchReplaceDto.getTextToBeReplace());
-
-          // Check if replacement occurred
-          if (!originalMessage.equals(updatedMessage)) {
-            // Set the updated message back to the discussion topic
-            discussionTopic.setMessage(updatedMessage);
-
-            // Update the discussion topic
-            updateDiscussionTopic(courseId, discussionTopic);
+        DiscussionTopic discussionTopic = snapshot.getDiscussionTopic(moduleItem.getContentId());
+        if (discussionTopic != null && handled.add(discussionTopic)
+            && !StringUtils.isEmpty(discussionTopic.getMessage())
+            && trigramPrefilter.mayMatch(discussionTopic.getHtmlUrl(),
+                discussionTopic.getMessage(), null, termMatcher)) {
+          MatchResult match = termMatcher.replace(discussionTopic.getMessage());
+          if (isPresent(match)) {
+            // Update the discussion topic message once Canvas still holds the version that was
+            // matched
+            return prepared(termMatcher, match, PendingReplacement.builder()
+                .courseId(courseId).contentType(DISCUSSION)
+                .contentKey(String.valueOf(discussionTopic.getId()))
+                .pageTitle(discussionTopic.getTitle())
+                .redirectUrl(discussionTopicUrl(courseId, discussionTopic))
+                .seen(new ContentRevision(discussionTopic.getMessage(), null))
+                .current(() -> courseContentService
+                    .getDiscussionTopic(courseId, discussionTopic.getId())
+                    .map(fresh -> new ContentRevision(fresh.getMessage(), null)))
+                .update(message -> saveDiscussionMessage(courseId, discussionTopic, message)));
           }
         }
         break;
 
       case ASSIGNMENT:
-        Assignment assignment = getMatchingAssignments(assignments, moduleItem.getContentId());
-        if (assignment != null && !StringUtils.isEmpty(assignment.getDescription())
-            && (assignment.getDescription().contains(searchReplaceDto.getSourceText()))) {
-
-          // Replace the text
-          String originalMessage = assignment.getDescription();
-          String updatedMessage =
-              originalMessage.replaceAll("\\b" + searchReplaceDto.getSourceText() + "\\b",
-                  searchReplaceDto.getTextToBeReplace());
-
-          // Check if replacement occurred
-          if (!originalMessage.equals(updatedMessage)) {
-            // Set the updated message back to the assignment
-            assignment.setDescription(updatedMessage);
-
-            // Update the assignment
-            updateAssignments(courseId, assignment.getId(), assignment);
+        Assignment assignment = snapshot.getAssignment(moduleItem.getContentId());
+        if (assignment != null && handled.add(assignment)
+            && !StringUtils.isEmpty(assignment.getDescription())
+            && trigramPrefilter.mayMatch(assignment.getHtmlUrl(),
+                assignment.getDescription(), assignment.getUpdatedAt(), termMatcher)) {
+          MatchResult match = termMatcher.replace(assignment.getDescription());
+          if (isPresent(match)) {
+            // Update the assignment description once Canvas still holds the version that was
+            // matched
+            return prepared(termMatcher, match, PendingReplacement.builder()
+                .courseId(courseId).contentType(ASSIGNMENT)
+                .contentKey(String.valueOf(assignment.getId()))
+                .pageTitle(assignment.getName())
+                .redirectUrl(assignmentUrl(courseId, assignment))
+                .seen(new ContentRevision(assignment.getDescription(), assignment.getUpdatedAt()))
+                .current(() -> courseContentService.getAssignment(courseId, assignment.getId())
+                    .map(fresh -> new ContentRevision(fresh.getDescription(),
+                        fresh.getUpdatedAt())))
+                .update(description -> saveAssignmentDescription(courseId, assignment,
+                    description)));
           }
         }
         break;
@@ -247,134 +531,286 @@ public class SearchTextServiceImpl implements ISearchTextService {
       default:
         break;
     }
+    return null;
   }
 
   /**
-   * Gets the matching page.
+   * Checks if the text occurs in the body at all, as a whole word or inside other words.
    *
-   * @param pages the pages
-   * @param pageUrl the page url
-   * @return the matching page
+   * @param match the match
+   * @return true, if present
    */
-  private Page getMatchingPage(List<Page> pages, String pageUrl) {
-    return pages.stream().filter(page -> page.getUrl() != null && pageUrl.equals(page.getUrl()))
-        .findAny().orElse(null);
+  private static boolean isPresent(MatchResult match) {
+    return match.isFound() || match.getPartialCount() > 0;
   }
 
   /**
-   * Gets the matching topic.
+   * Builds a matched item. An item that contains the text only inside a longer word, or whose
+   * replacements all equal the text they replace, gets its skipped outcome right away, since
+   * there is nothing to write. An item to write gets the hash of its matched body pinned.
    *
-   * @param discussionTopics the discussion topics
-   * @param contentId the content id
-   * @return the matching topic
+   * @param termMatcher the compiled rules
+   * @param match the match, with the rewritten body
+   * @param item the item
+   * @return the pending replacement
    */
-  private DiscussionTopic getMatchingTopic(List<DiscussionTopic> discussionTopics, Long contentId) {
-    return discussionTopics.stream().filter(discussionTopic -> discussionTopic.getId() != null
-        && discussionTopic.getId().equals(contentId)).findAny().orElse(null);
+  private static PendingReplacement prepared(TermMatcher termMatcher, MatchResult match,
+      PendingReplacement.PendingReplacementBuilder item) {
+    PendingReplacement pending = item.match(match).build();
+    if (!match.isFound()) {
+      pending.setOutcome(pending.report().occurences(0).status(ReplaceStatus.SKIPPED)
+          .message("Text only found inside other words").build());
+    } else if (!match.isChanged()) {
+      pending.setOutcome(pending.report().occurences(match.getCount())
+          .ruleOccurences(getRuleOccurences(termMatcher, match)).status(ReplaceStatus.SKIPPED)
+          .message("Replacement leaves the text unchanged").build());
+    } else {
+      pending.setSeenHash(ReplaceJournal.hash(pending.getSeen().getBody()));
+    }
+    return pending;
   }
 
   /**
-   * Gets the matching assignments.
+   * Hands a matched item to the write stage and reports the outcome once the write completes.
+   * Items with a known outcome are reported as they are without calling Canvas. The outcome
+   * reflects the content that was finally written, which differs from the matched one when the
+   * item was edited in Canvas in the meantime.
    *
-   * @param assignments the assignments
-   * @param contentId the content id
-   * @return the matching assignments
+   * @param item the matched item
+   * @param termMatcher the compiled rules
+   * @param writer the write stage of the course
+   * @param runId the run id the write is journaled under
+   * @return the future outcome
    */
-  private Assignment getMatchingAssignments(List<Assignment> assignments, Long contentId) {
-    return assignments.stream().filter(assignment -> assignment.getId() != null
-        && Long.valueOf(assignment.getId()).equals(contentId)).findAny().orElse(null);
+  private CompletableFuture<PageInfo> applyReplacement(PendingReplacement item,
+      TermMatcher termMatcher, CourseWriter writer, String runId) {
+    if (item.getOutcome() != null) {
+      return CompletableFuture.completedFuture(item.getOutcome());
+    }
+    MatchResult match = item.getMatch();
+    CanvasCall<MatchResult> write = () -> writeUnlessEdited(termMatcher, item, runId);
+    return writer.submit(write).handle((written, e) -> {
+      PageInfo.PageInfoBuilder pageInfo = item.report();
+      if (e != null) {
+        logger.error("Error while saving replaced text", e);
+        return pageInfo.occurences(match.getCount())
+            .ruleOccurences(getRuleOccurences(termMatcher, match)).status(ReplaceStatus.FAILED)
+            .message(e.getMessage()).build();
+      }
+      if (!written.isFound()) {
+        return pageInfo.occurences(0).status(ReplaceStatus.SKIPPED)
+            .message(isPresent(written) ? "Text only found inside other words"
+                : "Text no longer found after an edit in Canvas")
+            .build();
+      }
+      pageInfo.occurences(written.getCount())
+          .ruleOccurences(getRuleOccurences(termMatcher, written));
+      if (!written.isChanged()) {
+        return pageInfo.status(ReplaceStatus.SKIPPED)
+            .message("Replacement leaves the text unchanged").build();
+      }
+      if (item.isJournalFailed()) {
+        // Saved in Canvas, so not retried, but a rollback of the run will not restore it
+        pageInfo.notJournaled(true).message("Replaced, but not journaled, so it cannot be rolled "
+            + "back" + (written != match ? "; matched in the content edited in Canvas" : ""));
+      } else if (written != match) {
+        pageInfo.message("Replaced in the content edited in Canvas after the scan");
+      }
+      return pageInfo.status(ReplaceStatus.REPLACED).build();
+    });
   }
 
   /**
-   * List pages in course.
+   * Writes a rewritten body unless the item changed in Canvas since it was scanned. The item is
+   * read again just before the update and compared with the scanned revision; on a mismatch the
+   * fresh content is matched again and that result is written instead, so an edit made in the
+   * meantime is kept rather than overwritten with a stale body. Every write is recorded in the
+   * replace journal with the content it overwrote and the content as Canvas saved it, before the
+   * write is reported. Runs on the write stage.
    *
-   * @param courseId the course id
-   * @return the list
+   * @param termMatcher the compiled rules
+   * @param item the matched item
+   * @param runId the run id the write is journaled under
+   * @return the match that was written, or the fresh match when there was nothing to write
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  private List<Page> listPagesInCourse(String courseId) throws IOException {
-    PageReader pageReader = tokenHelper.getApiFactory().getReader(PageReader.class,
-        tokenHelper.getToken(), PAGINATION_PAGE_SIZE);
-    ListCoursePagesOptions listCoursePagesOptions = new ListCoursePagesOptions(courseId);
-    listCoursePagesOptions.includes(Arrays.asList(ListCoursePagesOptions.Include.body));
-    return pageReader.withCallback(this::processPages).listPagesInCourse(courseId,
-        listCoursePagesOptions);
+  private MatchResult writeUnlessEdited(TermMatcher termMatcher, PendingReplacement item,
+      String runId) throws IOException {
+    MatchResult written = item.getMatch();
+    String before = item.getSeen().getBody();
+    if (verifyBeforeWrite) {
+      ContentRevision revision = item.getCurrent().call()
+          .orElseThrow(() -> new IOException("Item no longer exists in Canvas"));
+      before = revision.getBody();
+      if (!item.isUnchangedIn(revision)) {
+        logger.info("Item changed in Canvas since the scan ({} -> {}), matching it again",
+            item.getSeen().getUpdatedAt(), revision.getUpdatedAt());
+        written = termMatcher.replace(StringUtils.defaultString(revision.getBody()));
+        if (!written.isChanged()) {
+          return written;
+        }
+      }
+    }
+    String saved = item.getUpdate().write(written.getRewritten());
+    item.setJournalFailed(!replaceJournal.record(runId, item.getCourseId(),
+        item.getContentType(), item.getContentKey(), before,
+        saved != null ? saved : written.getRewritten()));
+    return written;
+  }
+
+  /**
+   * The content of a course fetched for a replace.
+   */
+  private static final class CourseContent {
+
+    /** The modules. */
+    private final List<Module> modules;
+
+    /** The indexed pages, discussion topics and assignments. */
+    private final CourseContentSnapshot snapshot;
+
+    /** The course name. */
+    private final String courseName;
+
+    /**
+     * Instantiates a new course content.
+     *
+     * @param modules the modules
+     * @param snapshot the snapshot
+     * @param courseName the course name
+     */
+    CourseContent(List<Module> modules, CourseContentSnapshot snapshot, String courseName) {
+      this.modules = modules;
+      this.snapshot = snapshot;
+      this.courseName = courseName;
+    }
   }
 
   /**
-   * Process pages.
+   * Gets the rules of the request: its rule set, or else its single source text and replacement.
    *
-   * @param pages the pages
+   * @param searchReplaceDto the search replace dto
+   * @return the rules
    */
-  private void processPages(List<Page> pages) {
-    logger.info("Total pages: : {}", pages.size());
+  private static List<ReplaceRule> getRules(SearchReplaceDto searchReplaceDto) {
+    if (!isEmptyOrNull(searchReplaceDto.getRules())) {
+      return searchReplaceDto.getRules();
+    }
+    return List.of(new ReplaceRule(searchReplaceDto.getSourceText(),
+        searchReplaceDto.getTextToBeReplace()));
   }
 
   /**
-   * List course assignments.
+   * Gets the match options of the request.
    *
-   * @param courseId the course id
-   * @return the list
-   * @throws IOException Signals that an I/O exception has occurred.
+   * @param searchReplaceDto the search replace dto
+   * @return the match options
    */
-  public List<Assignment> listCourseAssignments(String courseId) throws IOException {
-    AssignmentReader assignmentReader = tokenHelper.getApiFactory().getReader(
-        AssignmentReader.class, tokenHelper.getToken(), ParamConstants.PAGINATION_PAGE_SIZE);
-    ListCourseAssignmentsOptions listCourseAssignmentsOptions =
-        new ListCourseAssignmentsOptions(courseId);
-    return assignmentReader.withCallback(this::processAssignment)
-        .listCourseAssignments(listCourseAssignmentsOptions);
+  private static MatchOptions getMatchOptions(SearchReplaceDto searchReplaceDto) {
+    return MatchOptions.builder().regex(searchReplaceDto.isRegex())
+        .ignoreCase(searchReplaceDto.isIgnoreCase())
+        .ignoreAccents(searchReplaceDto.isIgnoreAccents()).build();
   }
 
   /**
-   * Process assignment.
+   * Describe source text.
    *
-   * @param assignments the assignments
+   * @param searchReplaceDto the search replace dto
+   * @return the source text, or the source texts of the rule set separated by commas
+   */
+  private static String describeSourceText(SearchReplaceDto searchReplaceDto) {
+    if (isEmptyOrNull(searchReplaceDto.getRules())) {
+      return searchReplaceDto.getSourceText();
+    }
+    return searchReplaceDto.getRules().stream().map(ReplaceRule::getSourceText)
+        .collect(Collectors.joining(", "));
+  }
+
+  /**
+   * Gets the occurrences per rule, by term, leaving out rules that did not match.
+   *
+   * @param termMatcher the term matcher
+   * @param match the match
+   * @return the rule occurences, or null for a single rule
    */
-  private void processAssignment(List<Assignment> assignments) {
-    logger.info("Assignments count: {}", assignments.size());
+  private static Map<String, Integer> getRuleOccurences(TermMatcher termMatcher,
+      MatchResult match) {
+    if (termMatcher.getRuleCount() == 1) {
+      return null;
+    }
+    int[] ruleCounts = match.getRuleCounts();
+    Map<String, Integer> ruleOccurences = new LinkedHashMap<>();
+    for (int rule = 0; rule < ruleCounts.length; rule++) {
+      if (ruleCounts[rule] > 0) {
+        ruleOccurences.merge(termMatcher.getTerm(rule), ruleCounts[rule], Integer::sum);
+      }
+    }
+    return ruleOccurences;
   }
 
   /**
-   * Gets the course all discussion topics.
+   * Saves a rewritten page body. The fetched page may be shared with concurrent searches, so it
+   * is never changed: minimal updates send the body alone, and full object updates go through a
+   * copy.
    *
    * @param courseId the course id
-   * @return the course all discussion topics
+   * @param page the page as fetched
+   * @param body the rewritten body
+   * @return the body as Canvas saved it, or null if Canvas did not return it
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  public List<DiscussionTopic> getCourseAllDiscussionTopics(String courseId) throws IOException {
-    DiscussionTopicReader topicReader = tokenHelper.getApiFactory().getReader(
-        DiscussionTopicReader.class, tokenHelper.getToken(), ParamConstants.PAGINATION_PAGE_SIZE);
-    DiscussionTopicOptions topicOptions = new DiscussionTopicOptions(courseId);
-    return topicReader.withCallback(this::processDiscussions)
-        .getCourseAllDiscussionTopics(topicOptions);
+  private String savePageBody(String courseId, Page page, String body) throws IOException {
+    if (minimalPayload) {
+      return canvasContentWriter.updatePageBody(courseId, page.getUrl(), body);
+    }
+    Page update = canvasRestClient.copy(page);
+    update.setBody(body);
+    return updateCoursePage(update, courseId).map(Page::getBody).orElse(null);
   }
 
   /**
-   * Gets the single course.
+   * Saves a rewritten assignment description, without changing the fetched assignment.
    *
    * @param courseId the course id
-   * @return the single course
+   * @param assignment the assignment as fetched
+   * @param description the rewritten description
+   * @return the description as Canvas saved it, or null if Canvas did not return it
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  private Optional<Course> getSingleCourse(String courseId) throws IOException {
-    CourseReader courseReader =
-        tokenHelper.getApiFactory().getReader(CourseReader.class, tokenHelper.getToken());
-    GetSingleCourseOptions getSingleCourseOptions = new GetSingleCourseOptions(courseId);
-    return courseReader.getSingleCourse(getSingleCourseOptions);
+  private String saveAssignmentDescription(String courseId, Assignment assignment,
+      String description) throws IOException {
+    if (minimalPayload) {
+      return canvasContentWriter.updateAssignmentDescription(courseId, assignment.getId(),
+          description);
+    }
+    Assignment update = canvasRestClient.copy(assignment);
+    update.setDescription(description);
+    return updateAssignments(courseId, update.getId(), update).map(Assignment::getDescription)
+        .orElse(null);
   }
 
   /**
-   * Process discussions.
+   * Saves a rewritten discussion topic message, without changing the fetched topic.
    *
-   * @param discussionTopic the discussion topic
+   * @param courseId the course id
+   * @param topic the topic as fetched
+   * @param message the rewritten message
+   * @return the message as Canvas saved it, or null if Canvas did not return it
+   * @throws IOException Signals that an I/O exception has occurred.
    */
-  private void processDiscussions(List<DiscussionTopic> discussionTopic) {
-    logger.info("Total discussons topics: : {}", discussionTopic.size());
+  private String saveDiscussionMessage(String courseId, DiscussionTopic topic, String message)
+      throws IOException {
+    if (minimalPayload) {
+      return canvasContentWriter.updateDiscussionMessage(courseId, topic.getId(), message);
+    }
+    DiscussionTopic update = canvasRestClient.copy(topic);
+    update.setMessage(message);
+    return updateDiscussionTopic(courseId, update).map(DiscussionTopic::getMessage).orElse(null);
   }
 
   /**
-   * Update course page.
+   * Update course page. Sends only the body unless minimal payloads are disabled, in which case
+   * the whole page object goes through the canvas-lms-api writer.
    *
    * @param page the page
    * @param courseId the course id
@@ -382,13 +818,18 @@ public class SearchTextServiceImpl implements ISearchTextService {
    * @throws IOException Signals that an I/O exception has occurred.
    */
   public Optional<Page> updateCoursePage(Page page, String courseId) throws IOException {
+    if (minimalPayload) {
+      canvasContentWriter.updatePageBody(courseId, page.getUrl(), page.getBody());
+      return Optional.of(page);
+    }
+    canvasContentWriter.recordFullPayload(page);
     PageWriter pageWriter =
         tokenHelper.getApiFactory().getWriter(PageWriter.class, tokenHelper.getToken());
-    return pageWriter.updateCoursePage(page, courseId);
+    return canvasRateLimiter.execute(() -> pageWriter.updateCoursePage(page, courseId));
   }
 
   /**
-   * Update assignments.
+   * Update assignments. Sends only the description unless minimal payloads are disabled.
    *
    * @param courseId the course id
    * @param assignment the assignment
@@ -397,13 +838,20 @@ public class SearchTextServiceImpl implements ISearchTextService {
    */
   public Optional<Assignment> updateAssignments(String courseId, Integer assignmentId,
       Assignment assignment) throws IOException {
+    if (minimalPayload) {
+      canvasContentWriter.updateAssignmentDescription(courseId, assignmentId,
+          assignment.getDescription());
+      return Optional.of(assignment);
+    }
+    canvasContentWriter.recordFullPayload(assignment);
     AssignmentWriter assignmentWriter =
         tokenHelper.getApiFactory().getWriter(AssignmentWriter.class, tokenHelper.getToken());
-    return assignmentWriter.editAssignment(courseId, assignmentId, assignment);
+    return canvasRateLimiter
+        .execute(() -> assignmentWriter.editAssignment(courseId, assignmentId, assignment));
   }
 
   /**
-   * Update discussion topic.
+   * Update discussion topic. Sends only the message unless minimal payloads are disabled.
    *
    * @param courseId the course id
    * @param topic the topic
@@ -412,13 +860,20 @@ public class SearchTextServiceImpl implements ISearchTextService {
    */
   public Optional<DiscussionTopic> updateDiscussionTopic(String courseId, DiscussionTopic topic)
       throws IOException {
+    if (minimalPayload) {
+      canvasContentWriter.updateDiscussionMessage(courseId, topic.getId(), topic.getMessage());
+      return Optional.of(topic);
+    }
+    canvasContentWriter.recordFullPayload(topic);
     DiscussionTopicWriter topicWriter =
         tokenHelper.getApiFactory().getWriter(DiscussionTopicWriter.class, tokenHelper.getToken());
-    return topicWriter.updateDiscussionTopic(topic, courseId);
+    return canvasRateLimiter.execute(() -> topicWriter.updateDiscussionTopic(topic, courseId));
   }
 
   /**
-   * Gets the matching pages.
+   * Gets the matching pages. Courses are scanned concurrently on the course scan executor; the
+   * results keep the order of the requested course ids and a course that fails is reported on its
+   * own without discarding the others.
    *
    * @param searchReplaceDto the search replace dto
    * @return the matching pages
@@ -427,48 +882,121 @@ public class SearchTextServiceImpl implements ISearchTextService {
   @Override
   public List<CoursePageInfo> getMatchingPages(SearchReplaceDto searchReplaceDto)
       throws IOException {
-    // Initialize the list to store matching pages
-    List<CoursePageInfo> coursePageInfoList = new ArrayList<>();
-
     // Extract the course IDs and the text to be replaced
     List<String> courseIds = searchReplaceDto.getCourseIds();
-    String sourceText = searchReplaceDto.getSourceText();
-    String textToBeReplaced = searchReplaceDto.getTextToBeReplace();
+    String sourceText = describeSourceText(searchReplaceDto);
+
+    // Look for the replacement texts, skipping rules that delete their text. In regex mode the
+    // replacement is a template: it is looked up as literal text, and templates that refer to
+    // groups are skipped since they have no fixed text
+    List<ReplaceRule> findRules = new ArrayList<>();
+    for (ReplaceRule rule : getRules(searchReplaceDto)) {
+      String text = rule.getTextToBeReplace();
+      if (searchReplaceDto.isRegex() && text != null) {
+        text = text.indexOf('$') < 0 ? text.replaceAll("\\\\(.)", "$1") : null;
+      }
+      if (!StringUtils.isEmpty(text)) {
+        findRules.add(ReplaceRule.builder().sourceText(text).build());
+      }
+    }
+
+    // Validate input to avoid processing on null or empty text
+    if (findRules.isEmpty()) {
+      return Collections.emptyList();
+    }
+    TermMatcher termMatcher = matchEngine.compile(findRules,
+        MatchOptions.builder().ignoreCase(searchReplaceDto.isIgnoreCase())
+            .ignoreAccents(searchReplaceDto.isIgnoreAccents()).build());
 
-    // Iterate through each course ID and find matching text
+    // Submit one scan per course ID, keeping the futures in request order
+    List<CompletableFuture<CoursePageInfo>> courseScans = new ArrayList<>();
     for (String courseId : courseIds) {
-      findText(courseId, sourceText, textToBeReplaced, coursePageInfoList);
+      courseScans.add(scanCourseAsync(courseId, sourceText, termMatcher));
+    }
+
+    // Collect the courses with matches, in the order they were requested
+    List<CoursePageInfo> coursePageInfoList = new ArrayList<>();
+    for (CompletableFuture<CoursePageInfo> courseScan : courseScans) {
+      CoursePageInfo coursePageInfo = courseScan.join();
+      if (coursePageInfo != null) {
+        coursePageInfoList.add(coursePageInfo);
+      }
     }
 
     // Return the list of matching pages
     return coursePageInfoList;
   }
 
+  /**
+   * Gets the report of a recent search and replace.
+   *
+   * @param resultId the result id
+   * @return the report, empty if unknown or expired
+   */
+  @Override
+  public Optional<List<CoursePageInfo>> getReplaceResult(String resultId) {
+    return replaceResultStore.get(resultId);
+  }
+
+  /**
+   * Scan course async.
+   *
+   * @param courseId the course id
+   * @param sourceText the source text
+   * @param termMatcher the compiled text to find
+   * @return the future course page info, completing with null when nothing matched
+   */
+  private CompletableFuture<CoursePageInfo> scanCourseAsync(String courseId, String sourceText,
+      TermMatcher termMatcher) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return hostConcurrencyLimiter.execute(baseUrl,
+            () -> findText(courseId, sourceText, termMatcher));
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, courseScanExecutor).exceptionally(ex -> {
+      Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause()
+          : ex;
+      logger.error("Error while scanning course {}", courseId, cause);
+      return CoursePageInfo.builder().courseId(courseId).sourceText(sourceText)
+          .courseName(StringUtils.EMPTY).pageInfoList(Collections.emptyList())
+          .errorMessage(cause.getMessage()).build();
+    });
+  }
+
 
   /**
    * Find text.
    *
    * @param courseId the course id
    * @param sourceText the source text
-   * @param textToBeReplaced text to be replaced
-   * @param coursePageInfoList the course page info list
+   * @param termMatcher the compiled text to find
+   * @return the course page info, or null if nothing in the course matched
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  private void findText(String courseId, String sourceText, String textToBeReplaced,
-      List<CoursePageInfo> coursePageInfoList) throws IOException {
-
-    // Fetch pages, assignments, and discussion topics in the course
-    List<Page> pages = listPagesInCourse(courseId);
-    List<Assignment> assignments = listCourseAssignments(courseId);
-    List<DiscussionTopic> discussionTopics = getCourseAllDiscussionTopics(courseId);
-    Optional<Course> course = getSingleCourse(courseId);
+  private CoursePageInfo findText(String courseId, String sourceText, TermMatcher termMatcher)
+      throws IOException {
 
-    // Find pages and assignments containing the text, handling potential nulls
-    List<PageInfo> pageInfoList = findPagesWithText(pages, textToBeReplaced);
-    List<PageInfo> assignmentPageInfoList =
-        findAssignmentsWithText(courseId, assignments, textToBeReplaced);
-    List<PageInfo> discussionPageInfoList =
-        findDiscussionTopicsWithText(courseId, discussionTopics, textToBeReplaced);
+    // Scan pages, assignments and discussion topics and fetch the course concurrently
+    List<PageInfo> pageInfoList;
+    List<PageInfo> assignmentPageInfoList;
+    List<PageInfo> discussionPageInfoList;
+    Optional<Course> course;
+    try (FetchScope scope = new FetchScope(canvasFetchExecutor.getThreadPoolExecutor())) {
+      Subtask<List<PageInfo>> pageTask = scope.fork(() -> scanPages(courseId, termMatcher));
+      Subtask<List<PageInfo>> assignmentTask =
+          scope.fork(() -> scanAssignments(courseId, termMatcher));
+      Subtask<List<PageInfo>> topicTask =
+          scope.fork(() -> scanDiscussionTopics(courseId, termMatcher));
+      Subtask<Optional<Course>> courseTask =
+          scope.fork(() -> courseContentService.getSingleCourse(courseId));
+      scope.join();
+      pageInfoList = pageTask.get();
+      assignmentPageInfoList = assignmentTask.get();
+      discussionPageInfoList = topicTask.get();
+      course = courseTask.get();
+    }
 
     // Ensure pageInfoList is not null and create a mutable list
     List<PageInfo> combinedPageInfoList =
@@ -485,13 +1013,98 @@ public class SearchTextServiceImpl implements ISearchTextService {
     }
 
     // Build CoursePageInfo object only if there are matching pages or assignments
-    if (!combinedPageInfoList.isEmpty()) {
-      CoursePageInfo coursePageInfo =
-          CoursePageInfo.builder().courseId(courseId).sourceText(sourceText)
-              .courseName(course.isPresent() ? course.get().getName() : StringUtils.EMPTY)
-              .pageInfoList(combinedPageInfoList).build();
-      coursePageInfoList.add(coursePageInfo);
+    if (combinedPageInfoList.isEmpty()) {
+      return null;
+    }
+    return CoursePageInfo.builder().courseId(courseId).sourceText(sourceText)
+        .courseName(course.isPresent() ? course.get().getName() : StringUtils.EMPTY)
+        .pageInfoList(combinedPageInfoList).build();
+  }
+
+  /**
+   * Scan pages. In streaming mode each pagination batch is matched as soon as it arrives and then
+   * dropped, so only one batch of page bodies is held at a time. When a previous scan of the same
+   * course and text is retained, pages are requested newest first and paging stops at the first
+   * page not updated since that scan; the retained matches cover the rest, less those of pages
+   * missing from a listing of the page urls without bodies.
+   *
+   * @param courseId the course id
+   * @param termMatcher the compiled text to find
+   * @return the matching pages
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private List<PageInfo> scanPages(String courseId, TermMatcher termMatcher) throws IOException {
+    DeltaScan deltaScan = deltaScanStore.begin(courseId, PAGE, termMatcher.getKey());
+    AtomicBoolean stoppedEarly = new AtomicBoolean();
+    Predicate<List<Page>> batchHandler = batch -> {
+      List<Page> changed = deltaScan.changedItems(batch, Page::getUpdatedAt, Page::getHtmlUrl);
+      deltaScan.addMatches(findPagesWithText(changed, termMatcher));
+      stoppedEarly.set(changed.size() < batch.size());
+      return !stoppedEarly.get();
+    };
+    if (!streamingScan) {
+      batchHandler.test(courseContentService.listPagesInCourse(courseId));
+      stoppedEarly.set(false);
+    } else if (deltaScan.isIncremental()) {
+      courseContentService.forEachPageBatchNewestFirst(courseId, batchHandler);
+    } else {
+      courseContentService.forEachPageBatch(courseId, batchHandler);
+    }
+    if (stoppedEarly.get()) {
+      deltaScan.markListed(courseContentService.listPageUrls(courseId));
     }
+    deltaScan.dropUnlisted();
+    return deltaScan.complete();
+  }
+
+  /**
+   * Scan assignments, batch by batch in streaming mode. Canvas cannot sort assignments by
+   * updated_at, so the full list is read but only assignments changed since the previous scan are
+   * matched again, and the retained matches of assignments no longer listed are dropped.
+   *
+   * @param courseId the course id
+   * @param termMatcher the compiled text to find
+   * @return the matching assignments
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private List<PageInfo> scanAssignments(String courseId, TermMatcher termMatcher)
+      throws IOException {
+    DeltaScan deltaScan = deltaScanStore.begin(courseId, ASSIGNMENT, termMatcher.getKey());
+    Predicate<List<Assignment>> batchHandler = batch -> {
+      List<Assignment> changed = deltaScan.changedItems(batch, Assignment::getUpdatedAt,
+          assignment -> assignmentUrl(courseId, assignment));
+      deltaScan.addMatches(findAssignmentsWithText(courseId, changed, termMatcher));
+      return true;
+    };
+    if (!streamingScan) {
+      batchHandler.test(courseContentService.listCourseAssignments(courseId));
+    } else {
+      courseContentService.forEachAssignmentBatch(courseId, batchHandler);
+    }
+    deltaScan.dropUnlisted();
+    return deltaScan.complete();
+  }
+
+  /**
+   * Scan discussion topics, batch by batch in streaming mode.
+   *
+   * @param courseId the course id
+   * @param termMatcher the compiled text to find
+   * @return the matching discussion topics
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private List<PageInfo> scanDiscussionTopics(String courseId, TermMatcher termMatcher)
+      throws IOException {
+    if (!streamingScan) {
+      return findDiscussionTopicsWithText(courseId,
+          courseContentService.getCourseAllDiscussionTopics(courseId), termMatcher);
+    }
+    List<PageInfo> matches = new ArrayList<>();
+    courseContentService.forEachDiscussionTopicBatch(courseId, batch -> {
+      matches.addAll(findDiscussionTopicsWithText(courseId, batch, termMatcher));
+      return true;
+    });
+    return matches;
   }
 
   /**
@@ -509,61 +1122,80 @@ public class SearchTextServiceImpl implements ISearchTextService {
    * Find pages with text.
    *
    * @param pages the pages
-   * @param textToFind the text to find
+   * @param termMatcher the compiled text to find
    * @return the list
    */
   // Method to return a list of PageInfo with occurrence count for each page
-  public List<PageInfo> findPagesWithText(List<Page> pages, String textToBeReplaced) {
-
-    // Validate input to avoid processing on null or empty text
-    if (textToBeReplaced == null || textToBeReplaced.isEmpty()) {
-      return Collections.emptyList();
+  public List<PageInfo> findPagesWithText(List<Page> pages, TermMatcher termMatcher) {
+
+    // Match each published page body once, keeping the pages where the text was found; pages
+    // the trigram prefilter rules out are not scanned at all
+    List<PageInfo> pageInfoList = new ArrayList<>();
+    for (Page page : pages) {
+      if (page.getPublished()
+          && trigramPrefilter.mayMatch(page.getHtmlUrl(), page.getBody(), page.getUpdatedAt(),
+              termMatcher)) {
+        MatchResult match = termMatcher.find(page.getBody());
+        if (match.isFound()) {
+          pageInfoList.add(PageInfo.builder().pageTitle(page.getTitle())
+              .redirectUrl(page.getHtmlUrl()).occurences(match.getCount())
+              .ruleOccurences(getRuleOccurences(termMatcher, match)).build());
+        }
+      }
     }
-
-    // Escape special characters in textToFind for safe usage in regex
-    String regex = "\\b" + Pattern.quote(textToBeReplaced) + "\\b";
-
-    // Use Stream API to filter pages that contain the search text in the body
-    return pages.stream()
-        .filter(page -> page.getPublished() && containsExactText(page.getBody(), regex))
-        .map(page -> {
-          // Count occurrences of the search text
-          Integer occurrences = countOccurrences(page.getBody(), regex);
-          return PageInfo.builder().pageTitle(page.getTitle()).redirectUrl(page.getHtmlUrl())
-              .occurences(occurrences).build();
-        }).toList();
+    return pageInfoList;
   }
 
   /**
    * Find assignments with text.
    *
    * @param assignments the assignments
-   * @param textToFind the text to find
+   * @param termMatcher the compiled text to find
    * @return the list
    */
   // Method to find assignments containing the specific text
   public List<PageInfo> findAssignmentsWithText(String courseId, List<Assignment> assignments,
-      String textToBeReplaced) {
-
-    // Validate input to avoid processing on null or empty text
-    if (textToBeReplaced == null || textToBeReplaced.isEmpty()) {
-      return Collections.emptyList();
+      TermMatcher termMatcher) {
+
+    // Match each published assignment description once
+    List<PageInfo> pageInfoList = new ArrayList<>();
+    for (Assignment assignment : assignments) {
+      String redirectUrl = assignmentUrl(courseId, assignment);
+      if (assignment.isPublished()
+          && trigramPrefilter.mayMatch(assignment.getHtmlUrl(), assignment.getDescription(),
+              assignment.getUpdatedAt(), termMatcher)) {
+        MatchResult match = termMatcher.find(assignment.getDescription());
+        if (match.isFound()) {
+          pageInfoList.add(PageInfo.builder().pageTitle(assignment.getName())
+              .redirectUrl(redirectUrl).occurences(match.getCount())
+              .ruleOccurences(getRuleOccurences(termMatcher, match)).build());
+        }
+      }
     }
+    return pageInfoList;
+  }
 
+  /**
+   * Assignment url.
+   *
+   * @param courseId the course id
+   * @param assignment the assignment
+   * @return the assignment url
+   */
+  private String assignmentUrl(String courseId, Assignment assignment) {
+    return String.format("%s/courses/%s/assignments/%s", baseUrl, courseId, assignment.getId());
+  }
 
-    // Escape special characters in textToFind for safe usage in regex
-    String regex = "\\b" + Pattern.quote(textToBeReplaced) + "\\b";
-
-    // Use Stream API to filter assignments that contain the search text in the body
-    return assignments.stream().filter(assignment -> assignment.isPublished()
-        && containsExactText(assignment.getDescription(), regex)).map(assignment -> {
-          // Count occurrences of the search text
-          Integer occurrences = countOccurrences(assignment.getDescription(), regex);
-          String redirectUrl =
-              String.format("%s/courses/%s/assignments/%s", baseUrl, courseId, assignment.getId());
-          return PageInfo.builder().pageTitle(assignment.getName()).redirectUrl(redirectUrl)
-              .occurences(occurrences).build();
-        }).toList();
+  /**
+   * Discussion topic url.
+   *
+   * @param courseId the course id
+   * @param discussionTopic the discussion topic
+   * @return the discussion topic url
+   */
+  private String discussionTopicUrl(String courseId, DiscussionTopic discussionTopic) {
+    return String.format("%s/courses/%s/discussion_topics/%s", baseUrl, courseId,
+        discussionTopic.getId());
   }
 
   /**
@@ -572,51 +1204,30 @@ public class SearchTextServiceImpl implements ISearchTextService {
    * @param courseId
    *
    * @param discussionTopics the discussion topics
-   * @param textToBeReplaced the text to replace
+   * @param termMatcher the compiled text to find
    * @return the list
    */
   // Method to find discussionTopics containing the specific text
   public List<PageInfo> findDiscussionTopicsWithText(String courseId,
-      List<DiscussionTopic> discussionTopics, String textToBeReplaced) {
-
-    // Validate input to avoid processing on null or empty text
-    if (textToBeReplaced == null || textToBeReplaced.isEmpty()) {
-      return Collections.emptyList();
-    }
-
-    // Escape special characters in textToFind for safe usage in regex
-    String regex = "\\b" + Pattern.quote(textToBeReplaced) + "\\b";
-
-    // Use Stream API to filter discussionTopics that contain the exact search text in the body
-    return discussionTopics.stream().filter(discussionTopic -> discussionTopic.isPublished()
-        && containsExactText(discussionTopic.getMessage(), regex)).map(discussionTopic -> {
-          // Count occurrences of the exact search text
-          Integer occurrences = countOccurrences(discussionTopic.getMessage(), regex);
-          String redirectUrl = String.format("%s/courses/%s/discussion_topics/%s", baseUrl,
-              courseId, discussionTopic.getId());
+      List<DiscussionTopic> discussionTopics, TermMatcher termMatcher) {
+
+    // Match each published discussion topic message once
+    List<PageInfo> pageInfoList = new ArrayList<>();
+    for (DiscussionTopic discussionTopic : discussionTopics) {
+      String redirectUrl = discussionTopicUrl(courseId, discussionTopic);
+      if (discussionTopic.isPublished()
+          && trigramPrefilter.mayMatch(discussionTopic.getHtmlUrl(),
+              discussionTopic.getMessage(), null, termMatcher)) {
+        MatchResult match = termMatcher.find(discussionTopic.getMessage());
+        if (match.isFound()) {
           // Map to PageInfo with the title and occurrences
-          return PageInfo.builder().pageTitle(discussionTopic.getTitle()).redirectUrl(redirectUrl)
-              .occurences(occurrences).build();
-        }).toList();
-  }
-
-  // Helper method to check for exact word match using regex
-  private boolean containsExactText(String message, String regex) {
-    Pattern pattern = Pattern.compile(regex);
-    Matcher matcher = pattern.matcher(message);
-    return matcher.find(); // Returns true if the exact text is found
-  }
-
-  // Count occurrences of exact match in the text
-  private Integer countOccurrences(String message, String regex) {
-    Pattern pattern = Pattern.compile(regex);
-    Matcher matcher = pattern.matcher(message);
-    int count = 0;
-    while (matcher.find()) {
-      count++;
+          pageInfoList.add(PageInfo.builder().pageTitle(discussionTopic.getTitle())
+              .redirectUrl(redirectUrl).occurences(match.getCount())
+              .ruleOccurences(getRuleOccurences(termMatcher, match)).build());
+        }
+      }
     }
-    return count;
+    return pageInfoList;
   }
 
-
 }
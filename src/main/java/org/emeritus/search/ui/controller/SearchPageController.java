@@ -3,6 +3,8 @@ package org.emeritus.search.ui.controller;
 import java.io.IOException;
 import java.util.List;
 import java.util.Locale;
+import java.util.Optional;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.emeritus.search.dto.CoursePageInfo;
 import org.emeritus.search.dto.SearchReplaceDto;
@@ -100,17 +102,31 @@ public class SearchPageController {
   @Operation(summary = "Get search text result", description = "Get search text result")
   @GetMapping("/ui/v1/search-result")
   public String getSearchtextResult(Model model,
-      @RequestParam(value = "courseIds", required = true) List<String> courseIds,
-      @RequestParam(value = "textToFind", required = true) String textToFind,
-      @RequestParam(value = "textToReplace", required = true) String textToReplace)
+      @RequestParam(value = "resultId", required = false) String resultId,
+      @RequestParam(value = "courseIds", required = false) List<String> courseIds,
+      @RequestParam(value = "textToFind", required = false) String textToFind,
+      @RequestParam(value = "textToReplace", required = false) String textToReplace,
+      @RequestParam(value = "ignoreCase", defaultValue = "false") boolean ignoreCase,
+      @RequestParam(value = "ignoreAccents", defaultValue = "false") boolean ignoreAccents)
       throws IOException {
     SearchPageModel pageModel = SearchPageModel.builder().build();
-    logger.info("courseIds : {} ", courseIds);
-    SearchReplaceDto searchReplaceDto = SearchReplaceDto.builder().courseIds(courseIds)
-        .sourceText(textToFind).textToBeReplace(textToReplace).build();
-    List<CoursePageInfo> matchingPages = searchTextService.getMatchingPages(searchReplaceDto);
-    logger.info("search-result matchesPages : {} ", matchingPages);
-    pageModel.setMatchingPages(matchingPages);
+    Optional<List<CoursePageInfo>> replaceResult =
+        StringUtils.isEmpty(resultId) ? Optional.empty()
+            : searchTextService.getReplaceResult(resultId);
+    if (replaceResult.isPresent()) {
+      // Render the report of the replace run instead of scanning the courses again
+      logger.info("search-result resultId : {} ", resultId);
+      pageModel.setMatchingPages(replaceResult.get());
+      pageModel.setReplaceReport(true);
+    } else if (courseIds != null && textToFind != null) {
+      logger.info("courseIds : {} ", courseIds);
+      SearchReplaceDto searchReplaceDto = SearchReplaceDto.builder().courseIds(courseIds)
+          .sourceText(textToFind).textToBeReplace(textToReplace).ignoreCase(ignoreCase)
+          .ignoreAccents(ignoreAccents).build();
+      List<CoursePageInfo> matchingPages = searchTextService.getMatchingPages(searchReplaceDto);
+      logger.info("search-result matchesPages : {} ", matchingPages);
+      pageModel.setMatchingPages(matchingPages);
+    }
     pageModel.setBrandColors(canvasService.getBrandColors());
     model.addAttribute("model", pageModel);
     model.addAttribute("baseUrl", baseUrl);
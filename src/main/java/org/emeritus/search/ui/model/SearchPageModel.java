@@ -22,6 +22,9 @@ public class SearchPageModel {
   /** The matching pages. */
   private List<CoursePageInfo> matchingPages;
 
+  /** Whether the matching pages are the report of a replace run. */
+  private boolean replaceReport;
+
   /** The brand colors. */
   private Map<String, Object> brandColors;
 
@@ -26,7 +26,7 @@
             }
         };
  
-    function findAndReplace(courseIds, textToFind, replaceWith) {
+    function findAndReplace(courseIds, textToFind, replaceWith, ignoreCase, ignoreAccents) {
         // Show the horizontal loader before making the request
         document.getElementById('horizontal-loader').style.display = 'block';
 
@@ -40,13 +40,17 @@
             data: JSON.stringify({
                 "courseIds": courseIdList,
                 "sourceText": textToFind,
-                "textToBeReplace": replaceWith
+                "textToBeReplace": replaceWith,
+                "ignoreCase": !!ignoreCase,
+                "ignoreAccents": !!ignoreAccents
             }),
             success: function(data) {
                 // Hide the loader when request is successful
                 document.getElementById('horizontal-loader').style.display = 'none';
                 console.log('Text replaced successfully!');
-                populateResult(courseIds, textToFind, replaceWith);
+                let resultId = data && data.data ? data.data.resultId : null;
+                populateResult(resultId, courseIds, textToFind, replaceWith, ignoreCase,
+                    ignoreAccents);
             },
             error: function(jqXHR, textStatus, errorThrown) {
                 // Hide the loader when an error occurs
@@ -56,9 +60,16 @@
         });
     }
 
-// Function to populate result or redirect to another page with parameters
-function populateResult(courseIds, textToFind, replaceWith) {
+// Function to populate result or redirect to another page with parameters.
+// The replace report is rendered by its result id, so the courses are not scanned again.
+function populateResult(resultId, courseIds, textToFind, replaceWith, ignoreCase, ignoreAccents) {
+  if (resultId) {
+    window.location.href = appContext + 'ui/v1/search-result?resultId=' +
+      encodeURIComponent(resultId);
+    return;
+  }
   window.location.href = appContext + 'ui/v1/search-result?courseIds=' + courseIds +
-    '&textToFind=' + textToFind + '&textToReplace=' + replaceWith;
+    '&textToFind=' + textToFind + '&textToReplace=' + replaceWith +
+    '&ignoreCase=' + !!ignoreCase + '&ignoreAccents=' + !!ignoreAccents;
 }
 
@@ -0,0 +1,34 @@
+package org.emeritus.search.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.DefaultRoutePlanner;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The Class CanvasHttpClientConfigurationTest.
+ */
+class CanvasHttpClientConfigurationTest {
+
+  /**
+   * The configured canvas route is the one HttpClient plans for a request to the base url, so the
+   * per route limit is applied to it.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void canvasRouteMatchesPlannedRoute() throws Exception {
+    for (String baseUrl : new String[] {"https://classroom.emeritus.org",
+        "https://canvas-test.emeritus.org:8443", "http://localhost"}) {
+      CanvasHttpClientConfiguration configuration = new CanvasHttpClientConfiguration();
+      ReflectionTestUtils.setField(configuration, "baseUrl", baseUrl);
+      HttpRoute planned = new DefaultRoutePlanner(null).determineRoute(HttpHost.create(baseUrl),
+          new HttpGet(baseUrl + "/api/v1/courses"), HttpClientContext.create());
+      assertEquals(planned, configuration.canvasRoute(), baseUrl);
+    }
+  }
+}
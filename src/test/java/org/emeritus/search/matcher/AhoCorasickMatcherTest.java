@@ -0,0 +1,129 @@
+package org.emeritus.search.matcher;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class AhoCorasickMatcherTest. Checks the multi rule matcher against running a
+ * LiteralWordMatcher per rule, one after the other. Each rule draws its term from its own
+ * letters, so occurrences of different rules never overlap and the two ways must agree.
+ */
+class AhoCorasickMatcherTest {
+
+  /** The letters of the term of each rule, with cased and accented forms. */
+  private static final String[] RULE_LETTERS = {"abAB", "cdçC", "efé"};
+
+  /** The chars bodies are drawn from, beyond the rule letters. */
+  private static final String SEPARATORS = "  _-.ÉÇ";
+
+  /** The number of random cases per folding. */
+  private static final int CASES = 2000;
+
+  /**
+   * Without folding.
+   */
+  @Test
+  void matchesSingleRuleRunsWithoutFolding() {
+    checkRandom(CharFolding.NONE, 11);
+  }
+
+  /**
+   * Ignoring case and accents.
+   */
+  @Test
+  void matchesSingleRuleRunsWithFolding() {
+    checkRandom(CharFolding.of(true, false), 12);
+    checkRandom(CharFolding.of(false, true), 13);
+    checkRandom(CharFolding.of(true, true), 14);
+  }
+
+  /**
+   * Word boundaries are taken from the folded terms, like the single term matcher does.
+   */
+  @Test
+  void appliesWordBoundariesOfFoldedTerms() {
+    CharFolding folding = CharFolding.of(true, true);
+    AhoCorasickMatcher matcher =
+        new AhoCorasickMatcher(List.of("Ça", "C++"), List.of("x", "y"), folding);
+    MatchResult result = matcher.replace("ça xça c++ C++z");
+
+    assertArrayEquals(new int[] {0, 7, 11}, result.getOffsets());
+    assertEquals(1, result.getPartialCount());
+    assertEquals("x xça y yz", result.getRewritten());
+  }
+
+  /**
+   * A term found inside other words is not counted as partial where it overlaps a whole word
+   * match, the same as with the single term matcher.
+   */
+  @Test
+  void countsPartialsOverlappingMatchesLikeSingleTerm() {
+    for (String body : new String[] {"xa-a-a", "a-a-ax", "xa-a-a-a", "ca-a a-a"}) {
+      MatchResult single = new LiteralWordMatcher("a-a", "b", CharFolding.NONE).replace(body);
+      MatchResult multi =
+          new AhoCorasickMatcher(List.of("a-a"), List.of("b"), CharFolding.NONE).replace(body);
+
+      assertEquals(single.getPartialCount(), multi.getPartialCount(), body);
+      assertEquals(single.getRewritten(), multi.getRewritten(), body);
+    }
+    assertEquals(0, new AhoCorasickMatcher(List.of("a-a"), List.of("b"), CharFolding.NONE)
+        .replace("xa-a-a").getPartialCount());
+  }
+
+  /**
+   * Compares the matcher with single rule runs on random bodies.
+   *
+   * @param folding the folding
+   * @param seed the seed
+   */
+  private static void checkRandom(CharFolding folding, long seed) {
+    Random random = new Random(seed);
+    String alphabet = String.join("", RULE_LETTERS) + SEPARATORS;
+    for (int i = 0; i < CASES; i++) {
+      int rules = 1 + random.nextInt(RULE_LETTERS.length);
+      List<String> terms = new ArrayList<>();
+      List<String> replacements = new ArrayList<>();
+      for (int r = 0; r < rules; r++) {
+        terms.add(randomText(random, RULE_LETTERS[r], 1 + random.nextInt(3)));
+        replacements.add("<" + r + ">");
+      }
+      String body = randomText(random, alphabet, random.nextInt(80));
+      String message = "terms " + terms + " in '" + body + "'";
+
+      MatchResult multi = new AhoCorasickMatcher(terms, replacements, folding).replace(body);
+      String rewritten = body;
+      int partialCount = 0;
+      int[] ruleCounts = new int[rules];
+      for (int r = 0; r < rules; r++) {
+        MatchResult single =
+            new LiteralWordMatcher(terms.get(r), replacements.get(r), folding).replace(rewritten);
+        rewritten = single.getRewritten();
+        partialCount += single.getPartialCount();
+        ruleCounts[r] = single.getCount();
+      }
+      assertEquals(rewritten, multi.getRewritten(), message);
+      assertArrayEquals(ruleCounts, multi.getRuleCounts(), message);
+      assertEquals(partialCount, multi.getPartialCount(), message);
+    }
+  }
+
+  /**
+   * Random text over the chars.
+   *
+   * @param random the random
+   * @param chars the chars
+   * @param length the length
+   * @return the text
+   */
+  private static String randomText(Random random, String chars, int length) {
+    StringBuilder text = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      text.append(chars.charAt(random.nextInt(chars.length())));
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,126 @@
+package org.emeritus.search.matcher;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class ChunkedMatcherTest. Chunked matching must give exactly the result of one pass over
+ * the body, for matches that start or end exactly at a chunk edge, straddle one, or overlap each
+ * other in the region two chunks both read.
+ */
+class ChunkedMatcherTest {
+
+  /** The chunk size. */
+  private static final int CHUNK = 16;
+
+  /** A chunked scan that splits every body into chunks of the chunk size. */
+  private static final ChunkedScan SPLIT = new ChunkedScan(ForkJoinPool.commonPool(), 1, CHUNK);
+
+  /**
+   * Single term matches at, across and right after a chunk edge.
+   */
+  @Test
+  void literalMatchesAtChunkEdges() {
+    ChunkableMatcher literal = new LiteralWordMatcher("cat", "dog", CharFolding.NONE);
+    for (int start = CHUNK - 4; start <= CHUNK + 1; start++) {
+      String body = " ".repeat(start) + "cat" + " ".repeat(2 * CHUNK);
+      MatchResult chunked = new ChunkedMatcher(literal, SPLIT).replace(body);
+
+      assertArrayEquals(new int[] {start}, chunked.getOffsets(), "start " + start);
+      assertEquals(body.replace("cat", "dog"), chunked.getRewritten());
+    }
+    // Matches back to back across several chunk edges
+    assertMatchesOnePass(literal, "x".repeat(CHUNK - 3) + " cat" + "cat cat ".repeat(8));
+  }
+
+  /**
+   * Overlapping occurrences in the region read by two chunks are reported once and resolved as
+   * in one pass, for a term that overlaps itself.
+   */
+  @Test
+  void literalDeduplicatesOverlap() {
+    ChunkableMatcher literal = new LiteralWordMatcher("aa", "b", CharFolding.NONE);
+    for (int length = CHUNK - 2; length <= 3 * CHUNK + 2; length++) {
+      assertMatchesOnePass(literal, "a".repeat(length));
+      assertMatchesOnePass(literal, "a a".repeat(length));
+    }
+    ChunkableMatcher nonWord = new LiteralWordMatcher("--", "+", CharFolding.NONE);
+    assertMatchesOnePass(nonWord, "-".repeat(3 * CHUNK + 1));
+  }
+
+  /**
+   * Multi rule matches at and across chunk edges, where an earlier rule and a longer term compete
+   * for the same start.
+   */
+  @Test
+  void ahoCorasickMatchesAtChunkEdges() {
+    ChunkableMatcher multi = new AhoCorasickMatcher(List.of("cat", "cat food", "food"),
+        List.of("x", "y", "z"), CharFolding.of(true, false));
+    for (int start = CHUNK - 9; start <= CHUNK + 1; start++) {
+      String body = " ".repeat(start) + "Cat food" + " ".repeat(2 * CHUNK) + "food";
+      assertMatchesOnePass(multi, body);
+    }
+    ChunkableMatcher overlapping = new AhoCorasickMatcher(List.of("aa", "aaa", "a a"),
+        List.of("1", "2", "3"), CharFolding.NONE);
+    for (int length = CHUNK - 2; length <= 3 * CHUNK + 2; length++) {
+      assertMatchesOnePass(overlapping, "a".repeat(length));
+      assertMatchesOnePass(overlapping, "a a".repeat(length));
+    }
+  }
+
+  /**
+   * Random bodies over a small alphabet, so terms occur often and overlap, chunked at sizes down
+   * to a single char.
+   */
+  @Test
+  void matchesOnePassOnRandomBodies() {
+    Random random = new Random(19);
+    ChunkableMatcher[] matchers = {new LiteralWordMatcher("ab a", "x", CharFolding.NONE),
+        new AhoCorasickMatcher(List.of("ab", "ba", "aba", "b b"), List.of("1", "2", "3", "4"),
+            CharFolding.of(true, true))};
+    for (int i = 0; i < 500; i++) {
+      StringBuilder body = new StringBuilder();
+      for (int c = random.nextInt(200); c > 0; c--) {
+        body.append("abAB _".charAt(random.nextInt(6)));
+      }
+      ChunkedScan chunkedScan =
+          new ChunkedScan(ForkJoinPool.commonPool(), 1, 1 + random.nextInt(CHUNK));
+      for (ChunkableMatcher matcher : matchers) {
+        assertMatchesOnePass(matcher, body.toString(), chunkedScan);
+      }
+    }
+  }
+
+  /**
+   * Asserts chunked matching gives the delegate's single pass result.
+   *
+   * @param delegate the delegate
+   * @param body the body
+   */
+  private static void assertMatchesOnePass(ChunkableMatcher delegate, String body) {
+    assertMatchesOnePass(delegate, body, SPLIT);
+  }
+
+  /**
+   * Asserts chunked matching gives the delegate's single pass result.
+   *
+   * @param delegate the delegate
+   * @param body the body
+   * @param chunkedScan the chunked scan
+   */
+  private static void assertMatchesOnePass(ChunkableMatcher delegate, String body,
+      ChunkedScan chunkedScan) {
+    MatchResult expected = delegate.replace(body);
+    MatchResult chunked = new ChunkedMatcher(delegate, chunkedScan).replace(body);
+    String message = "'" + body + "' in chunks of " + chunkedScan.getChunkSize();
+    assertArrayEquals(expected.getOffsets(), chunked.getOffsets(), message);
+    assertArrayEquals(expected.getEndOffsets(), chunked.getEndOffsets(), message);
+    assertArrayEquals(expected.getRuleCounts(), chunked.getRuleCounts(), message);
+    assertEquals(expected.getPartialCount(), chunked.getPartialCount(), message);
+    assertEquals(expected.getRewritten(), chunked.getRewritten(), message);
+  }
+}
@@ -0,0 +1,129 @@
+package org.emeritus.search.matcher;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.emeritus.search.exception.RegexBudgetExceededException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class HtmlTextMatcherTest.
+ */
+class HtmlTextMatcherTest {
+
+  /** The attribute allowlist. */
+  private static final Set<String> ALLOWLIST = Set.of("alt", "title");
+
+  /** A chunked scan that never splits. */
+  private static final ChunkedScan WHOLE =
+      new ChunkedScan(ForkJoinPool.commonPool(), Integer.MAX_VALUE, 1024);
+
+  /** A chunked scan that splits every body into small chunks. */
+  private static final ChunkedScan SPLIT = new ChunkedScan(ForkJoinPool.commonPool(), 1, 4);
+
+  /** The html every test rewrites. */
+  private static final String HTML = "<p title=\"cat\">cat<br><b>cat</b> cats <!-- cat --></p>"
+      + "<script>cat</script><img alt=cat src=cat.png>&amp;cat;x";
+
+  /**
+   * Only text and allowlisted attributes are rewritten, each range matched in place with the
+   * elements around it as word boundaries.
+   */
+  @Test
+  void replacesLiteralTermInTextOnly() {
+    for (ChunkedScan chunkedScan : new ChunkedScan[] {WHOLE, SPLIT}) {
+      LiteralWordMatcher literal =
+          new LiteralWordMatcher("cat", "dog", CharFolding.of(true, false));
+      HtmlTextMatcher matcher = new HtmlTextMatcher(new ChunkedMatcher(literal, chunkedScan),
+          ALLOWLIST, chunkedScan);
+      MatchResult result = matcher.replace(HTML);
+
+      assertEquals("<p title=\"dog\">dog<br><b>dog</b> cats <!-- cat --></p>"
+          + "<script>cat</script><img alt=dog src=cat.png>&amp;dog;x", result.getRewritten());
+      assertEquals(5, result.getCount());
+      assertEquals(1, result.getPartialCount());
+    }
+  }
+
+  /**
+   * A term is not matched across a tag.
+   */
+  @Test
+  void doesNotMatchAcrossTags() {
+    HtmlTextMatcher matcher = new HtmlTextMatcher(new ChunkedMatcher(
+        new AhoCorasickMatcher(List.of("big cat", "cat"), List.of("x", "y"), CharFolding.NONE),
+        WHOLE), ALLOWLIST, WHOLE);
+
+    assertEquals("big <i>y</i> and x",
+        matcher.replace("big <i>cat</i> and big cat").getRewritten());
+  }
+
+  /**
+   * A term running into a word across an inline tag is only partial, on both scan paths and
+   * engines; a block-level or void element ends the word.
+   */
+  @Test
+  void doesNotMatchIntoWordAcrossInlineTags() {
+    for (ChunkedScan chunkedScan : new ChunkedScan[] {WHOLE, SPLIT}) {
+      RangeMatcher[] delegates = {
+          new ChunkedMatcher(new LiteralWordMatcher("foo", "x", CharFolding.NONE), chunkedScan),
+          new ChunkedMatcher(new AhoCorasickMatcher(List.of("foo", "bar"), List.of("x", "y"),
+              CharFolding.NONE), chunkedScan),
+          RegexMatcher.linear("\\b(foo|bar)\\b", false, "x")};
+      // The first foo and bar are joined, as is the foo before the s
+      int[] partials = {2, 3, 3};
+      for (int d = 0; d < delegates.length; d++) {
+        RangeMatcher delegate = delegates[d];
+        HtmlTextMatcher matcher = new HtmlTextMatcher(delegate, ALLOWLIST, chunkedScan);
+        MatchResult result = matcher.replace("foo<b>bar</b> <em>foo</em>s foo<br>foo");
+
+        assertEquals(2, result.getCount(), delegate.getKey());
+        assertEquals("foo<b>bar</b> <em>foo</em>s x<br>x", result.getRewritten().replace('y',
+            'x'), delegate.getKey());
+        assertEquals(partials[d], result.getPartialCount(), delegate.getKey());
+      }
+    }
+  }
+
+  /**
+   * Regex anchors and lookaround see a text range alone, on both engines, and templates are
+   * expanded per match.
+   */
+  @Test
+  void matchesRegexPerRange() {
+    RegexMatcher linear = RegexMatcher.linear("^(c\\w+)$", false, "[$1]");
+    RegexMatcher guarded = RegexMatcher.guarded(Pattern.compile("^(?<!>)(c\\w+)(?!<)$"), "[$1]",
+        100, 1_000_000, TimeUnit.SECONDS.toNanos(2));
+    for (RegexMatcher regex : new RegexMatcher[] {linear, guarded}) {
+      HtmlTextMatcher matcher = new HtmlTextMatcher(regex, ALLOWLIST, WHOLE);
+      MatchResult result = matcher.replace("<p>cat</p><p>cow</p><p>a cat</p><b title=crow>");
+
+      assertArrayEquals(new int[] {3, 13, 41}, result.getOffsets(), regex.getKey());
+      assertEquals("<p>[cat]</p><p>[cow]</p><p>a cat</p><b title=[crow]>",
+          result.getRewritten(), regex.getKey());
+    }
+  }
+
+  /**
+   * A backtracking regex gets one budget for the whole body, not one per text range, in both a
+   * single pass and the parallel one.
+   */
+  @Test
+  void sharesRegexBudgetAcrossRanges() {
+    RegexMatcher regex = RegexMatcher.guarded(Pattern.compile("(a+)\\1x"), "y", 1, 10_000,
+        TimeUnit.SECONDS.toNanos(10));
+    String range = "<p>" + "a".repeat(20) + "</p>";
+    assertEquals(0, new HtmlTextMatcher(regex, ALLOWLIST, WHOLE).find(range).getCount());
+
+    String body = range.repeat(100);
+    for (ChunkedScan chunkedScan : new ChunkedScan[] {WHOLE, SPLIT}) {
+      HtmlTextMatcher matcher = new HtmlTextMatcher(regex, ALLOWLIST, chunkedScan);
+      assertThrows(RegexBudgetExceededException.class, () -> matcher.find(body));
+    }
+  }
+}
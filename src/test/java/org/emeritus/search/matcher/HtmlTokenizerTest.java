@@ -0,0 +1,134 @@
+package org.emeritus.search.matcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class HtmlTokenizerTest.
+ */
+class HtmlTokenizerTest {
+
+  /** The attribute allowlist. */
+  private static final Set<String> ALLOWLIST = Set.of("alt", "title");
+
+  /**
+   * Text between tags is reported, markup is not.
+   */
+  @Test
+  void reportsTextNodes() {
+    assertEquals(List.of("Hello ", "world", "!"), texts("<p>Hello <b>world</b>!</p>"));
+    assertEquals(List.of("plain text"), texts("plain text"));
+  }
+
+  /**
+   * Text interrupted by inline tags comes out as separate ranges, so a term is never matched
+   * across a tag.
+   */
+  @Test
+  void splitsTextAtTags() {
+    assertEquals(List.of("ca", "t", " sat"), texts("ca<i>t</i> sat"));
+    assertEquals(List.of("a", "b"), texts("a<br/>b"));
+  }
+
+  /**
+   * Inline tags and comments between two words leave them joined, while block-level and void
+   * elements or whitespace separate them. Only a word character counts as adjoining.
+   */
+  @Test
+  void reportsWordsJoinedAcrossInlineTags() {
+    assertEquals(List.of("foo+", "+bar"), joins("foo<b>bar</b>"));
+    assertEquals(List.of("ca+", "+t+", "+s"), joins("ca<i>t</I><!-- x --><span class=a>s"));
+    assertEquals(List.of("foo", "bar"), joins("<p>foo</p><p>bar</p>"));
+    assertEquals(List.of("foo", "bar"), joins("foo<br>bar"));
+    assertEquals(List.of("foo", "bar"), joins("foo<IMG src=x>bar"));
+    assertEquals(List.of("foo ", "bar"), joins("foo <b>bar</b>"));
+    assertEquals(List.of("foo", "+, bar"), joins("foo<b>, bar</b>"));
+    assertEquals(List.of("foo", "bar"), joins("foo<b><div>bar</div></b>"));
+  }
+
+  /**
+   * An allowlisted attribute value stands alone, and does not separate the text around its tag.
+   */
+  @Test
+  void reportsAttributesUnjoined() {
+    assertEquals(List.of("foo+", "x", "+bar"), joins("foo<a title=\"x\">bar</a>"));
+    assertEquals(List.of("foo+", "+bar"), joins("foo<a href=\"/p?a>b\">bar</a>"));
+  }
+
+  /**
+   * The content of script and style elements is skipped up to the matching end tag, in any case.
+   */
+  @Test
+  void skipsScriptAndStyle() {
+    assertEquals(List.of("a", "b"),
+        texts("a<script type=\"text/javascript\">var x = '</p>cat';</script>b"));
+    assertEquals(List.of("a", "b"), texts("a<STYLE>p { content: 'cat' }</Style>b"));
+    assertEquals(List.of("a", "b"), texts("a<script>if (x</scripts) {}</script >b"));
+    assertEquals(List.of("a"), texts("a<script>never closed"));
+  }
+
+  /**
+   * Comments, doctype and processing instructions are skipped, including markup inside a
+   * comment.
+   */
+  @Test
+  void skipsCommentsAndDeclarations() {
+    assertEquals(List.of("a", "b"), texts("<!DOCTYPE html>a<!-- <p>cat</p> -->b"));
+    assertEquals(List.of("a", "b"), texts("a<?xml version=\"1.0\"?>b"));
+    assertEquals(List.of("a"), texts("a<!-- never closed"));
+  }
+
+  /**
+   * Allowlisted attribute values are reported, quoted or not and in any case, and others are
+   * not.
+   */
+  @Test
+  void reportsAllowlistedAttributes() {
+    assertEquals(List.of("A cat", "cat", "x"),
+        texts("<img src=\"cat.png\" ALT=\"A cat\" title=cat data-x='cat'>x"));
+    assertEquals(List.of("it's", "y"), texts("<a title=\"it's\" href='/cat'>y</a>"));
+    assertEquals(List.of("x"), texts("<img alt=\"\">x"));
+  }
+
+  /**
+   * A '&lt;' that does not open markup is text, and character references are reported as
+   * written.
+   */
+  @Test
+  void keepsLiteralLessThanAndEntities() {
+    assertEquals(List.of("1 < 2 &amp; 3 &lt; 4"), texts("1 < 2 &amp; 3 &lt; 4"));
+    assertEquals(List.of("a <", "b"), texts("a <<br>b"));
+    assertEquals(List.of("caf&eacute;"), texts("<p>caf&eacute;</p>"));
+  }
+
+  /**
+   * Collects the text ranges of the html.
+   *
+   * @param html the html
+   * @return the texts
+   */
+  private static List<String> texts(String html) {
+    List<String> texts = new ArrayList<>();
+    HtmlTokenizer.forEachTextRange(html, ALLOWLIST,
+        (start, end, wordBefore, wordAfter) -> texts.add(html.substring(start, end)));
+    return texts;
+  }
+
+  /**
+   * Collects the text ranges of the html, each with a '+' on the sides a word character adjoins
+   * across markup.
+   *
+   * @param html the html
+   * @return the texts
+   */
+  private static List<String> joins(String html) {
+    List<String> texts = new ArrayList<>();
+    HtmlTokenizer.forEachTextRange(html, ALLOWLIST, (start, end, wordBefore,
+        wordAfter) -> texts.add((wordBefore ? "+" : "") + html.substring(start, end)
+            + (wordAfter ? "+" : "")));
+    return texts;
+  }
+}
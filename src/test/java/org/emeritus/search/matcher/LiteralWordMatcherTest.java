@@ -0,0 +1,228 @@
+package org.emeritus.search.matcher;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class LiteralWordMatcherTest. Checks the matcher against plain String matching on random
+ * bodies and terms: a folded copy of the body searched with indexOf, with the word boundaries
+ * checked on the copy.
+ */
+class LiteralWordMatcherTest {
+
+  /** The chars bodies and terms are drawn from: cased, accented, word and non word chars. */
+  private static final String ALPHABET = "aAbBáÁéÉ\u0301ß_1 -+.$";
+
+  /** The number of random cases per folding. */
+  private static final int CASES = 3000;
+
+  /**
+   * Literal matching without folding.
+   */
+  @Test
+  void matchesReferenceWithoutFolding() {
+    checkRandom(false, false, 1);
+  }
+
+  /**
+   * Case insensitive matching.
+   */
+  @Test
+  void matchesReferenceIgnoringCase() {
+    checkRandom(true, false, 2);
+  }
+
+  /**
+   * Accent insensitive matching.
+   */
+  @Test
+  void matchesReferenceIgnoringAccents() {
+    checkRandom(false, true, 3);
+  }
+
+  /**
+   * Case and accent insensitive matching.
+   */
+  @Test
+  void matchesReferenceIgnoringCaseAndAccents() {
+    checkRandom(true, true, 4);
+  }
+
+  /**
+   * Word boundaries, on both word and non word term edges.
+   */
+  @Test
+  void appliesWordBoundaries() {
+    CharFolding folding = CharFolding.of(true, true);
+    MatchResult cat = new LiteralWordMatcher("cat", "dog", folding).replace("Cat cats cát_ cat.");
+    assertArrayEquals(new int[] {0, 14}, cat.getOffsets());
+    assertEquals(2, cat.getPartialCount());
+    assertEquals("dog cats cát_ dog.", cat.getRewritten());
+
+    MatchResult cpp = new LiteralWordMatcher("C++", "Java", folding).replace("c++ xC++ C++y");
+    assertArrayEquals(new int[] {0, 9}, cpp.getOffsets());
+    assertEquals(1, cpp.getPartialCount());
+    assertEquals("Java xC++ Javay", cpp.getRewritten());
+
+    MatchResult price = new LiteralWordMatcher("$100", "$90", CharFolding.NONE).find("a$100 $1000");
+    assertArrayEquals(new int[] {1}, price.getOffsets());
+    assertEquals(1, price.getPartialCount());
+  }
+
+  /**
+   * Compares the matcher with the reference on random bodies, with terms taken from the body
+   * half of the time so that most cases have occurrences.
+   *
+   * @param ignoreCase the ignore case
+   * @param ignoreAccents the ignore accents
+   * @param seed the seed
+   */
+  private static void checkRandom(boolean ignoreCase, boolean ignoreAccents, long seed) {
+    Random random = new Random(seed);
+    CharFolding folding = CharFolding.of(ignoreCase, ignoreAccents);
+    for (int i = 0; i < CASES; i++) {
+      String body = randomText(random, random.nextInt(60));
+      String term;
+      if (body.length() > 3 && random.nextBoolean()) {
+        int start = random.nextInt(body.length() - 3);
+        term = body.substring(start, start + 1 + random.nextInt(3));
+      } else {
+        term = randomText(random, 1 + random.nextInt(3));
+      }
+      String message = "term '" + term + "' in '" + body + "'";
+      MatchResult actual = new LiteralWordMatcher(term, "<x>", folding).replace(body);
+      Reference expected = reference(body, term, "<x>", ignoreCase, ignoreAccents);
+      assertArrayEquals(expected.offsets(), actual.getOffsets(), message);
+      assertEquals(expected.partialCount, actual.getPartialCount(), message);
+      assertEquals(expected.rewritten, actual.getRewritten(), message);
+    }
+  }
+
+  /**
+   * Random text over the alphabet.
+   *
+   * @param random the random
+   * @param length the length
+   * @return the text
+   */
+  private static String randomText(Random random, int length) {
+    StringBuilder text = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+    }
+    return text.toString();
+  }
+
+  /**
+   * String based matching: the body and term are folded into copies, occurrences are found with
+   * indexOf, and an occurrence is whole when each word char edge of the term has no word char
+   * next to it. Other occurrences are partial unless they overlap a match.
+   *
+   * @param body the body
+   * @param term the term
+   * @param replacement the replacement
+   * @param ignoreCase the ignore case
+   * @param ignoreAccents the ignore accents
+   * @return the reference result
+   */
+  private static Reference reference(String body, String term, String replacement,
+      boolean ignoreCase, boolean ignoreAccents) {
+    String text = fold(body, ignoreCase, ignoreAccents);
+    String pattern = fold(term, ignoreCase, ignoreAccents);
+    boolean wordStart = isWordChar(pattern.charAt(0));
+    boolean wordEnd = isWordChar(pattern.charAt(pattern.length() - 1));
+    Reference reference = new Reference();
+    StringBuilder rewritten = new StringBuilder();
+    List<Integer> partials = new ArrayList<>();
+    int copied = 0;
+    int from = text.indexOf(pattern);
+    while (from >= 0) {
+      int end = from + pattern.length();
+      boolean before = !wordStart || from == 0 || !isWordChar(text.charAt(from - 1));
+      boolean after = !wordEnd || end == text.length() || !isWordChar(text.charAt(end));
+      if (before && after) {
+        reference.starts.add(from);
+        // A partial overlapping the match is not reported
+        int start = from;
+        partials.removeIf(partial -> partial + pattern.length() > start);
+        rewritten.append(body, copied, from).append(replacement);
+        copied = end;
+        from = text.indexOf(pattern, end);
+      } else {
+        partials.add(from);
+        from = text.indexOf(pattern, from + 1);
+      }
+    }
+    reference.partialCount = partials.size();
+    reference.rewritten = rewritten.append(body, copied, body.length()).toString();
+    return reference;
+  }
+
+  /**
+   * Folds text one char at a time, keeping its length: accents are dropped from chars that
+   * decompose into a base char and combining marks, and case through upper then lower case.
+   *
+   * @param text the text
+   * @param ignoreCase the ignore case
+   * @param ignoreAccents the ignore accents
+   * @return the folded text
+   */
+  private static String fold(String text, boolean ignoreCase, boolean ignoreAccents) {
+    StringBuilder folded = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (ignoreAccents) {
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        if (decomposed.length() > 1
+            && decomposed.substring(1).chars().allMatch(
+                m -> Character.getType(m) == Character.NON_SPACING_MARK)) {
+          c = decomposed.charAt(0);
+        }
+      }
+      if (ignoreCase) {
+        c = Character.toLowerCase(Character.toUpperCase(c));
+      }
+      folded.append(c);
+    }
+    return folded.toString();
+  }
+
+  /**
+   * Checks if is word char.
+   *
+   * @param c the c
+   * @return true, if is word char
+   */
+  private static boolean isWordChar(char c) {
+    return c == '_' || Character.isLetterOrDigit(c);
+  }
+
+  /**
+   * The reference result.
+   */
+  private static final class Reference {
+
+    /** The starts. */
+    private final List<Integer> starts = new ArrayList<>();
+
+    /** The partial count. */
+    private int partialCount;
+
+    /** The rewritten body. */
+    private String rewritten;
+
+    /**
+     * Gets the offsets.
+     *
+     * @return the offsets
+     */
+    int[] offsets() {
+      return starts.stream().mapToInt(Integer::intValue).toArray();
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package org.emeritus.search.matcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class TrigramSignatureTest.
+ */
+class TrigramSignatureTest {
+
+  /**
+   * Every term taken from the body passes the filter, whatever its case or accents.
+   */
+  @Test
+  void neverRejectsTermsOfTheBody() {
+    Random random = new Random(7);
+    String body = randomText(random, 200_000, 26);
+    TrigramSignature signature = TrigramSignature.of(body);
+    for (int i = 0; i < 2000; i++) {
+      int start = random.nextInt(body.length() - 8);
+      String term = body.substring(start, start + 3 + random.nextInt(6));
+      assertTrue(signature.mightContainAll(TrigramSignature.trigramsOf(term.toUpperCase())),
+          term);
+    }
+  }
+
+  /**
+   * The filter is folded down to about two bits per distinct trigram, so a body repeating a few
+   * trigrams gets the smallest filter however long it is.
+   */
+  @Test
+  void sizesByDistinctTrigrams() {
+    assertEquals(8, TrigramSignature.of("abc ".repeat(100_000)).getSizeInBytes());
+
+    // Every one of the 17,576 trigrams over 26 letters, for 2^16 bits
+    String body = randomText(new Random(3), 500_000, 26);
+    assertEquals(1 << 13, TrigramSignature.of(body).getSizeInBytes());
+  }
+
+  /**
+   * A large body of distinct trigrams does not saturate the filter: most trigrams it lacks are
+   * still rejected.
+   */
+  @Test
+  void rejectsMissingTrigramsOfLargeBodies() {
+    Random random = new Random(5);
+    String body = randomText(random, 1_000_000, 'a', 400);
+    TrigramSignature signature = TrigramSignature.of(body);
+    int rejected = 0;
+    for (int i = 0; i < 1000; i++) {
+      // Chars the body does not use, so the term is never in it
+      String term = randomText(random, 5, '\u4e00', 400);
+      if (!signature.mightContainAll(TrigramSignature.trigramsOf(term))) {
+        rejected++;
+      }
+    }
+    assertTrue(rejected > 900, String.valueOf(rejected));
+  }
+
+  /**
+   * Random text over the letters from 'a'.
+   *
+   * @param random the random
+   * @param length the length
+   * @param letters the number of distinct chars
+   * @return the text
+   */
+  private static String randomText(Random random, int length, int letters) {
+    return randomText(random, length, 'a', letters);
+  }
+
+  /**
+   * Random text over a run of chars.
+   *
+   * @param random the random
+   * @param length the length
+   * @param first the first char
+   * @param letters the number of distinct chars
+   * @return the text
+   */
+  private static String randomText(Random random, int length, char first, int letters) {
+    StringBuilder text = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      text.append((char) (first + random.nextInt(letters)));
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,323 @@
+package org.emeritus.search.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.emeritus.canvas.model.Page;
+import org.emeritus.search.dto.PageInfo;
+import org.emeritus.search.dto.ReplaceResult;
+import org.emeritus.search.dto.ReplaceRule;
+import org.emeritus.search.dto.ReplaceStatus;
+import org.emeritus.search.matcher.MatchEngine;
+import org.emeritus.search.matcher.MatchOptions;
+import org.emeritus.search.matcher.MatchResult;
+import org.emeritus.search.matcher.TermMatcher;
+import org.emeritus.search.model.ContentRevision;
+import org.emeritus.search.model.JournalEntry;
+import org.emeritus.search.service.helper.CanvasContentWriter;
+import org.emeritus.search.service.helper.PendingReplacement;
+import org.emeritus.search.service.helper.ReplaceJournal;
+import org.emeritus.search.service.helper.ReplaceResultStore;
+import org.emeritus.search.service.impl.SearchTextServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The Class ReplaceRollbackServiceTest. Runs the write stage of a replace and its rollback against
+ * the replace journal in an in-memory H2 database set up by the Liquibase changelog, with Canvas
+ * faked by a map of page bodies that sanitizes HTML on save as Canvas does.
+ */
+@SpringJUnitConfig(ReplaceRollbackServiceTest.JournalConfiguration.class)
+@TestPropertySource(locations = "classpath:application-h2.properties",
+    properties = "search.journal.batch-size=16")
+class ReplaceRollbackServiceTest {
+
+  /** The course id. */
+  private static final String COURSE = "42";
+
+  /** The replace journal, on H2. */
+  @Autowired
+  private ReplaceJournal replaceJournal;
+
+  /** The jdbc template. */
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /** The page bodies in the fake Canvas, by page url. */
+  private final Map<String, String> canvas = new ConcurrentHashMap<>();
+
+  /** The search text service running the writes. */
+  private SearchTextServiceImpl searchTextService;
+
+  /** The rollback service. */
+  private ReplaceRollbackService rollbackService;
+
+  /** The executors of the rollback. */
+  private final List<ThreadPoolTaskExecutor> executors = new ArrayList<>();
+
+  /** The compiled rules. */
+  private TermMatcher termMatcher;
+
+  /**
+   * Fakes Canvas and wires the services to the journal.
+   *
+   * @throws Exception the exception
+   */
+  @BeforeEach
+  void setUp() throws Exception {
+    jdbcTemplate.update("delete from replace_journal");
+    CourseContentService courseContentService = mock(CourseContentService.class);
+    when(courseContentService.getPage(anyString(), anyString()))
+        .thenAnswer(call -> Optional.ofNullable(canvas.get(call.getArgument(1, String.class)))
+            .map(ReplaceRollbackServiceTest::page));
+    when(courseContentService.getSingleCourse(anyString())).thenReturn(Optional.empty());
+    CanvasContentWriter canvasContentWriter = mock(CanvasContentWriter.class);
+    when(canvasContentWriter.updatePageBody(anyString(), anyString(), anyString()))
+        .thenAnswer(call -> save(call.getArgument(1), call.getArgument(2)));
+
+    searchTextService = new SearchTextServiceImpl();
+    ReflectionTestUtils.setField(searchTextService, "replaceJournal", replaceJournal);
+    ReflectionTestUtils.setField(searchTextService, "verifyBeforeWrite", true);
+
+    ReplaceResultStore replaceResultStore = new ReplaceResultStore();
+    ReflectionTestUtils.setField(replaceResultStore, "ttlMinutes", 5L);
+    ReflectionTestUtils.setField(replaceResultStore, "maxEntries", 10L);
+    replaceResultStore.init();
+    rollbackService = new ReplaceRollbackService();
+    ReflectionTestUtils.setField(rollbackService, "replaceJournal", replaceJournal);
+    ReflectionTestUtils.setField(rollbackService, "replaceResultStore", replaceResultStore);
+    ReflectionTestUtils.setField(rollbackService, "courseContentService", courseContentService);
+    ReflectionTestUtils.setField(rollbackService, "canvasContentWriter", canvasContentWriter);
+    ReflectionTestUtils.setField(rollbackService, "courseScanExecutor", executor());
+    ReflectionTestUtils.setField(rollbackService, "canvasWriteExecutor", executor());
+    ReflectionTestUtils.setField(rollbackService, "maxWritesPerCourse", 2);
+
+    MatchEngine matchEngine = new MatchEngine();
+    ReflectionTestUtils.setField(matchEngine, "htmlTextOnly", false);
+    ReflectionTestUtils.setField(matchEngine, "attributeAllowlist", List.<String>of());
+    ReflectionTestUtils.setField(matchEngine, "chunkedEnabled", false);
+    matchEngine.init();
+    termMatcher = matchEngine.compile(
+        List.of(ReplaceRule.builder().sourceText("cat").textToBeReplace("dog").build()),
+        MatchOptions.builder().build());
+  }
+
+  /**
+   * Shuts the executors down.
+   */
+  @AfterEach
+  void tearDown() {
+    executors.forEach(ThreadPoolTaskExecutor::shutdown);
+  }
+
+  /**
+   * A run is journaled with the content Canvas saved, and its rollback restores the items left
+   * as the run wrote them, skips the one edited in Canvas since, and restores nothing twice.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void rollsBackRunExceptItemsEditedSince() throws Exception {
+    canvas.put("intro", "<p>The cat<br>sat</p>");
+    canvas.put("notes", "<p>A cat</p>");
+    canvas.put("other", "<p>No match</p>");
+    String runId = "run-1";
+    assertTrue(write(runId, "intro").isChanged());
+    assertTrue(write(runId, "notes").isChanged());
+    assertEquals("<p>The dog<br />sat</p>", canvas.get("intro"));
+
+    List<JournalEntry> entries = replaceJournal.findRun(runId);
+    assertEquals(List.of("intro", "notes"),
+        entries.stream().map(JournalEntry::getContentKey).collect(Collectors.toList()));
+    assertEquals("<p>The cat<br>sat</p>", entries.get(0).getBeforeBody());
+    assertEquals(ReplaceJournal.hash("<p>The dog<br />sat</p>"), entries.get(0).getAfterHash());
+
+    canvas.put("notes", "<p>A dog, edited by hand</p>");
+    Map<String, ReplaceStatus> outcomes = outcomes(rollbackService.rollback(runId).get());
+    assertEquals(ReplaceStatus.RESTORED, outcomes.get(COURSE + ":Page:intro"));
+    assertEquals(ReplaceStatus.SKIPPED, outcomes.get(COURSE + ":Page:notes"));
+    assertEquals("<p>The cat<br />sat</p>", canvas.get("intro"));
+    assertEquals("<p>A dog, edited by hand</p>", canvas.get("notes"));
+
+    // Only the skipped item is left to roll back
+    assertEquals(List.of("notes"), replaceJournal.findRun(runId).stream()
+        .map(JournalEntry::getContentKey).collect(Collectors.toList()));
+    assertFalse(rollbackService.rollback("run-unknown").isPresent());
+  }
+
+  /**
+   * A write saved to Canvas whose journal insert fails is still a write, flagged as not
+   * journaled, and no rollback knows about it.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void flagsWriteThatCouldNotBeJournaled() throws Exception {
+    canvas.put("intro", "<p>The cat</p>");
+    jdbcTemplate.execute("alter table replace_journal rename to replace_journal_off");
+    PendingReplacement item;
+    try {
+      item = pending("intro");
+      assertTrue(write("run-3", item).isChanged());
+    } finally {
+      jdbcTemplate.execute("alter table replace_journal_off rename to replace_journal");
+    }
+    assertTrue(item.isJournalFailed());
+    assertEquals("<p>The dog</p>", canvas.get("intro"));
+    assertFalse(rollbackService.rollback("run-3").isPresent());
+  }
+
+  /**
+   * Every write recorded by concurrent writers is inserted, across several batches, by the time
+   * its record returns.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void journalsEveryConcurrentWrite() throws Exception {
+    ExecutorService writers = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> records = new ArrayList<>();
+      for (int i = 0; i < 400; i++) {
+        String key = "page-" + i;
+        records.add(writers.submit(() -> replaceJournal.record("run-2", COURSE, "Page", key,
+            "<p>cat</p>", "<p>dog</p>")));
+      }
+      for (Future<?> record : records) {
+        record.get();
+      }
+    } finally {
+      writers.shutdown();
+    }
+    assertEquals(400, jdbcTemplate.queryForObject(
+        "select count(*) from replace_journal where run_id = 'run-2'", Integer.class));
+  }
+
+  /**
+   * Matches a page of the fake Canvas and runs its write as the write stage does, checking it
+   * was journaled.
+   *
+   * @param runId the run id
+   * @param pageUrl the page url
+   * @return the match written
+   */
+  private MatchResult write(String runId, String pageUrl) {
+    PendingReplacement item = pending(pageUrl);
+    MatchResult written = write(runId, item);
+    assertFalse(item.isJournalFailed());
+    return written;
+  }
+
+  /**
+   * Runs the write of a matched item as the write stage does.
+   *
+   * @param runId the run id
+   * @param item the item
+   * @return the match written
+   */
+  private MatchResult write(String runId, PendingReplacement item) {
+    return ReflectionTestUtils.invokeMethod(searchTextService, "writeUnlessEdited", termMatcher,
+        item, runId);
+  }
+
+  /**
+   * Matches a page of the fake Canvas.
+   *
+   * @param pageUrl the page url
+   * @return the item to write
+   */
+  private PendingReplacement pending(String pageUrl) {
+    String body = canvas.get(pageUrl);
+    return PendingReplacement.builder().courseId(COURSE).contentType("Page")
+        .contentKey(pageUrl).seen(new ContentRevision(body, null))
+        .seenHash(ReplaceJournal.hash(body)).match(termMatcher.replace(body))
+        .current(() -> Optional.ofNullable(canvas.get(pageUrl))
+            .map(fresh -> new ContentRevision(fresh, null)))
+        .update(rewritten -> save(pageUrl, rewritten)).build();
+  }
+
+  /**
+   * Saves a page body to the fake Canvas, which closes void elements as Canvas does.
+   *
+   * @param pageUrl the page url
+   * @param body the body sent
+   * @return the body saved
+   */
+  private String save(String pageUrl, String body) {
+    String saved = body.replace("<br>", "<br />");
+    canvas.put(pageUrl, saved);
+    return saved;
+  }
+
+  /**
+   * Creates a started executor.
+   *
+   * @return the executor
+   */
+  private ThreadPoolTaskExecutor executor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(2);
+    executor.initialize();
+    executors.add(executor);
+    return executor;
+  }
+
+  /**
+   * Gets the status of every item of a report.
+   *
+   * @param result the report
+   * @return the statuses by item id
+   */
+  private static Map<String, ReplaceStatus> outcomes(ReplaceResult result) {
+    return result.getCoursePageInfoList().stream()
+        .flatMap(course -> course.getPageInfoList().stream())
+        .collect(Collectors.toMap(PageInfo::getItemId, PageInfo::getStatus));
+  }
+
+  /**
+   * Creates a page.
+   *
+   * @param body the body
+   * @return the page
+   */
+  private static Page page(String body) {
+    Page page = new Page();
+    page.setBody(body);
+    return page;
+  }
+
+  /**
+   * The journal on the H2 datasource, with the schema from the Liquibase changelog.
+   */
+  @Configuration
+  @ImportAutoConfiguration({DataSourceAutoConfiguration.class,
+      JdbcTemplateAutoConfiguration.class, LiquibaseAutoConfiguration.class})
+  @Import(ReplaceJournal.class)
+  static class JournalConfiguration {
+  }
+}
@@ -0,0 +1,279 @@
+package org.emeritus.search.service.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The Class ContentFlightsTest.
+ */
+class ContentFlightsTest {
+
+  /** The flights. */
+  private ContentFlights flights;
+
+  /**
+   * Sets up the flights.
+   */
+  @BeforeEach
+  void setUp() {
+    flights = new ContentFlights();
+    ReflectionTestUtils.setField(flights, "enabled", true);
+    ReflectionTestUtils.setField(flights, "maxPendingBatches", 4);
+  }
+
+  /**
+   * A failing handler of the caller running the fetch fails only that caller; an attached caller
+   * still gets every batch.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void leaderHandlerFailureDoesNotFailFollowers() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger fetches = new AtomicInteger();
+    ContentFlights.BatchSource<Integer> source = handler -> {
+      fetches.incrementAndGet();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      for (int i = 0; i < 3; i++) {
+        if (!handler.test(List.of(i))) {
+          return;
+        }
+      }
+    };
+    CompletableFuture<Void> leader = CompletableFuture.runAsync(() -> {
+      try {
+        flights.forEachBatch("1", "pages", source, batch -> {
+          throw new IllegalStateException("leader handler");
+        });
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    awaitFlight();
+    List<Integer> received = new ArrayList<>();
+    CompletableFuture<Void> follower = CompletableFuture.runAsync(() -> {
+      try {
+        flights.forEachBatch("1", "pages", source, batch -> received.addAll(batch));
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    awaitFollowers(1);
+    release.countDown();
+
+    follower.get(5, TimeUnit.SECONDS);
+    assertEquals(List.of(0, 1, 2), received);
+    Exception failure = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+    assertEquals("leader handler", failure.getCause().getMessage());
+    assertEquals(1, fetches.get());
+  }
+
+  /**
+   * Cancelling the caller running a fetch, as a failing fetch scope does, does not fail the
+   * caller attached to it: that one fetches again and gets each batch once.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void cancelledLeaderDoesNotFailFollowers() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch never = new CountDownLatch(1);
+    AtomicInteger fetches = new AtomicInteger();
+    ContentFlights.BatchSource<Integer> source = handler -> {
+      boolean first = fetches.incrementAndGet() == 1;
+      try {
+        release.await(5, TimeUnit.SECONDS);
+        for (int i = 0; i < 3; i++) {
+          if (!handler.test(List.of(i))) {
+            return;
+          }
+          if (first) {
+            // Stalls after the first batch until the caller is cancelled
+            never.await();
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Canvas call interrupted");
+      }
+    };
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Future<?> leader = executor.submit(() -> {
+        flights.forEachBatch("1", "pages", source, batch -> true);
+        return null;
+      });
+      awaitFlight();
+      List<Integer> received = new CopyOnWriteArrayList<>();
+      CompletableFuture<Void> follower = CompletableFuture.runAsync(() -> {
+        try {
+          flights.forEachBatch("1", "pages", source, batch -> received.addAll(batch));
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }, executor);
+      awaitFollowers(1);
+      release.countDown();
+      long deadline = System.currentTimeMillis() + 5000;
+      while (received.isEmpty() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      leader.cancel(true);
+
+      follower.get(5, TimeUnit.SECONDS);
+      assertEquals(List.of(0, 1, 2), received);
+      assertEquals(2, fetches.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * An attached caller falling too far behind is detached instead of holding every batch; it
+   * fetches the rest itself and still gets each batch once.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void slowFollowerFetchesOnItsOwn() throws Exception {
+    ReflectionTestUtils.setField(flights, "maxPendingBatches", 2);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger fetches = new AtomicInteger();
+    ContentFlights.BatchSource<Integer> source = handler -> {
+      fetches.incrementAndGet();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      for (int i = 0; i < 6; i++) {
+        if (!handler.test(List.of(i))) {
+          return;
+        }
+      }
+    };
+    CompletableFuture<Void> leader = CompletableFuture.runAsync(() -> {
+      try {
+        flights.forEachBatch("1", "pages", source, batch -> true);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    awaitFlight();
+    CountDownLatch leaderDone = new CountDownLatch(1);
+    List<Integer> received = new CopyOnWriteArrayList<>();
+    CompletableFuture<Void> follower = CompletableFuture.runAsync(() -> {
+      try {
+        flights.forEachBatch("1", "pages", source, batch -> {
+          try {
+            // Stays behind until the fetch it attached to has delivered everything
+            leaderDone.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return received.addAll(batch);
+        });
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    awaitFollowers(1);
+    release.countDown();
+    leader.get(5, TimeUnit.SECONDS);
+    leaderDone.countDown();
+
+    follower.get(5, TimeUnit.SECONDS);
+    assertEquals(List.of(0, 1, 2, 3, 4, 5), received);
+    assertEquals(2, fetches.get());
+  }
+
+  /**
+   * A caller arriving after the first batch was delivered runs a fetch of its own instead of
+   * waiting for batches that are no longer kept.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void lateCallerRunsOwnFetch() throws Exception {
+    AtomicInteger fetches = new AtomicInteger();
+    List<Integer> late = new ArrayList<>();
+    ContentFlights.BatchSource<Integer> source = handler -> {
+      fetches.incrementAndGet();
+      for (int i = 0; i < 3; i++) {
+        if (!handler.test(List.of(i))) {
+          return;
+        }
+      }
+    };
+    List<Integer> early = new ArrayList<>();
+    flights.forEachBatch("1", "pages", source, batch -> {
+      early.addAll(batch);
+      if (batch.get(0) == 0) {
+        // Arrives while the first fetch is delivering
+        try {
+          flights.forEachBatch("1", "pages", source, late::addAll);
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      return true;
+    });
+
+    assertEquals(List.of(0, 1, 2), early);
+    assertEquals(List.of(0, 1, 2), late);
+    assertEquals(2, fetches.get());
+  }
+
+  /**
+   * Waits for a fetch to be in progress.
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  private void awaitFlight() throws InterruptedException {
+    Map<?, ?> inProgress = (Map<?, ?>) ReflectionTestUtils.getField(flights, "flights");
+    long deadline = System.currentTimeMillis() + 5000;
+    while (inProgress.isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+  }
+
+  /**
+   * Waits for callers to attach to the fetch in progress.
+   *
+   * @param count the count
+   * @throws InterruptedException the interrupted exception
+   */
+  private void awaitFollowers(int count) throws InterruptedException {
+    Map<?, ?> inProgress = (Map<?, ?>) ReflectionTestUtils.getField(flights, "flights");
+    Object flight = inProgress.values().iterator().next();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline) {
+      synchronized (flight) {
+        if (((List<?>) ReflectionTestUtils.getField(flight, "followers")).size() >= count) {
+          return;
+        }
+      }
+      Thread.sleep(5);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package org.emeritus.search.service.helper;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+import java.util.Map;
+import org.emeritus.search.dto.ReplaceRule;
+import org.emeritus.search.exception.BadRequestException;
+import org.emeritus.search.matcher.MatchEngine;
+import org.emeritus.search.matcher.MatchOptions;
+import org.emeritus.search.matcher.TermMatcher;
+import org.emeritus.search.model.ContentRevision;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The Class ReplacePreviewStoreTest.
+ */
+class ReplacePreviewStoreTest {
+
+  /** The max characters held by the store. */
+  private static final long MAX_CHARS = 10_000;
+
+  /** The store. */
+  private ReplacePreviewStore store;
+
+  /** The compiled rules. */
+  private TermMatcher termMatcher;
+
+  /**
+   * Sets up the store and the matcher.
+   */
+  @BeforeEach
+  void setUp() {
+    store = new ReplacePreviewStore();
+    ReflectionTestUtils.setField(store, "ttlMinutes", 30L);
+    ReflectionTestUtils.setField(store, "maxChars", MAX_CHARS);
+    store.init();
+    MatchEngine matchEngine = new MatchEngine();
+    ReflectionTestUtils.setField(matchEngine, "htmlTextOnly", false);
+    ReflectionTestUtils.setField(matchEngine, "attributeAllowlist", List.<String>of());
+    ReflectionTestUtils.setField(matchEngine, "chunkedEnabled", false);
+    matchEngine.init();
+    termMatcher = matchEngine.compile(
+        List.of(ReplaceRule.builder().sourceText("cat").textToBeReplace("dog").build()),
+        MatchOptions.builder().build());
+  }
+
+  /**
+   * A preview using almost the whole bound is kept until it is taken, once.
+   */
+  @Test
+  void keepsPreviewUpToTheWholeBound() {
+    ReplacePreview preview = previewOf((int) (MAX_CHARS / 2) - 1);
+    String previewId = store.put(preview);
+
+    assertSame(preview, store.take(previewId).get());
+    assertFalse(store.take(previewId).isPresent());
+  }
+
+  /**
+   * A preview larger than the bound is refused rather than evicted as soon as it is stored.
+   */
+  @Test
+  void refusesPreviewOverTheBound() {
+    BadRequestException e =
+        assertThrows(BadRequestException.class, () -> store.put(previewOf((int) MAX_CHARS)));
+    assertTrue(e.getMessage().contains(String.valueOf(MAX_CHARS)), e.getMessage());
+  }
+
+  /**
+   * A preview of one item whose matched and rewritten bodies hold about twice the given length.
+   *
+   * @param length the body length
+   * @return the preview
+   */
+  private ReplacePreview previewOf(int length) {
+    String body = "cat" + " ".repeat(length - 3);
+    PendingReplacement item = PendingReplacement.builder().courseId("1").contentType("Page")
+        .contentKey("intro").seen(new ContentRevision(body, null))
+        .match(termMatcher.replace(body)).build();
+    return new ReplacePreview(termMatcher, List.of(), Map.of(item.getItemId(), item));
+  }
+}
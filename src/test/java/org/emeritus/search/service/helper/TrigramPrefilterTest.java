@@ -0,0 +1,76 @@
+package org.emeritus.search.service.helper;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Date;
+import java.util.List;
+import org.emeritus.search.dto.ReplaceRule;
+import org.emeritus.search.matcher.MatchEngine;
+import org.emeritus.search.matcher.MatchOptions;
+import org.emeritus.search.matcher.TermMatcher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The Class TrigramPrefilterTest.
+ */
+class TrigramPrefilterTest {
+
+  /** The url. */
+  private static final String URL = "https://canvas/courses/1/pages/intro";
+
+  /** The prefilter. */
+  private TrigramPrefilter prefilter;
+
+  /** A term absent from the bodies. */
+  private TermMatcher zebra;
+
+  /**
+   * Sets up the prefilter and the matcher.
+   */
+  @BeforeEach
+  void setUp() {
+    prefilter = new TrigramPrefilter();
+    ReflectionTestUtils.setField(prefilter, "enabled", true);
+    ReflectionTestUtils.setField(prefilter, "maxSizeMb", 1L);
+    prefilter.init();
+    MatchEngine matchEngine = new MatchEngine();
+    ReflectionTestUtils.setField(matchEngine, "htmlTextOnly", false);
+    ReflectionTestUtils.setField(matchEngine, "attributeAllowlist", List.<String>of());
+    ReflectionTestUtils.setField(matchEngine, "chunkedEnabled", false);
+    matchEngine.init();
+    zebra = matchEngine.compile(List.of(ReplaceRule.builder().sourceText("zebra").build()),
+        MatchOptions.builder().build());
+  }
+
+  /**
+   * A revision indexed when fetched is skipped when it cannot match, and any other revision of
+   * the item is scanned.
+   */
+  @Test
+  void usesSignatureOfTheFetchedRevision() {
+    Date updatedAt = new Date(1_700_000_000_000L);
+    String body = "<p>The quick brown fox</p>";
+    prefilter.index(URL, body, updatedAt);
+
+    assertFalse(prefilter.mayMatch(URL, new String(body), updatedAt, zebra));
+    assertTrue(prefilter.mayMatch(URL, body, new Date(updatedAt.getTime() + 1000), zebra));
+    assertTrue(prefilter.mayMatch(URL, body + "zebra", updatedAt, zebra));
+    // An edit in the same second that keeps the length
+    assertTrue(prefilter.mayMatch(URL, body.replace("quick", "zebra"), updatedAt, zebra));
+  }
+
+  /**
+   * An item without an updated at is looked up by its fetched body, so only that body is
+   * skipped.
+   */
+  @Test
+  void usesSignatureOfTheFetchedBodyWithoutRevision() {
+    String body = "<p>The quick brown fox</p>";
+    prefilter.index(URL, body, null);
+
+    assertFalse(prefilter.mayMatch(URL, body, null, zebra));
+    assertTrue(prefilter.mayMatch(URL, new String(body), null, zebra));
+  }
+}
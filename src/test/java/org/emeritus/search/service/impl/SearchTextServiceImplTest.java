@@ -0,0 +1,194 @@
+package org.emeritus.search.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.emeritus.canvas.model.Page;
+import org.emeritus.canvas.model.assignment.Assignment;
+import org.emeritus.search.dto.PageInfo;
+import org.emeritus.search.dto.ReplaceRule;
+import org.emeritus.search.matcher.MatchEngine;
+import org.emeritus.search.matcher.MatchOptions;
+import org.emeritus.search.matcher.TermMatcher;
+import org.emeritus.search.service.CourseContentService;
+import org.emeritus.search.service.helper.DeltaScanStore;
+import org.emeritus.search.service.helper.TrigramPrefilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The Class SearchTextServiceImplTest. Repeats a search over a course faked in memory, where items
+ * are deleted or renamed between scans, and checks the delta scans stop reporting them.
+ */
+class SearchTextServiceImplTest {
+
+  /** The course id. */
+  private static final String COURSE = "42";
+
+  /** The pages of the fake course, by html url. */
+  private final Map<String, Page> pages = new TreeMap<>();
+
+  /** The assignments of the fake course, by id. */
+  private final Map<Integer, Assignment> assignments = new TreeMap<>();
+
+  /** The service. */
+  private SearchTextServiceImpl service;
+
+  /** The compiled rules. */
+  private TermMatcher termMatcher;
+
+  /**
+   * Fakes the course content and wires the service to a delta scan store.
+   *
+   * @throws Exception the exception
+   */
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() throws Exception {
+    CourseContentService courseContentService = mock(CourseContentService.class);
+    doAnswer(call -> call.getArgument(1, Predicate.class).test(new ArrayList<>(pages.values())))
+        .when(courseContentService).forEachPageBatch(anyString(), any());
+    doAnswer(call -> {
+      // One page per batch, newest first, stopping when the handler asks to
+      Predicate<List<Page>> handler = call.getArgument(1, Predicate.class);
+      List<Page> newestFirst = pages.values().stream()
+          .sorted(Comparator.comparing(Page::getUpdatedAt).reversed())
+          .collect(Collectors.toList());
+      for (Page page : newestFirst) {
+        if (!handler.test(List.of(page))) {
+          break;
+        }
+      }
+      return null;
+    }).when(courseContentService).forEachPageBatchNewestFirst(anyString(), any());
+    when(courseContentService.listPageUrls(anyString()))
+        .thenAnswer(call -> pages.keySet().stream().collect(Collectors.toSet()));
+    doAnswer(call -> call.getArgument(1, Predicate.class)
+        .test(new ArrayList<>(assignments.values()))).when(courseContentService)
+            .forEachAssignmentBatch(anyString(), any());
+
+    DeltaScanStore deltaScanStore = new DeltaScanStore();
+    ReflectionTestUtils.setField(deltaScanStore, "enabled", true);
+    ReflectionTestUtils.setField(deltaScanStore, "fullRescanMinutes", 1440L);
+    ReflectionTestUtils.setField(deltaScanStore, "maxEntries", 100L);
+    deltaScanStore.init();
+    TrigramPrefilter trigramPrefilter = new TrigramPrefilter();
+    ReflectionTestUtils.setField(trigramPrefilter, "enabled", false);
+    trigramPrefilter.init();
+
+    service = new SearchTextServiceImpl();
+    ReflectionTestUtils.setField(service, "courseContentService", courseContentService);
+    ReflectionTestUtils.setField(service, "deltaScanStore", deltaScanStore);
+    ReflectionTestUtils.setField(service, "trigramPrefilter", trigramPrefilter);
+    ReflectionTestUtils.setField(service, "streamingScan", true);
+    ReflectionTestUtils.setField(service, "baseUrl", "https://canvas");
+
+    MatchEngine matchEngine = new MatchEngine();
+    ReflectionTestUtils.setField(matchEngine, "htmlTextOnly", false);
+    ReflectionTestUtils.setField(matchEngine, "attributeAllowlist", List.<String>of());
+    ReflectionTestUtils.setField(matchEngine, "chunkedEnabled", false);
+    matchEngine.init();
+    termMatcher = matchEngine.compile(List.of(ReplaceRule.builder().sourceText("cat").build()),
+        MatchOptions.builder().build());
+  }
+
+  /**
+   * A page deleted, or renamed to a new url, after a scan is no longer reported by the next
+   * incremental scan, even though that scan stops before reaching it.
+   */
+  @Test
+  void dropsPagesDeletedOrRenamedSinceLastScan() {
+    addPage("intro", 1000);
+    addPage("notes", 2000);
+    addPage("syllabus", 3000);
+    assertEquals(List.of("intro", "notes", "syllabus"), scan("scanPages"));
+
+    pages.remove(url("notes"));
+    assertEquals(List.of("intro", "syllabus"), scan("scanPages"));
+
+    pages.remove(url("intro"));
+    addPage("introduction", 4000);
+    assertEquals(List.of("introduction", "syllabus"), scan("scanPages"));
+  }
+
+  /**
+   * An assignment deleted after a scan is no longer reported by the next one.
+   */
+  @Test
+  void dropsAssignmentsDeletedSinceLastScan() {
+    addAssignment(1);
+    addAssignment(2);
+    assertEquals(List.of("1", "2"), scan("scanAssignments"));
+
+    assignments.remove(1);
+    assertEquals(List.of("2"), scan("scanAssignments"));
+  }
+
+  /**
+   * Runs a scan of the course and gets the last path segment of every match.
+   *
+   * @param method the scan method
+   * @return the matched items, sorted
+   */
+  private List<String> scan(String method) {
+    List<PageInfo> matches = ReflectionTestUtils.invokeMethod(service, method, COURSE,
+        termMatcher);
+    return matches.stream().map(PageInfo::getRedirectUrl)
+        .map(url -> url.substring(url.lastIndexOf('/') + 1)).sorted()
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Adds a published page that contains the term.
+   *
+   * @param name the page url
+   * @param updatedAt the updated at
+   */
+  private void addPage(String name, long updatedAt) {
+    Page page = new Page();
+    page.setUrl(name);
+    page.setTitle(name);
+    page.setHtmlUrl(url(name));
+    page.setBody("<p>The cat</p>");
+    page.setPublished(true);
+    page.setUpdatedAt(new Date(updatedAt));
+    pages.put(page.getHtmlUrl(), page);
+  }
+
+  /**
+   * Adds a published assignment that contains the term.
+   *
+   * @param id the id
+   */
+  private void addAssignment(int id) {
+    Assignment assignment = new Assignment();
+    assignment.setId(id);
+    assignment.setName("Assignment " + id);
+    assignment.setDescription("<p>A cat</p>");
+    assignment.setPublished(true);
+    assignment.setUpdatedAt(new Date(1000));
+    assignments.put(id, assignment);
+  }
+
+  /**
+   * Gets the html url of a page.
+   *
+   * @param name the page url
+   * @return the html url
+   */
+  private static String url(String name) {
+    return "https://canvas/courses/" + COURSE + "/pages/" + name;
+  }
+}